@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.benchmarks;
+
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import linaje.expressions.CompiledExpression;
+import linaje.expressions.EvaluationContext;
+import linaje.expressions.Expression;
+import linaje.expressions.ExpressionException;
+import linaje.expressions.ExpressionsAnalyzer;
+import linaje.expressions.StackElement;
+import linaje.expressions.Variable;
+
+/**
+ * Benchmarks of the phases of the expressions engine (creation of the stack elements, parsing and evaluation)
+ * for each nature of expression, with a short expression and a long one like the ones used to filter tables.
+ * <p>
+ * Run with: java -jar target/benchmarks.jar ExpressionsBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpressionsBenchmark {
+
+	private static final int FUNCTION_VALUES = 1000;
+
+	@Param({"NUMERICAL", "ALPHANUMERIC", "DATE", "LOGICAL", "GLOBAL", "FUNCTIONS"})
+	public String nature;
+
+	@Param({"SHORT", "LONG"})
+	public String size;
+
+	private String expressionText = null;
+	private Vector<Variable> variables = null;
+	private Expression expression = null;
+	private CompiledExpression compiledExpression = null;
+	private EvaluationContext evaluationContext = null;
+
+	@Setup
+	public void setup() throws ExpressionException {
+
+		variables = createVariables();
+		expressionText = getExpressionText(nature, size.equals("LONG"));
+		expression = ExpressionsAnalyzer.parseExpression(expressionText, variables);
+		compiledExpression = ExpressionsAnalyzer.compileExpression(expressionText, variables);
+		evaluationContext = new EvaluationContext();
+		evaluationContext.setShortCircuit(true);
+	}
+
+	@Benchmark
+	public Vector<StackElement> createStackElements() {
+		return ExpressionsAnalyzer.createStackElements(expressionText);
+	}
+
+	@Benchmark
+	public Expression parseExpression() throws ExpressionException {
+		return ExpressionsAnalyzer.parseExpression(expressionText, variables);
+	}
+
+	@Benchmark
+	public StackElement getValue() throws ExpressionException {
+		return expression.getValue();
+	}
+
+	@Benchmark
+	public void parseAndGetValue(Blackhole blackhole) throws ExpressionException {
+		blackhole.consume(ExpressionsAnalyzer.parseExpression(expressionText, variables).getValue());
+	}
+
+	@Benchmark
+	public Object getCompiledValue() throws ExpressionException {
+		return compiledExpression.getValue();
+	}
+
+	@Benchmark
+	public Object getCompiledValueShortCircuit() throws ExpressionException {
+		return compiledExpression.getValue(evaluationContext);
+	}
+
+	@Benchmark
+	public CompiledExpression getCachedCompiledExpression() throws ExpressionException {
+		return ExpressionsAnalyzer.getCompiledExpression(expressionText, variables, true);
+	}
+
+	private static Vector<Variable> createVariables() {
+
+		Vector<Variable> variables = new Vector<>();
+
+		Variable units = new Variable("UNITS", Integer.class, Integer.valueOf(120));
+		units.setDescription("Units sold");
+		Variable price = new Variable("PRICE", Double.class, Double.valueOf(24.95));
+		Variable discount = new Variable("DISCOUNT", Double.class, Double.valueOf(0.15));
+		Variable customer = new Variable("CUSTOMER", String.class, "  Linaje Projects S.L.  ");
+		Variable country = new Variable("COUNTRY", String.class, "Spain");
+		Variable code = new Variable("CODE", String.class, "ES-2022-000123");
+		Variable orderDate = new Variable("ORDER_DATE", Date.class, new GregorianCalendar(2022, 4, 17, 10, 30).getTime());
+		Variable deliveryDate = new Variable("DELIVERY_DATE", Date.class, new GregorianCalendar(2022, 5, 2).getTime());
+		//Sin tipo, la naturaleza depende del valor
+		Variable amount = new Variable("AMOUNT", null, "2994.0");
+		Variable status = new Variable("STATUS", null, "PENDING");
+		Variable dueDate = new Variable("DUE_DATE", null, "30_06_2022");
+
+		for (int i = 0; i < FUNCTION_VALUES; i++) {
+			units.getValues().addElement(Integer.valueOf((i * 37) % 500));
+			price.getValues().addElement(Double.valueOf(((i * 53) % 1000) / 10.0));
+		}
+
+		variables.addElement(units);
+		variables.addElement(price);
+		variables.addElement(discount);
+		variables.addElement(customer);
+		variables.addElement(country);
+		variables.addElement(code);
+		variables.addElement(orderDate);
+		variables.addElement(deliveryDate);
+		variables.addElement(amount);
+		variables.addElement(status);
+		variables.addElement(dueDate);
+
+		return variables;
+	}
+
+	private static String getExpressionText(String nature, boolean longExpression) {
+
+		switch (nature) {
+			case "NUMERICAL":
+				return longExpression ? "(UNITS * PRICE - UNITS * PRICE * DISCOUNT) / 2 + (PRICE - 1.5) * 3 - UNITS / 4 + 100 * DISCOUNT >= 1000 - PRICE * 2"
+									  : "UNITS * PRICE > 1000";
+			case "ALPHANUMERIC":
+				return longExpression ? "CUSTOMER + ' - ' + COUNTRY + ' (' + CODE + ')' C= 'Projects' AND CODE S= 'ES-' AND COUNTRY i= 'SPAIN' AND CUSTOMER E= 'S.L.'"
+									  : "COUNTRY = 'Spain'";
+			case "DATE":
+				return longExpression ? "ORDER_DATE > 01_01_2022 AND ORDER_DATE < 31_12_2022 AND DELIVERY_DATE >= 01_06_2022 AND DELIVERY_DATE i= 02_06_2022"
+									  : "ORDER_DATE > 01_01_2022";
+			case "LOGICAL":
+				return longExpression ? "(UNITS > 100 AND PRICE < 50) OR (COUNTRY = 'France' AND NOT DISCOUNT > 0.5) OR (CODE S= 'ES' AND ORDER_DATE > 01_01_2022 AND NOT (UNITS < 10 OR PRICE > 90))"
+									  : "UNITS > 100 AND COUNTRY = 'Spain'";
+			case "GLOBAL":
+				return longExpression ? "AMOUNT > 1000 AND STATUS = 'PENDING' AND DUE_DATE > 01_06_2022 AND AMOUNT * 2 < 10000"
+									  : "AMOUNT > 1000";
+			default:
+				return longExpression ? "MAX(UNITS) > 400 AND MIN(PRICE) < 1 AND SUM(UNITS) > AVG(PRICE) * 1000 AND MX2(UNITS) < 500 AND ABS(DISCOUNT) > 0.1"
+									  : "MAX(UNITS) > 400";
+		}
+	}
+}
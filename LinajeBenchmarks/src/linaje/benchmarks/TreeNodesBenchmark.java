@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.benchmarks;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import linaje.table.TableModelTree;
+import linaje.tree.ArrayTreeNode;
+import linaje.tree.TreeNodeVector;
+
+/**
+ * Benchmarks of reading the cells of a table model and walking its tree with nodes backed by synchronized Vectors ({@link TreeNodeVector}),
+ * by arrays read without synchronization ({@link ArrayTreeNode}) and by arrays in concurrent mode.
+ * <p>
+ * Run with: java -jar target/benchmarks.jar TreeNodesBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeNodesBenchmark {
+
+	private static final int COLUMNS = 10;
+
+	@Param({"VECTOR", "ARRAY", "ARRAY_CONCURRENT"})
+	public String nodes;
+
+	@Param({"100000"})
+	public int rows;
+
+	private TableModelTree<Object> model = null;
+
+	@Setup
+	public void setup() {
+
+		//Tres niveles: 100 nodos de primer nivel, 10 hijos por nodo y el resto de nietos, todos expandidos
+		TreeNodeVector<Object> newRoot = new TreeNodeVector<>();
+		int rowsCount = 0;
+		for (int i = 0; rowsCount < rows; i++) {
+			TreeNodeVector<Object> parent = newNode("P" + i, i);
+			newRoot.addChild(parent);
+			rowsCount++;
+			for (int j = 0; j < 10 && rowsCount < rows; j++) {
+				TreeNodeVector<Object> child = newNode("P" + i + "C" + j, j);
+				parent.addChild(child);
+				rowsCount++;
+				for (int k = 0; k < rows / 1000 && rowsCount < rows; k++) {
+					child.addChild(newNode("P" + i + "C" + j + "G" + k, k));
+					rowsCount++;
+				}
+				child.setExpanded(true);
+			}
+			parent.setExpanded(true);
+		}
+
+		Vector<String> columnNames = new Vector<>();
+		for (int i = 0; i < COLUMNS; i++)
+			columnNames.add("COLUMN" + i);
+
+		//El root del modelo también es del tipo de nodo a medir y los hijos se le pasan con loadRows como al cargar datos
+		model = new BenchmarkTableModel(new Vector<TreeNodeVector<Object>>(), columnNames);
+		model.setRoot(nodes.equals("VECTOR") ? new TreeNodeVector<Object>() : newArrayNode(new Object[0]));
+		model.loadRows(newRoot);
+	}
+
+	@Benchmark
+	public void getValueAt(Blackhole blackhole) {
+		int rowCount = model.getRowCount();
+		for (int row = 0; row < rowCount; row++) {
+			for (int column = 0; column < COLUMNS; column++)
+				blackhole.consume(model.getValueAt(row, column));
+		}
+	}
+
+	@Benchmark
+	public int traverseTree() {
+		return countNodes(model.getRoot());
+	}
+
+	@Benchmark
+	public TreeNodeVector<Object> findRowSimilar() {
+		//Un valor que no existe obliga a recorrer todo el árbol
+		return model.findRowSimilar("NOT FOUND");
+	}
+
+	private static int countNodes(TreeNodeVector<Object> node) {
+		int count = 1;
+		for (int i = 0; i < node.getChildCount(); i++)
+			count += countNodes(node.getChildAt(i));
+		return count;
+	}
+
+	private TreeNodeVector<Object> newNode(String code, int number) {
+
+		Object[] values = new Object[COLUMNS];
+		values[0] = code;
+		for (int i = 1; i < COLUMNS; i++)
+			values[i] = i % 2 == 0 ? (Object) Integer.valueOf(number * i) : (Object) ("V" + number + "_" + i);
+
+		if (nodes.equals("VECTOR"))
+			return TreeNodeVector.newNode(values);
+		return newArrayNode(values);
+	}
+
+	private ArrayTreeNode<Object> newArrayNode(Object[] values) {
+		ArrayTreeNode<Object> node = ArrayTreeNode.newArrayNode(values);
+		node.setConcurrent(nodes.equals("ARRAY_CONCURRENT"));
+		return node;
+	}
+
+	private static class BenchmarkTableModel extends TableModelTree<Object> {
+
+		private static final long serialVersionUID = 1L;
+
+		public BenchmarkTableModel(Vector<? extends TreeNodeVector<Object>> data, Vector<String> columnNames) {
+			super(data, columnNames);
+		}
+
+		public void fireTableDataChanged() {}
+		public void fireTableStructureChanged() {}
+		public void fireTableRowsInserted(int firstRow, int lastRow) {}
+		public void fireTableRowsUpdated(int firstRow, int lastRow) {}
+		public void fireTableRowsDeleted(int firstRow, int lastRow) {}
+		public void fireTableCellUpdated(int row, int column) {}
+	}
+}
@@ -16,20 +16,34 @@
  */
 package linaje.comunications;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.Executor;
 
 import linaje.LocalizedStrings;
 import linaje.statics.Constants;
 import linaje.tests.TestConnection;
+import linaje.utils.Encryptor;
 import linaje.utils.Numbers;
 import linaje.utils.Security;
+import linaje.utils.SessionEncryptor;
 import linaje.utils.Strings;
 
 public class Connection {
@@ -38,11 +52,28 @@ public class Connection {
 	public static final int PORT_MIN = 0;
 	public static final int PORT_DEFAULT = 8877;
 	
+	public static final int FLUSH_SIZE_DEFAULT = 64 * 1024;
+	public static final int FLUSH_DELAY_DEFAULT = 5;
+	public static final int MAX_PENDING_BYTES_DEFAULT = 8 * 1024 * 1024;
+	
 	public static final String END_CONNECTION = "@@END_CONNECTION";
 	public static final String LINE_SEPARATOR_VIRTUAL = "@#@";
+	public static final String SESSION_KEY = "@@SESSION_KEY";
+	//Prefijo de las comunicaciones encriptadas con la clave de sesión
+	public static final String SESSION_ENCRYPTED = "@S@";
+	public static final String BINARY_FRAMING = "@@BINARY_FRAMING";
+	//Última línea antes de pasar a tramas binarias, se reconoce sin desencriptar
+	public static final String BINARY_FRAMES_START = "@@BINARY_FRAMES";
+	
+	//Tramas binarias: longitud del contenido (int), tipo (byte) y contenido
+	static final byte FRAME_TEXT = 0;
+	static final byte FRAME_ENCRYPTED = 1;
+	static final byte FRAME_SESSION_ENCRYPTED = 2;
+	private static final int FRAME_HEADER_LENGTH = 5;
+	private static final int FRAME_MAX_LENGTH = 64 * 1024 * 1024;
 	
-	private InputStreamReader isrSocket = null;
-	private BufferedReader reader = null;
+	private DataInputStream input = null;
+	private OutputStream output = null;
 	private PrintWriter writer = null;
 	private Socket socket = null;
 	private int port = 0;
@@ -51,6 +82,48 @@ public class Connection {
 	private boolean retrying = false;
 	private boolean cancelRetries = false;
 	
+	//Clave de sesión acordada con el otro extremo, ver setSessionEncryption
+	private boolean sessionEncryption = false;
+	private KeyPair sessionKeyPair = null;
+	private boolean sessionKeySent = false;
+	private SessionEncryptor sessionEncryptor = null;
+	
+	//Tramas binarias acordadas con el otro extremo, ver setBinaryFraming
+	private boolean binaryFraming = false;
+	private final Object outputLock = new Object();
+	private boolean framingOfferSent = false;
+	private boolean binaryOutput = false;
+	private boolean binaryInput = false;
+	private int frameLength = -1;
+	
+	//Conexión de un ConnectionsServer, leída y escrita sin bloquear por su selector
+	private static final int READ_BUFFER_SIZE = 8192;
+	private static final Charset CHARSET = Charset.defaultCharset();
+	private SocketChannel channel = null;
+	private SelectionKey selectionKey = null;
+	private ConnectionsServer server = null;
+	private ByteBuffer readBuffer = null;
+	private byte[] lineBytes = null;
+	private int lineLength = 0;
+	private boolean channelClosed = false;
+	//El canal solo lo cierra el hilo del selector, para no cancelar su clave mientras la está usando
+	private boolean channelCloseDone = false;
+	//Las comunicaciones se acumulan y el selector las escribe juntas al llegar a flushSize o pasar flushDelay
+	private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<ByteBuffer>();
+	private long pendingBytes = 0;
+	private boolean writeScheduled = false;
+	private boolean writeNow = false;
+	private volatile long flushTime = 0;
+	private int flushSize = FLUSH_SIZE_DEFAULT;
+	private int flushDelay = FLUSH_DELAY_DEFAULT;
+	private long maxPendingBytes = MAX_PENDING_BYTES_DEFAULT;
+	private boolean dropOverflow = false;
+	private long droppedComunications = 0;
+	//Los eventos se lanzan en orden, de uno en uno, en los hilos del servidor
+	private Executor eventsExecutor = null;
+	private final Queue<Runnable> pendingEvents = new ArrayDeque<Runnable>();
+	private boolean runningEvents = false;
+	
 	protected EventListenerList listenerList = new EventListenerList();
 	
 	public static class Texts extends LocalizedStrings {
@@ -192,10 +265,13 @@ public class Connection {
 		try {
 
 			this.socket = socket;
+			resetSession();
+			resetFraming();
 			
-			isrSocket = new InputStreamReader(socket.getInputStream());
-			reader = new BufferedReader(isrSocket);
-			writer = new PrintWriter(socket.getOutputStream(), true);
+			input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			output = socket.getOutputStream();
+			writer = new PrintWriter(output, true);
+			lineBytes = new byte[256];
 			
 			Thread thread = new Thread() {
 				public void run() {
@@ -224,11 +300,8 @@ public class Connection {
 			}
 		}
 		finally {
-			if (isrSocket != null) {
-				try { isrSocket.close(); } catch (IOException e) {}
-			}
-			if (reader != null) {
-				try { reader.close(); } catch (IOException e) {}
+			if (input != null) {
+				try { input.close(); } catch (IOException e) {}
 			}
 			if (writer != null)
 				writer.close();
@@ -239,56 +312,524 @@ public class Connection {
 			connectionEnd();
 			
 			this.socket = null;
-			reader = null;
+			input = null;
+			output = null;
 			writer = null;
 		}
     }
 	
 	private String socketReading() throws IOException {
 		
-		String inputLine = reader.readLine();
-		
-		String readedText = null;
-		if (inputLine != null) {
-			//Restauramos los saltos de linea originales
-			readedText = Strings.replace(inputLine, LINE_SEPARATOR_VIRTUAL, Constants.LINE_SEPARATOR);
+		while (true) {
 			
-			if (isEncodeComunications()) {
+			if (binaryInput) {
+				byte type;
+				byte[] payload;
 				try {
-					//Desencriptamos el texto
-					readedText = Security.getEncryptor().decryptText(readedText);
+					int length = getFrameLength(input.readInt());
+					type = input.readByte();
+					payload = new byte[length];
+					input.readFully(payload);
 				}
-				catch (Throwable ex) {
-					throw new IOException(TEXTS.cantDecriptText);
+				catch (EOFException ex) {
+					return null;
 				}
+				return decodeFrame(type, payload);
+			}
+			
+			int length = 0;
+			int b;
+			while ((b = input.read()) != -1 && b != '\n') {
+				if (length == lineBytes.length)
+					lineBytes = Arrays.copyOf(lineBytes, length * 2);
+				lineBytes[length++] = (byte) b;
 			}
+			if (b == -1 && length == 0)
+				return null;
 			
-			if (readedText.equals(END_CONNECTION))
-				readedText = null;
+			String inputLine = newLine(length);
+			if (inputLine.equals(BINARY_FRAMES_START))
+				startBinaryInput();
+			else
+				return decodeComunication(inputLine);
 		}
-		return readedText;
 	}
 	
 	/**
-	 * Escribirá al servidor cuando creemos una ConexionCliente independiente y escribirá al cliente conectado cuando se use internamente en el servidor
+	 * Igual que BufferedReader.readLine, quitamos el \r de los saltos de línea \r\n
 	 */
-	public void sendComunication(String text) {
+	private String newLine(int length) {
+		int end = length > 0 && lineBytes[length - 1] == '\r' ? length - 1 : length;
+		return new String(lineBytes, 0, end, CHARSET);
+	}
+	
+	private static int getFrameLength(int length) throws IOException {
+		if (length < 0 || length > FRAME_MAX_LENGTH)
+			throw new IOException(TEXTS.cantDecriptText);
+		return length;
+	}
+	
+	/**
+	 * Devuelve el texto enviado en la línea, o null si es el fin de la conexión
+	 */
+	private String decodeComunication(String inputLine) throws IOException {
+		
+		//Restauramos los saltos de linea originales
+		String readedText = Strings.replace(inputLine, LINE_SEPARATOR_VIRTUAL, Constants.LINE_SEPARATOR);
 		
-		String comunication = text;
 		if (isEncodeComunications()) {
 			try {
-				//Encriptamos el texto
-				comunication = Security.getEncryptor().encryptText(text);
+				//Desencriptamos el texto
+				if (readedText.startsWith(SESSION_ENCRYPTED))
+					readedText = getSessionEncryptor().decryptText(readedText.substring(SESSION_ENCRYPTED.length()));
+				else
+					readedText = Security.getEncryptor().decryptText(readedText);
+			}
+			catch (Throwable ex) {
+				throw new IOException(TEXTS.cantDecriptText);
+			}
+		}
+		
+		return readedText.equals(END_CONNECTION) ? null : readedText;
+	}
+	
+	/**
+	 * Devuelve el texto enviado en la trama, o null si es el fin de la conexión
+	 */
+	private String decodeFrame(byte type, byte[] payload) throws IOException {
+		
+		String readedText;
+		try {
+			if (type == FRAME_SESSION_ENCRYPTED) {
+				SessionEncryptor sessionEncryptor = getSessionEncryptor();
+				readedText = new String(sessionEncryptor.decryptData(payload), sessionEncryptor.getCharSet());
+			}
+			else if (type == FRAME_ENCRYPTED) {
+				Encryptor encryptor = Security.getEncryptor();
+				readedText = new String(encryptor.decryptData(payload), encryptor.getCharSet());
+			}
+			else if (type == FRAME_TEXT && !isEncodeComunications()) {
+				readedText = new String(payload, Encryptor.CHARSET_DEFAULT);
+			}
+			else {
+				//Si encriptamos las comunicaciones no admitimos tramas sin encriptar
+				throw new IOException(TEXTS.cantDecriptText);
+			}
+		}
+		catch (Throwable ex) {
+			throw new IOException(TEXTS.cantDecriptText);
+		}
+		
+		return readedText.equals(END_CONNECTION) ? null : readedText;
+	}
+	
+	//
+	// Connections of a ConnectionsServer
+	//
+	
+	/**
+	 * Inicia la conexión aceptada por el servidor, que la leerá y escribirá desde su selector y lanzará los eventos con eventsExecutor
+	 */
+	void initChannel(SocketChannel channel, SelectionKey selectionKey, ConnectionsServer server, Executor eventsExecutor) {
+		
+		this.channel = channel;
+		this.socket = channel.socket();
+		resetSession();
+		resetFraming();
+		this.selectionKey = selectionKey;
+		this.server = server;
+		this.eventsExecutor = eventsExecutor;
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		this.lineBytes = new byte[256];
+		
+		fireEventInOrder(new Runnable() {
+			public void run() {
+				connectionDone();
+			}
+		});
+	}
+	
+	/**
+	 * Lee lo que haya llegado sin bloquear y manda decodificar cada línea completa a los hilos del servidor
+	 * 
+	 * @return false si el otro extremo ha cerrado la conexión
+	 */
+	boolean readChannel() throws IOException {
+		
+		int readBytes;
+		while ((readBytes = channel.read(readBuffer)) > 0) {
+			
+			byte[] bytes = readBuffer.array();
+			int length = readBuffer.position();
+			int index = 0;
+			while (index < length)
+				index = binaryInput ? readFrame(bytes, index, length) : readLine(bytes, index, length);
+			readBuffer.clear();
+		}
+		return readBytes != -1;
+	}
+	
+	/**
+	 * Añade los bytes a la línea actual hasta el salto de línea
+	 * 
+	 * @return el índice del primer byte que no es de la línea
+	 */
+	private int readLine(byte[] bytes, int from, int to) throws IOException {
+		
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == '\n') {
+				final String inputLine = newLine(lineLength);
+				lineLength = 0;
+				if (inputLine.equals(BINARY_FRAMES_START)) {
+					//Lo que venga a continuación ya son tramas
+					startBinaryInput();
+				}
+				else {
+					fireEventInOrder(new Runnable() {
+						public void run() {
+							receiveLine(inputLine, (byte) -1, null);
+						}
+					});
+				}
+				return i + 1;
+			}
+			if (lineLength == lineBytes.length)
+				lineBytes = Arrays.copyOf(lineBytes, lineLength * 2);
+			lineBytes[lineLength++] = bytes[i];
+		}
+		return to;
+	}
+	
+	/**
+	 * Añade los bytes a la trama actual hasta completar su cabecera y su contenido
+	 * 
+	 * @return el índice del primer byte que no es de la trama
+	 */
+	private int readFrame(byte[] bytes, int from, int to) throws IOException {
+		
+		int frameEnd = frameLength < 0 ? FRAME_HEADER_LENGTH : FRAME_HEADER_LENGTH + frameLength;
+		int count = Math.min(frameEnd - lineLength, to - from);
+		if (lineLength + count > lineBytes.length)
+			lineBytes = Arrays.copyOf(lineBytes, Math.max(lineBytes.length * 2, lineLength + count));
+		System.arraycopy(bytes, from, lineBytes, lineLength, count);
+		lineLength += count;
+		
+		if (frameLength < 0 && lineLength == FRAME_HEADER_LENGTH)
+			frameLength = getFrameLength(ByteBuffer.wrap(lineBytes).getInt());
+		
+		if (frameLength >= 0 && lineLength == FRAME_HEADER_LENGTH + frameLength) {
+			final byte type = lineBytes[FRAME_HEADER_LENGTH - 1];
+			final byte[] payload = Arrays.copyOfRange(lineBytes, FRAME_HEADER_LENGTH, lineLength);
+			lineLength = 0;
+			frameLength = -1;
+			fireEventInOrder(new Runnable() {
+				public void run() {
+					receiveLine(null, type, payload);
+				}
+			});
+		}
+		return from + count;
+	}
+	
+	/**
+	 * Decodifica la línea, o la trama si inputLine es null, y lanza la comunicación recibida
+	 */
+	private void receiveLine(String inputLine, byte frameType, byte[] payload) {
+		
+		if (isChannelClosed())
+			return;
+		
+		try {
+			String comunication = inputLine != null ? decodeComunication(inputLine) : decodeFrame(frameType, payload);
+			if (comunication != null)
+				receiveComunicacion(comunication);
+			else
+				closeChannel();
+		}
+		catch (IOException ex) {
+			System.err.println(ex.getMessage());
+			closeChannel();
+		}
+	}
+	
+	/**
+	 * Deja la comunicación pendiente para que el selector la escriba junto con las siguientes
+	 * 
+	 * @param droppable si se puede descartar cuando el otro extremo no lee y ya hay maxPendingBytes pendientes
+	 */
+	private void writeChannel(ByteBuffer buffer, boolean droppable) {
+		
+		boolean writeDelayed = false;
+		synchronized (pendingWrites) {
+			
+			//Si el otro extremo no lee lo que le mandamos esperamos a que haya sitio o descartamos la comunicación
+			while (!channelClosed && pendingBytes > 0 && pendingBytes + buffer.remaining() > maxPendingBytes) {
+				if (!droppable || server.isSelectorThread())
+					break;
+				if (dropOverflow) {
+					droppedComunications++;
+					return;
+				}
+				if (!writeNow) {
+					writeNow = writeScheduled = true;
+					server.writePendingComunications(this);
+				}
+				try {
+					pendingWrites.wait();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					droppedComunications++;
+					return;
+				}
+			}
+			
+			if (channelClosed)
+				return;
+			
+			pendingWrites.add(buffer);
+			pendingBytes += buffer.remaining();
+			
+			if (pendingBytes >= flushSize || flushDelay <= 0) {
+				if (!writeNow) {
+					writeNow = writeScheduled = true;
+					server.writePendingComunications(this);
+				}
+			}
+			else if (!writeScheduled) {
+				writeScheduled = true;
+				writeDelayed = true;
+				flushTime = System.nanoTime() + flushDelay * 1000000L;
+			}
+		}
+		
+		if (writeDelayed)
+			server.writePendingComunicationsLater(this);
+	}
+	
+	/**
+	 * Escribe desde el selector las comunicaciones pendientes, todas juntas en la misma escritura si se puede
+	 * 
+	 * @return true si ya no queda nada pendiente
+	 */
+	boolean writePendingComunications() throws IOException {
+		synchronized (pendingWrites) {
+			
+			long written = 0;
+			while (!pendingWrites.isEmpty()) {
+				long bytes = channel.write(pendingWrites.toArray(new ByteBuffer[pendingWrites.size()]));
+				while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining())
+					pendingWrites.poll();
+				written += bytes;
+				if (bytes == 0)
+					break;
+			}
+			
+			if (written > 0) {
+				pendingBytes -= written;
+				//Despertamos a los que esperaban sitio
+				pendingWrites.notifyAll();
+			}
+			
+			if (!pendingWrites.isEmpty())
+				return false;
+			
+			writeScheduled = false;
+			writeNow = false;
+			return true;
+		}
+	}
+	
+	/**
+	 * Momento (System.nanoTime) en el que el selector tiene que escribir las comunicaciones acumuladas
+	 */
+	long getFlushTime() {
+		return flushTime;
+	}
+	
+	/**
+	 * Cierra la conexión del servidor y lanza el fin de la conexión detrás de los eventos pendientes.
+	 * Fuera del hilo del selector solo deja de admitir comunicaciones y el canal lo cierra el selector
+	 */
+	void closeChannel() {
+		
+		synchronized (pendingWrites) {
+			if (channel == null || channelClosed)
+				return;
+			channelClosed = true;
+			pendingWrites.clear();
+			pendingBytes = 0;
+			pendingWrites.notifyAll();
+		}
+		
+		if (server.isSelectorThread() || !server.closeChannelLater(this))
+			closeChannelNow();
+	}
+	
+	/**
+	 * Cierra el canal una vez cerrada la conexión con closeChannel, desde el hilo del selector
+	 */
+	void closeChannelNow() {
+		
+		synchronized (pendingWrites) {
+			if (channel == null || !channelClosed || channelCloseDone)
+				return;
+			channelCloseDone = true;
+		}
+		
+		try { channel.close(); } catch (IOException e) {}
+		
+		fireEventInOrder(new Runnable() {
+			public void run() {
+				socket = null;
+				connectionEnd();
+			}
+		});
+	}
+	
+	private boolean isChannelClosed() {
+		synchronized (pendingWrites) {
+			return channelClosed;
+		}
+	}
+	
+	SelectionKey getSelectionKey() {
+		return selectionKey;
+	}
+	
+	private void fireEventInOrder(Runnable event) {
+		
+		boolean runEvents;
+		synchronized (pendingEvents) {
+			pendingEvents.add(event);
+			runEvents = !runningEvents;
+			runningEvents = true;
+		}
+		
+		if (runEvents) {
+			Runnable eventsRunner = new Runnable() {
+				public void run() {
+					runPendingEvents();
+				}
+			};
+			try {
+				eventsExecutor.execute(eventsRunner);
+			}
+			catch (RuntimeException ex) {
+				//El servidor ya se ha finalizado, así que los lanzamos en este hilo
+				eventsRunner.run();
+			}
+		}
+	}
+	
+	private void runPendingEvents() {
+		
+		while (true) {
+			Runnable event;
+			synchronized (pendingEvents) {
+				event = pendingEvents.poll();
+				if (event == null) {
+					runningEvents = false;
+					return;
+				}
+			}
+			try {
+				event.run();
 			}
 			catch (Throwable ex) {
 				ex.printStackTrace();
 			}
 		}
+	}
+	
+	/**
+	 * Escribirá al servidor cuando creemos una ConexionCliente independiente y escribirá al cliente conectado cuando se use internamente en el servidor
+	 */
+	public void sendComunication(String text) {
+		SessionEncryptor sessionEncryptor = isEncodeComunications() && isSessionEncryption() ? getSessionEncryptorToSend() : null;
+		sendComunication(text, sessionEncryptor, !text.equals(END_CONNECTION));
+	}
+	
+	private void sendComunication(String text, SessionEncryptor sessionEncryptor, boolean droppable) {
+		
+		synchronized (outputLock) {
+			
+			if (binaryOutput) {
+				writeFrame(text, sessionEncryptor, droppable);
+				return;
+			}
+			
+			String comunication = text;
+			if (isEncodeComunications()) {
+				try {
+					//Encriptamos el texto
+					if (sessionEncryptor != null)
+						comunication = SESSION_ENCRYPTED + sessionEncryptor.encryptText(text);
+					else
+						comunication = Security.getEncryptor().encryptText(text);
+				}
+				catch (Throwable ex) {
+					ex.printStackTrace();
+				}
+			}
+			
+			//Sustituimos los saltos de línea por el texto definido para ellos
+			comunication = comunication.replaceAll(Constants.REGEX_LINE_SEPARATOR, LINE_SEPARATOR_VIRTUAL);
+			
+			writeLine(comunication, droppable);
+		}
+	}
+	
+	private void writeLine(String line, boolean droppable) {
+		if (channel != null)
+			writeChannel(ByteBuffer.wrap((line + Constants.LINE_SEPARATOR).getBytes(CHARSET)), droppable);
+		else
+			writer.println(line);
+	}
+	
+	private void writeFrame(String text, SessionEncryptor sessionEncryptor, boolean droppable) {
+		
+		//En las tramas no hace falta Base64 ni sustituir los saltos de línea
+		byte type = FRAME_TEXT;
+		byte[] payload;
+		try {
+			if (isEncodeComunications() && sessionEncryptor != null) {
+				payload = sessionEncryptor.encryptData(text.getBytes(sessionEncryptor.getCharSet()));
+				type = FRAME_SESSION_ENCRYPTED;
+			}
+			else if (isEncodeComunications()) {
+				Encryptor encryptor = Security.getEncryptor();
+				payload = encryptor.encryptData(text.getBytes(encryptor.getCharSet()));
+				type = FRAME_ENCRYPTED;
+			}
+			else {
+				payload = text.getBytes(Encryptor.CHARSET_DEFAULT);
+			}
+		}
+		catch (Throwable ex) {
+			//El otro extremo no admite tramas sin encriptar, así que no la mandamos
+			ex.printStackTrace();
+			return;
+		}
 		
-		//Sustituimos los saltos de línea por el texto definido para ellos
-		comunication = comunication.replaceAll(Constants.REGEX_LINE_SEPARATOR, LINE_SEPARATOR_VIRTUAL);
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + payload.length);
+		frame.putInt(payload.length).put(type).put(payload);
+		frame.flip();
 		
-		writer.println(comunication);
+		if (channel != null) {
+			writeChannel(frame, droppable);
+		}
+		else {
+			//Al mandar el fin de la conexión el otro extremo puede cerrarla antes de que volvamos del write
+			OutputStream output = this.output;
+			try {
+				output.write(frame.array());
+				output.flush();
+			}
+			catch (IOException ex) {
+				//Como con el PrintWriter, el fin de la conexión lo detecta la lectura
+			}
+		}
 	}
 	
 	public void finalizeConnection() {
@@ -349,11 +890,27 @@ public class Connection {
 	 * Leerá del servidor cuando creemos una ConexionCliente independiente y leerá del cliente conectado cuando se use internamente en el servidor
 	 */
 	private void receiveComunicacion(String text) {
-		fireConnectionEvent(this, ConnectionEvent.COMUNICATION_RECEIVED, text);
+		if (text.equals(BINARY_FRAMING)) {
+			if (isBinaryFraming())
+				startBinaryOutput();
+		}
+		else if (text.startsWith(SESSION_KEY)) {
+			//Si no usamos clave de sesión la ignoramos y el otro extremo seguirá con la encriptación normal
+			if (isSessionEncryption() && isEncodeComunications())
+				receiveSessionKey(text.substring(SESSION_KEY.length()));
+		}
+		else {
+			fireConnectionEvent(this, ConnectionEvent.COMUNICATION_RECEIVED, text);
+		}
 	}
 	private void connectionDone() {
 		setRetrying(false);
 		cancelRetries = true;
+		if (isBinaryFraming())
+			sendFramingOffer();
+		//Mandamos nuestra clave pública antes que cualquier comunicación
+		if (isSessionEncryption() && isEncodeComunications())
+			getSessionEncryptorToSend();
 		fireConnectionEvent(this, ConnectionEvent.CONNECTION_DONE, null);
 	}
 	private  void connectionEnd() {
@@ -363,6 +920,107 @@ public class Connection {
 		fireConnectionEvent(this, ConnectionEvent.CONNECTION_FAILED, error);
 	}
 	
+	//
+	// Binary framing
+	//
+	
+	private void resetFraming() {
+		synchronized (outputLock) {
+			framingOfferSent = false;
+			binaryOutput = false;
+		}
+		binaryInput = false;
+		frameLength = -1;
+		lineLength = 0;
+	}
+	
+	private void sendFramingOffer() {
+		synchronized (outputLock) {
+			if (!framingOfferSent) {
+				framingOfferSent = true;
+				sendComunication(BINARY_FRAMING, null, false);
+			}
+		}
+	}
+	
+	/**
+	 * Solo pasamos a leer tramas si las hemos ofrecido, si no el otro extremo no está siguiendo el protocolo
+	 */
+	private void startBinaryInput() throws IOException {
+		boolean framingOffered;
+		synchronized (outputLock) {
+			framingOffered = isBinaryFraming() && framingOfferSent;
+		}
+		if (!framingOffered)
+			throw new IOException(TEXTS.cantDecriptText);
+		binaryInput = true;
+	}
+	
+	/**
+	 * El otro extremo admite tramas: nos aseguramos de que también tiene nuestra oferta,
+	 * le avisamos con una línea sin encriptar y a partir de ahí le escribimos tramas
+	 */
+	private void startBinaryOutput() {
+		synchronized (outputLock) {
+			if (!binaryOutput) {
+				sendFramingOffer();
+				writeLine(BINARY_FRAMES_START, false);
+				binaryOutput = true;
+			}
+		}
+	}
+	
+	//
+	// Session key
+	//
+	
+	private synchronized void resetSession() {
+		sessionKeyPair = null;
+		sessionKeySent = false;
+		sessionEncryptor = null;
+	}
+	
+	/**
+	 * Manda nuestra clave pública la primera vez, ya que el otro extremo la necesita para desencriptar,
+	 * y devuelve el encriptador de la sesión si ya tenemos también la suya
+	 */
+	private synchronized SessionEncryptor getSessionEncryptorToSend() {
+		
+		if (!sessionKeySent) {
+			try {
+				String publicKey = Base64.getEncoder().encodeToString(getSessionKeyPair().getPublic().getEncoded());
+				sessionKeySent = true;
+				sendComunication(SESSION_KEY + publicKey, null, false);
+			}
+			catch (Throwable ex) {
+				//Seguimos con la encriptación normal
+				ex.printStackTrace();
+			}
+		}
+		return sessionEncryptor;
+	}
+	
+	private synchronized void receiveSessionKey(String publicKey) {
+		try {
+			sessionEncryptor = SessionEncryptor.newSessionEncryptor(getSessionKeyPair().getPrivate(), Base64.getDecoder().decode(publicKey));
+		}
+		catch (Throwable ex) {
+			ex.printStackTrace();
+		}
+	}
+	
+	private synchronized SessionEncryptor getSessionEncryptor() throws IOException {
+		if (sessionEncryptor == null)
+			throw new IOException(TEXTS.cantDecriptText);
+		return sessionEncryptor;
+	}
+	
+	private synchronized KeyPair getSessionKeyPair() throws Throwable {
+		if (sessionKeyPair == null)
+			sessionKeyPair = SessionEncryptor.newKeyPair();
+		return sessionKeyPair;
+	}
+	
 	public String getDefaultName() {
 		
 		String defaultName = getHost() != null ? getHost().getHostName() : TEXTS.connection;
@@ -416,6 +1074,72 @@ public class Connection {
 	public void setEncodeComunications(boolean encodeComunications) {
 		this.encodeComunications = encodeComunications;
 	}
+	public boolean isBinaryFraming() {
+		return binaryFraming;
+	}
+	/**
+	 * If both ends enable it, after the connection the communications are sent as binary frames
+	 * (length, type and content) instead of text lines, so they don't need Base64 or replacing the line breaks.
+	 * Otherwise the text lines are kept
+	 */
+	public void setBinaryFraming(boolean binaryFraming) {
+		this.binaryFraming = binaryFraming;
+	}
+	public int getFlushSize() {
+		return flushSize;
+	}
+	/**
+	 * In a connection of a {@link ConnectionsServer}, the communications sent are accumulated and written together
+	 * when they reach this size in bytes or after {@link #setFlushDelay(int)} milliseconds
+	 */
+	public void setFlushSize(int flushSize) {
+		this.flushSize = flushSize;
+	}
+	public int getFlushDelay() {
+		return flushDelay;
+	}
+	/**
+	 * Maximum milliseconds that a communication sent waits to be written with the next ones, 0 to write them as soon as possible
+	 */
+	public void setFlushDelay(int flushDelay) {
+		this.flushDelay = flushDelay;
+	}
+	public long getMaxPendingBytes() {
+		return maxPendingBytes;
+	}
+	/**
+	 * Maximum bytes pending to be written when the other end reads slower than we send.
+	 * Beyond this, sendComunication waits until there is room or drops the communication (see {@link #setDropOverflow(boolean)})
+	 */
+	public void setMaxPendingBytes(long maxPendingBytes) {
+		this.maxPendingBytes = maxPendingBytes;
+	}
+	public boolean isDropOverflow() {
+		return dropOverflow;
+	}
+	/**
+	 * If true, the communications that don't fit in {@link #getMaxPendingBytes()} are dropped instead of waiting,
+	 * so a slow reader can't stall the thread that sends
+	 */
+	public void setDropOverflow(boolean dropOverflow) {
+		this.dropOverflow = dropOverflow;
+	}
+	public long getDroppedComunications() {
+		synchronized (pendingWrites) {
+			return droppedComunications;
+		}
+	}
+	public boolean isSessionEncryption() {
+		return sessionEncryption;
+	}
+	/**
+	 * If both ends enable it, after the connection they exchange public keys and encrypt the communications
+	 * with AES/GCM and the session key agreed (see {@link SessionEncryptor}) instead of with the password of {@link Security#getEncryptor()}.
+	 * It's only used if the communications are encoded
+	 */
+	public void setSessionEncryption(boolean sessionEncryption) {
+		this.sessionEncryption = sessionEncryption;
+	}
 	public boolean isRetrying() {
 		return retrying && !cancelRetries;
 	}
@@ -17,24 +17,63 @@
 package linaje.comunications;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Queue;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import linaje.LocalizedStrings;
+import linaje.statics.Constants;
 import linaje.tests.TestConnectionsServer;
 import linaje.utils.Strings;
 
+/**
+ * Server of {@link Connection}s on a port.
+ * <p>
+ * A single thread accepts the connections and reads and writes all of them with a non-blocking {@link Selector},
+ * and the communications received are decoded and notified in a pool of a fixed number of threads (see {@link #setWorkerThreads(int)}).
+ * The events of each connection are notified in order, one after another.
+ */
 public class ConnectionsServer {
 
-	private ServerSocket serverSocket = null;
+	public static final int WORKER_THREADS_DEFAULT = Math.max(2, Runtime.getRuntime().availableProcessors());
+	
+	private volatile ServerSocketChannel serverChannel = null;
+	private volatile Selector selector = null;
+	private Thread selectorThread = null;
+	private ExecutorService workers = null;
+	//Conexiones con comunicaciones pendientes de escribir, la selección de escritura solo se cambia desde el hilo del selector
+	private final Queue<Connection> pendingWriteConnections = new ConcurrentLinkedQueue<Connection>();
+	//Conexiones que acumulan comunicaciones hasta su getFlushTime()
+	private final Queue<Connection> delayedWriteConnections = new ConcurrentLinkedQueue<Connection>();
+	//Conexiones cerradas desde otros hilos cuyo canal tiene que cerrar el selector
+	private final Queue<Connection> closedConnections = new ConcurrentLinkedQueue<Connection>();
 	private static HashMap<Integer, ConnectionsServer> servers = null;
 	private Vector<Connection> connections = null;
 	
 	private int port = 0;
+	private int workerThreads = WORKER_THREADS_DEFAULT;
+	private boolean sessionEncryption = false;
+	private boolean binaryFraming = false;
+	private int flushSize = Connection.FLUSH_SIZE_DEFAULT;
+	private int flushDelay = Connection.FLUSH_DELAY_DEFAULT;
+	private long maxPendingBytes = Connection.MAX_PENDING_BYTES_DEFAULT;
+	private boolean dropOverflow = false;
 	
-	private boolean connectionsBlocked = false;
+	private volatile boolean connectionsBlocked = false;
 	
 	private EventListenerList listenerList = null;
 	
@@ -83,19 +122,26 @@ public class ConnectionsServer {
 			
 			if (!isConnected()) {
 				setConnectionsBlocked(false);
-				serverSocket = new ServerSocket(getPort());
+				selector = Selector.open();
+				serverChannel = ServerSocketChannel.open();
+				serverChannel.socket().bind(new InetSocketAddress(getPort()));
+				serverChannel.configureBlocking(false);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 				
-				Thread thread = new Thread() {
+				workers = Executors.newFixedThreadPool(getWorkerThreads(), newThreadFactory("ConnectionsServer-" + getPort() + "-worker-"));
+				
+				final Selector serverSelector = selector;
+				selectorThread = new Thread("ConnectionsServer-" + getPort()) {
 					public void run() {
 						try {
-							initConnectionsListening();
+							selectConnections(serverSelector);
 						}
 						catch (Throwable ex) {
 							ex.printStackTrace();
 						}
 					}
 				};
-				thread.start();
+				selectorThread.start();
 				
 				System.out.println(TEXTS.serverCreatedOnPort+port);
 			}
@@ -106,8 +152,20 @@ public class ConnectionsServer {
 		}
 	}
 	
+	private static ThreadFactory newThreadFactory(final String namePrefix) {
+		
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+	
 	public boolean isConnected() {
-		return serverSocket != null;
+		return serverChannel != null;
 	}
 	
 	public void finalizeConnections() {
@@ -133,69 +191,226 @@ public class ConnectionsServer {
 			System.out.println(TEXTS.finalizingServerOnPort + getPort() + "...");
 			
 			try {
-				serverSocket.close();
+				serverChannel.close();
 			}
 			catch (IOException ex) {
 				ex.printStackTrace();
 			}
 			finally {
-				serverSocket = null;
-				connections = null;
+				serverChannel = null;
+				selector.wakeup();
 				try {
-					//Damos tiempo a que finalice la espera de conexión
-					Thread.sleep(1000);
+					//Damos tiempo a que el selector cierre las conexiones
+					selectorThread.join(1000);
 				}
 				catch (InterruptedException ex) {
 				}
+				//Los eventos pendientes se siguen lanzando, pero ya no se admiten más
+				workers.shutdown();
+				selectorThread = null;
+				selector = null;
+				workers = null;
+				connections = null;
 				
 				System.out.println(TEXTS.serverFinalized);
 			}
 		}
+		else if (selector != null) {
+			//Ha fallado initServer
+			try { selector.close(); } catch (IOException ex) {}
+			selector = null;
+			if (workers != null)
+				workers.shutdown();
+			workers = null;
+		}
 	}
 	
-	private synchronized void initConnectionsListening() throws IOException, InterruptedException {
-		
-		Connection connection = null;
+	/**
+	 * Bucle del hilo del selector: acepta las conexiones nuevas, lee las comunicaciones y escribe las que no se pudieron escribir de una vez
+	 */
+	private void selectConnections(Selector selector) throws IOException {
 		
-		while (getServerSocket() != null) {
-			
-			if (connection == null || connection.isConnected()) {
+		try {
+			while (isConnected()) {
 				
-				if (!areConnectionsBlocked()) {
-					//Nos pondremos a la escucha de una nueva conexión la primera vez o cuando se conecte un cliente
-					connection = new Connection(getPort());
-					connection.addConnectionListener(new ConnectionListener() {
-						
-						public void connectionDone(ConnectionEvent evt) {
-							
-							Connection connection = evt.getConnection();
-							assignConnectionName(connection);
-							getConnections().addElement(connection);
-							fireConnectionEvent(evt);
-						}
-						
-						public void connectionEnd(ConnectionEvent evt) {
-							Connection connection = evt.getConnection();
-							getConnections().removeElement(connection);
-							fireConnectionEvent(evt);
+				Connection closedConnection;
+				while ((closedConnection = closedConnections.poll()) != null)
+					closedConnection.closeChannelNow();
+				
+				for (SelectionKey key : selector.keys()) {
+					if (key.isValid() && key.channel() instanceof ServerSocketChannel)
+						setInterestOps(key, areConnectionsBlocked() ? 0 : SelectionKey.OP_ACCEPT);
+				}
+				
+				//Las conexiones que ya han esperado su flushDelay pasan a escribir
+				long timeout = 0;
+				long now = System.nanoTime();
+				for (Iterator<Connection> iterator = delayedWriteConnections.iterator(); iterator.hasNext();) {
+					Connection delayedWriteConnection = iterator.next();
+					long delay = delayedWriteConnection.getFlushTime() - now;
+					if (delay <= 0) {
+						iterator.remove();
+						pendingWriteConnections.add(delayedWriteConnection);
+					}
+					else {
+						long delayMillis = Math.max(1, delay / 1000000);
+						timeout = timeout == 0 ? delayMillis : Math.min(timeout, delayMillis);
+					}
+				}
+				
+				Connection pendingWriteConnection;
+				while ((pendingWriteConnection = pendingWriteConnections.poll()) != null) {
+					SelectionKey key = pendingWriteConnection.getSelectionKey();
+					if (key != null)
+						setInterestOps(key, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+				
+				selector.select(timeout);
+				
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					
+					SelectionKey key = selectedKeys.next();
+					selectedKeys.remove();
+					
+					if (!key.isValid())
+						continue;
+					
+					if (key.isAcceptable()) {
+						acceptConnection(selector, (ServerSocketChannel) key.channel());
+					}
+					else {
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isReadable() && !connection.readChannel())
+								connection.closeChannel();
+							else if (key.isValid() && key.isWritable() && connection.writePendingComunications())
+								key.interestOps(SelectionKey.OP_READ);
 						}
-						
-						public void comunicationReceived(ConnectionEvent evt) {
-							fireConnectionEvent(evt);
+						catch (IOException ex) {
+							connection.closeChannel();
 						}
-						public void connectionFailed(ConnectionEvent evt) {
-							fireConnectionEvent(evt);
+						catch (CancelledKeyException ex) {
+							//El canal ya se ha cerrado, no hay nada más que hacer con esta clave
+							connection.closeChannel();
 						}
-					});
-					connection.initListening(getServerSocket());
+					}
 				}
 			}
-			else {
-				Thread.sleep(100);
+		}
+		finally {
+			//Cerramos las conexiones que sigan abiertas al finalizar el servidor, también las cerradas desde otros hilos
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					Connection connection = (Connection) key.attachment();
+					connection.closeChannel();
+					connection.closeChannelNow();
+				}
 			}
+			closedConnections.clear();
+			selector.close();
 		}
 	}
 	
+	private static void setInterestOps(SelectionKey key, int ops) {
+		try {
+			if (key.isValid())
+				key.interestOps(ops);
+		}
+		catch (CancelledKeyException ex) {
+			//Se ha cancelado entre la comprobación y el cambio
+		}
+	}
+	
+	private void acceptConnection(Selector selector, ServerSocketChannel serverChannel) throws IOException {
+		
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+			return;
+		
+		Connection connection = new Connection(getPort());
+		connection.setSessionEncryption(isSessionEncryption());
+		connection.setBinaryFraming(isBinaryFraming());
+		connection.setFlushSize(getFlushSize());
+		connection.setFlushDelay(getFlushDelay());
+		connection.setMaxPendingBytes(getMaxPendingBytes());
+		connection.setDropOverflow(isDropOverflow());
+		connection.addConnectionListener(new ConnectionListener() {
+			
+			public void connectionDone(ConnectionEvent evt) {
+				
+				Connection connection = evt.getConnection();
+				assignConnectionName(connection);
+				getConnections().addElement(connection);
+				fireConnectionEvent(evt);
+			}
+			
+			public void connectionEnd(ConnectionEvent evt) {
+				Connection connection = evt.getConnection();
+				getConnections().removeElement(connection);
+				fireConnectionEvent(evt);
+			}
+			
+			public void comunicationReceived(ConnectionEvent evt) {
+				fireConnectionEvent(evt);
+			}
+			public void connectionFailed(ConnectionEvent evt) {
+				fireConnectionEvent(evt);
+			}
+		});
+		
+		try {
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+			connection.initChannel(channel, key, this, workers);
+		}
+		catch (IOException ex) {
+			try { channel.close(); } catch (IOException ex2) {}
+			System.err.println(Connection.TEXTS.exceptionListeningNewClient + getPort() + Constants.LINE_SEPARATOR + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Asks the selector thread to write the pending communications of the connection
+	 */
+	void writePendingComunications(Connection connection) {
+		Selector selector = this.selector;
+		if (selector != null) {
+			pendingWriteConnections.add(connection);
+			selector.wakeup();
+		}
+	}
+	
+	/**
+	 * Asks the selector thread to write the pending communications of the connection at its flush time
+	 */
+	void writePendingComunicationsLater(Connection connection) {
+		Selector selector = this.selector;
+		if (selector != null) {
+			delayedWriteConnections.add(connection);
+			//El selector tiene que recalcular cuánto puede esperar
+			selector.wakeup();
+		}
+	}
+	
+	/**
+	 * Asks the selector thread to close the channel of the connection, so its key isn't cancelled while the selector uses it
+	 * 
+	 * @return false if the server isn't running and the channel has to be closed by the caller
+	 */
+	boolean closeChannelLater(Connection connection) {
+		Selector selector = this.selector;
+		if (selector == null || !isConnected())
+			return false;
+		closedConnections.add(connection);
+		selector.wakeup();
+		return true;
+	}
+	
+	boolean isSelectorThread() {
+		return Thread.currentThread() == selectorThread;
+	}
+	
 	private Connection getConnection(String connectionName) {
 		for (int i = 0; i < getConnections().size(); i++) {
 			Connection connection = getConnections().elementAt(i);
@@ -252,7 +467,7 @@ public class ConnectionsServer {
 	}
 	
 	public ServerSocket getServerSocket() {
-		return serverSocket;
+		return serverChannel != null ? serverChannel.socket() : null;
 	}
 	private static HashMap<Integer, ConnectionsServer> getServers() {
 		if (servers == null)
@@ -288,5 +503,75 @@ public class ConnectionsServer {
 
 	public void setConnectionsBlocked(boolean connectionsBlocked) {
 		this.connectionsBlocked = connectionsBlocked;
+		Selector selector = this.selector;
+		if (selector != null)
+			selector.wakeup();
+	}
+	
+	public boolean isBinaryFraming() {
+		return binaryFraming;
+	}
+	/**
+	 * Enables the binary frames in the next connections, see {@link Connection#setBinaryFraming(boolean)}
+	 */
+	public void setBinaryFraming(boolean binaryFraming) {
+		this.binaryFraming = binaryFraming;
+	}
+	
+	public int getFlushSize() {
+		return flushSize;
+	}
+	/**
+	 * Size in bytes at which the communications sent to each connection are written together, see {@link Connection#setFlushSize(int)}
+	 */
+	public void setFlushSize(int flushSize) {
+		this.flushSize = flushSize;
+	}
+	public int getFlushDelay() {
+		return flushDelay;
+	}
+	/**
+	 * Maximum milliseconds that a communication sent waits to be written with the next ones, see {@link Connection#setFlushDelay(int)}
+	 */
+	public void setFlushDelay(int flushDelay) {
+		this.flushDelay = flushDelay;
+	}
+	public long getMaxPendingBytes() {
+		return maxPendingBytes;
+	}
+	/**
+	 * Maximum bytes pending to be written to each connection, see {@link Connection#setMaxPendingBytes(long)}
+	 */
+	public void setMaxPendingBytes(long maxPendingBytes) {
+		this.maxPendingBytes = maxPendingBytes;
+	}
+	public boolean isDropOverflow() {
+		return dropOverflow;
+	}
+	/**
+	 * Drops the communications to the connections that don't read fast enough, see {@link Connection#setDropOverflow(boolean)}
+	 */
+	public void setDropOverflow(boolean dropOverflow) {
+		this.dropOverflow = dropOverflow;
+	}
+	
+	public boolean isSessionEncryption() {
+		return sessionEncryption;
+	}
+	/**
+	 * Enables the session key of the next connections, see {@link Connection#setSessionEncryption(boolean)}
+	 */
+	public void setSessionEncryption(boolean sessionEncryption) {
+		this.sessionEncryption = sessionEncryption;
+	}
+	
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+	/**
+	 * Number of threads that notify the events of the connections, it's applied the next time the server is initialized
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = Math.max(1, workerThreads);
 	}
 }
@@ -0,0 +1,1316 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.expressions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import linaje.table.TableModel;
+import linaje.table.TableModelTree;
+import linaje.utils.Dates;
+
+/**
+ * Immutable evaluation program of a parsed {@link Expression}.
+ * <p>
+ * The expression is reduced once, in the same operator order used by {@link Expression#getValue()}, into a tree of typed nodes
+ * that reads the current value of the variables on each evaluation, so it can be evaluated many times without parsing it again
+ * or converting intermediate results to text.
+ * <p>
+ * It can also be evaluated for all the rows of a table in a single pass, binding each variable to a column
+ * (see {@link #getBooleanValues(TableModel, ForkJoinPool)} and {@link #getNumericValues(TableModel, ForkJoinPool)}).
+ */
+public final class CompiledExpression {
+
+	private static final int COMPARISON_EQUAL = 0;
+	private static final int COMPARISON_DISTINCT = 1;
+	private static final int COMPARISON_GREATER = 2;
+	private static final int COMPARISON_LESS = 3;
+	private static final int COMPARISON_GREATER_EQUAL = 4;
+	private static final int COMPARISON_LESS_EQUAL = 5;
+	private static final int COMPARISON_STARTS = 6;
+	private static final int COMPARISON_ENDS = 7;
+	private static final int COMPARISON_CONTAINS = 8;
+
+	//Número de filas que evalúa cada tarea cuando se evalúa una tabla en paralelo
+	private static final int ROWS_CHUNK_SIZE = 4096;
+
+	private final String text;
+	private final int nature;
+	private final Variable[] variables;
+	//Los nodos sólo conocen la posición de las variables, así el mismo programa se puede asociar a otras variables (ver bind)
+	private final int[] variablesOutOfFunction;
+	private final Node root;
+
+	public CompiledExpression(Expression expression) throws ExpressionException {
+		this(expression, getExpressionText(expression));
+	}
+
+	CompiledExpression(Expression expression, String text) throws ExpressionException {
+
+		super();
+		this.text = text;
+		this.variables = expression.getVariables().toArray(new Variable[expression.getVariables().size()]);
+
+		List<Variable> variablesOutOfFunction = new ArrayList<>();
+		this.root = compile(expression, variablesOutOfFunction);
+		this.variablesOutOfFunction = getVariableIndices(variablesOutOfFunction);
+		this.nature = getNature(expression);
+	}
+
+	private CompiledExpression(CompiledExpression compiledExpression, Variable[] variables) {
+
+		super();
+		this.text = compiledExpression.text;
+		this.nature = compiledExpression.nature;
+		this.variables = variables;
+		this.variablesOutOfFunction = compiledExpression.variablesOutOfFunction;
+		this.root = compiledExpression.root;
+	}
+
+	/**
+	 * Returns the same program evaluated with other variables, with the same names and types and in the same order as {@link #getVariables()}
+	 */
+	CompiledExpression bind(Variable[] variables) {
+		return new CompiledExpression(this, variables);
+	}
+
+	/**
+	 * Evaluates the expression with the current value of its variables.
+	 * <p>
+	 * The result is a Boolean for logical expressions, a Number for numeric ones, a String for alphanumeric ones and a Date for date ones
+	 */
+	public Object getValue() throws ExpressionException {
+
+		Evaluation evaluation = new Evaluation(variables, true, null);
+		for (int i = 0; i < variables.length; i++) {
+			Variable variable = variables[i];
+			evaluation.values[i] = variable.getValue();
+			variable.setMetPartialExpression(false);
+		}
+		for (int i = 0; i < variablesOutOfFunction.length; i++)
+			variables[variablesOutOfFunction[i]].setCalledOutOfFunction(true);
+
+		return evaluate(evaluation);
+	}
+
+	/**
+	 * Evaluates the expression with the values bound in the context, without modifying the variables.
+	 * <p>
+	 * The flags of the variables for this evaluation are stored in the context, so the expression can be evaluated
+	 * at the same time from several threads using a different context in each one
+	 */
+	public Object getValue(EvaluationContext context) throws ExpressionException {
+
+		context.clearFlags();
+
+		Evaluation evaluation = new Evaluation(variables, false, context);
+		for (int i = 0; i < variables.length; i++)
+			evaluation.values[i] = context.getValue(variables[i]);
+		for (int i = 0; i < variablesOutOfFunction.length; i++)
+			context.setCalledOutOfFunction(variables[variablesOutOfFunction[i]]);
+
+		return evaluate(evaluation);
+	}
+
+	/**
+	 * Evaluates a logical expression with the current value of its variables
+	 */
+	public boolean getBooleanValue() throws ExpressionException {
+		return toBoolean(getValue());
+	}
+
+	/**
+	 * Evaluates a logical expression with the values bound in the context, without modifying the variables
+	 */
+	public boolean getBooleanValue(EvaluationContext context) throws ExpressionException {
+		return toBoolean(getValue(context));
+	}
+
+	private Object evaluate(Evaluation evaluation) throws ExpressionException {
+
+		try {
+			return root.evaluate(evaluation);
+		}
+		catch (ExpressionException expEx) {
+			throw expEx;
+		}
+		catch (Throwable ex) {
+			throw new ExpressionException(Expression.TEXTS.errorTryingToResolveExp + " \"" + text + "\"", 0);
+		}
+	}
+
+	/**
+	 * Evaluates a logical expression for each row of the table, binding each variable to the column with its name or description.
+	 * <p>
+	 * If pool is not null the rows are evaluated in parallel chunks
+	 */
+	public boolean[] getBooleanValues(TableModel<?> tableModel, ForkJoinPool pool) throws ExpressionException {
+		return getBooleanValues(tableModel.getRows(), getColumnIndices(tableModel.getColumnNames()), pool);
+	}
+
+	/**
+	 * Evaluates a logical expression for each visible row of the table tree, binding each variable to the column with its name or description.
+	 * <p>
+	 * If pool is not null the rows are evaluated in parallel chunks
+	 */
+	public boolean[] getBooleanValues(TableModelTree<?> tableModelTree, ForkJoinPool pool) throws ExpressionException {
+		return getBooleanValues(tableModelTree.getRows(), getColumnIndices(tableModelTree.getColumnNames()), pool);
+	}
+
+	/**
+	 * Evaluates a logical expression for each row, taking the value of each variable from the column in variableColumns
+	 * (in the same order as {@link #getVariables()}). Variables with a negative column keep their current value.
+	 * <p>
+	 * Rows whose evaluation fails are false. The variables are not modified
+	 */
+	public boolean[] getBooleanValues(List<? extends List<?>> rows, int[] variableColumns, ForkJoinPool pool) throws ExpressionException {
+
+		boolean[] booleanValues = new boolean[rows.size()];
+		evaluateRows(rows.toArray(), variableColumns, booleanValues, null, pool);
+		return booleanValues;
+	}
+
+	/**
+	 * Evaluates a logical expression for one row, taking the value of each variable from the column in variableColumns
+	 * like {@link #getBooleanValues(List, int[], ForkJoinPool)}. It's false if the evaluation fails
+	 */
+	public boolean getBooleanValue(List<?> rowValues, int[] variableColumns) throws ExpressionException {
+
+		boolean[] booleanValues = new boolean[1];
+		evaluateRows(new Object[] {rowValues}, variableColumns, booleanValues, null, null);
+		return booleanValues[0];
+	}
+
+	/**
+	 * Evaluates a numeric expression for each row of the table, binding each variable to the column with its name or description.
+	 * <p>
+	 * If pool is not null the rows are evaluated in parallel chunks
+	 */
+	public double[] getNumericValues(TableModel<?> tableModel, ForkJoinPool pool) throws ExpressionException {
+		return getNumericValues(tableModel.getRows(), getColumnIndices(tableModel.getColumnNames()), pool);
+	}
+
+	/**
+	 * Evaluates a numeric expression for each visible row of the table tree, binding each variable to the column with its name or description.
+	 * <p>
+	 * If pool is not null the rows are evaluated in parallel chunks
+	 */
+	public double[] getNumericValues(TableModelTree<?> tableModelTree, ForkJoinPool pool) throws ExpressionException {
+		return getNumericValues(tableModelTree.getRows(), getColumnIndices(tableModelTree.getColumnNames()), pool);
+	}
+
+	/**
+	 * Evaluates a numeric expression for each row, taking the value of each variable from the column in variableColumns
+	 * (in the same order as {@link #getVariables()}). Variables with a negative column keep their current value.
+	 * <p>
+	 * Rows whose evaluation fails are NaN
+	 */
+	public double[] getNumericValues(List<? extends List<?>> rows, int[] variableColumns, ForkJoinPool pool) throws ExpressionException {
+
+		if (getNature() != Expression.NATURE_NUMERICAL)
+			throw new ExpressionException(Expression.TEXTS.errorTryingToResolveExp + " \"" + text + "\"", 0);
+
+		double[] numericValues = new double[rows.size()];
+		evaluateRows(rows.toArray(), variableColumns, null, numericValues, pool);
+		return numericValues;
+	}
+
+	/**
+	 * Returns the column of each variable (in the same order as {@link #getVariables()}) matching its name or description, or -1 if not found
+	 */
+	public int[] getColumnIndices(List<String> columnNames) {
+
+		int[] variableColumns = new int[variables.length];
+		for (int i = 0; i < variables.length; i++) {
+
+			variableColumns[i] = -1;
+			for (int j = 0; j < columnNames.size() && variableColumns[i] == -1; j++) {
+
+				String columnName = columnNames.get(j);
+				if (columnName != null && (columnName.equalsIgnoreCase(variables[i].getName()) || columnName.equalsIgnoreCase(variables[i].getDescription())))
+					variableColumns[i] = j;
+			}
+		}
+		return variableColumns;
+	}
+
+	public int getNature() {
+		return nature;
+	}
+
+	public Vector<Variable> getVariables() {
+
+		Vector<Variable> variables = new Vector<>(this.variables.length);
+		for (int i = 0; i < this.variables.length; i++)
+			variables.addElement(this.variables[i]);
+
+		return variables;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String toString() {
+		return getText();
+	}
+
+	private Node compile(Expression expression, List<Variable> variablesOutOfFunction) throws ExpressionException {
+
+		List<Object> items = new ArrayList<>(expression.size());
+		for (int i = 0; i < expression.size(); i++) {
+
+			Object element = expression.elementAt(i);
+			if (element instanceof Expression) {
+
+				items.add(compile((Expression) element, variablesOutOfFunction));
+			}
+			else {
+
+				StackElement stackElement = (StackElement) element;
+				if (stackElement.getOperatorType() == -1) {
+
+					Variable linkedVariable = stackElement.getLinkedVariable();
+					if (linkedVariable != null && !expression.isFunction() && !variablesOutOfFunction.contains(linkedVariable))
+						variablesOutOfFunction.add(linkedVariable);
+
+					items.add(compileOperand(stackElement));
+				}
+				else {
+
+					items.add(stackElement);
+				}
+			}
+		}
+
+		Node node;
+		if (items.size() == 1) {
+
+			Object item = items.get(0);
+			if (!(item instanceof Node))
+				throw new ExpressionException(Expression.TEXTS.errorTryingToResolveReducedExp + " \"" + expression + "\"", getPosition(item));
+			node = (Node) item;
+		}
+		else if (items.isEmpty())
+			throw new ExpressionException(Expression.TEXTS.partExpMustContainSomething, 0);
+		else if (expression.isFunction())
+			node = reduceFunction(items, expression);
+		else if (expression.getNature() == Expression.NATURE_NUMERICAL)
+			node = reduceNumeric(items, expression.getComparativeOperator() != null, Expression.TEXTS.numericReducedExp);
+		else if (expression.getNature() == Expression.NATURE_ALPHANUMERIC)
+			node = reduceAlphanumeric(items, expression.getComparativeOperator() != null);
+		else if (expression.getNature() == Expression.NATURE_DATE)
+			node = reduceDate(items, expression.getComparativeOperator() != null);
+		else if (expression.getNature() == Expression.NATURE_LOGICAL)
+			node = reduceLogical(items);
+		else if (expression.getNature() == Expression.NATURE_GLOBAL)
+			node = new GlobalNode(items.toArray(), getVariableIndices(expression.getVariables()));
+		else
+			throw new ExpressionException(Expression.TEXTS.errorTryingToResolveReducedExp + " \"" + expression + "\" "+ Expression.TEXTS.forNotHavingNature, 0);
+
+		if (expression.getNature() != Expression.NATURE_LOGICAL && (expression.getComparativeOperator() != null || expression.getNature() == Expression.NATURE_GLOBAL)) {
+
+			//Como en Expression.getValue(), las variables de las subexpresiones se marcan como cumplidas si la expresión se cumple
+			//(Sólo las comparaciones pueden dar true, así el resto de nodos numéricos no pierden la evaluación con primitivos)
+			List<Variable> metVariables = new ArrayList<>();
+			for (int i = 0; i < expression.size(); i++) {
+
+				Object element = expression.elementAt(i);
+				if (element instanceof Expression) {
+
+					Vector<Variable> subexpressionVariables = ((Expression) element).getVariables();
+					for (int j = 0; j < subexpressionVariables.size(); j++) {
+						if (!metVariables.contains(subexpressionVariables.elementAt(j)))
+							metVariables.add(subexpressionVariables.elementAt(j));
+					}
+				}
+			}
+			if (!metVariables.isEmpty())
+				node = new MetPartialExpressionNode(node, getVariableIndices(metVariables));
+		}
+
+		return node;
+	}
+
+	private void evaluateRows(Object[] rows, int[] variableColumns, boolean[] booleanValues, double[] numericValues, ForkJoinPool pool) throws ExpressionException {
+
+		if (variableColumns.length != variables.length)
+			throw new IllegalArgumentException("variableColumns.length != " + variables.length);
+
+		if (pool == null || rows.length <= ROWS_CHUNK_SIZE)
+			evaluateRows(rows, variableColumns, 0, rows.length, booleanValues, numericValues);
+		else
+			pool.invoke(new RowsEvaluation(rows, variableColumns, 0, rows.length, booleanValues, numericValues));
+	}
+
+	private void evaluateRows(Object[] rows, int[] variableColumns, int fromRow, int toRow, boolean[] booleanValues, double[] numericValues) {
+
+		//Cada tarea usa su propio array de valores y no marca las variables, así el programa se puede evaluar a la vez desde varios hilos
+		Evaluation evaluation = new Evaluation(variables, false, null);
+		Object[] values = evaluation.values;
+		for (int i = 0; i < variables.length; i++) {
+			if (variableColumns[i] < 0)
+				values[i] = variables[i].getValue();
+		}
+
+		for (int row = fromRow; row < toRow; row++) {
+
+			List<?> rowValues = (List<?>) rows[row];
+			for (int i = 0; i < variables.length; i++) {
+				int column = variableColumns[i];
+				if (column >= 0)
+					values[i] = column < rowValues.size() ? rowValues.get(column) : null;
+			}
+
+			try {
+				if (booleanValues != null)
+					booleanValues[row] = toBoolean(root.evaluate(evaluation));
+				else
+					numericValues[row] = root.evaluateNumber(evaluation);
+			}
+			catch (Throwable ex) {
+				if (booleanValues != null)
+					booleanValues[row] = false;
+				else
+					numericValues[row] = Double.NaN;
+			}
+		}
+	}
+
+	private Node compileOperand(StackElement stackElement) throws ExpressionException {
+
+		Variable linkedVariable = stackElement.getLinkedVariable();
+		if (linkedVariable != null) {
+
+			int index = getVariableIndex(linkedVariable);
+			if (index != -1)
+				return new VariableNode(index, linkedVariable.getName());
+		}
+
+		return new ConstantNode(stackElement.getValue(), stackElement.getText());
+	}
+
+	private int getVariableIndex(Variable variable) {
+
+		for (int i = 0; i < variables.length; i++) {
+			if (variables[i] == variable)
+				return i;
+		}
+		return -1;
+	}
+
+	private int[] getVariableIndices(List<Variable> variables) {
+
+		int[] variableIndices = new int[variables.size()];
+		for (int i = 0; i < variableIndices.length; i++)
+			variableIndices[i] = getVariableIndex(variables.get(i));
+
+		return variableIndices;
+	}
+
+	private Node reduceFunction(List<Object> items, Expression expression) throws ExpressionException {
+
+		StackElement functionElement = (StackElement) items.get(0);
+		String function = functionElement.getText();
+		List<Object> operandItems = items.subList(1, items.size());
+
+		Node[] operands;
+		if (function.equalsIgnoreCase(Expression.OF_ABS) && operandItems.size() > 1) {
+
+			//El contenido de ABS puede ser una expresión numérica
+			operands = new Node[] {reduceNumeric(new ArrayList<>(operandItems), false, Expression.TEXTS.function)};
+		}
+		else {
+
+			operands = new Node[operandItems.size()];
+			for (int i = 0; i < operands.length; i++) {
+
+				Object item = operandItems.get(i);
+				if (!(item instanceof Node))
+					throw new ExpressionException(Expression.TEXTS.function + " \""+ expression +"\" " + Expression.TEXTS.couldNotBeSolved, getPosition(item));
+				operands[i] = (Node) item;
+			}
+		}
+
+		return new FunctionNode(function, operands, expression.getNature() == Expression.NATURE_ALPHANUMERIC);
+	}
+
+	private Node reduceNumeric(List<Object> items, boolean hasComparativeOperator, String errorText) throws ExpressionException {
+
+		//Mismo orden de resolución que Expression.getValueExpressionReducedNumerica
+		reduceArithmetic(items, Expression.OA_MUL, errorText);
+		reduceArithmetic(items, Expression.OA_DIV, errorText);
+
+		int indexSum = indexOfOperator(items, Expression.OA_SUM);
+		while (indexSum != -1) {
+
+			if (indexSum == 0) {
+				items.add(0, new ConstantNode(Integer.valueOf(0), "0"));
+				indexSum++;
+			}
+			replaceBinaryOperation(items, indexSum, errorText);
+			indexSum = indexOfOperator(items, Expression.OA_SUM);
+		}
+
+		int indexSubtract = indexOfOperator(items, Expression.OA_SUB);
+		while (indexSubtract != -1) {
+
+			if (indexSubtract == 0 || !(items.get(indexSubtract - 1) instanceof Node)) {
+				//Insertamos el elemento virtual cero
+				items.add(indexSubtract, new ConstantNode(Integer.valueOf(0), "0"));
+				indexSubtract++;
+			}
+			replaceBinaryOperation(items, indexSubtract, errorText);
+			indexSubtract = indexOfOperator(items, Expression.OA_SUB);
+		}
+
+		if (hasComparativeOperator)
+			reduceComparison(items, Expression.NATURE_NUMERICAL);
+
+		return getReducedNode(items, errorText);
+	}
+
+	private void reduceArithmetic(List<Object> items, String operator, String errorText) throws ExpressionException {
+
+		int index = indexOfOperator(items, operator);
+		while (index != -1) {
+			replaceBinaryOperation(items, index, errorText);
+			index = indexOfOperator(items, operator);
+		}
+	}
+
+	private Node reduceAlphanumeric(List<Object> items, boolean hasComparativeOperator) throws ExpressionException {
+
+		int indexSum = indexOfOperator(items, Expression.OA_SUM);
+		while (indexSum != -1) {
+			replaceBinaryOperation(items, indexSum, Expression.TEXTS.alphanumericReducedExp);
+			indexSum = indexOfOperator(items, Expression.OA_SUM);
+		}
+
+		if (hasComparativeOperator)
+			reduceComparison(items, Expression.NATURE_ALPHANUMERIC);
+
+		return getReducedNode(items, Expression.TEXTS.alphanumericReducedExp);
+	}
+
+	private Node reduceDate(List<Object> items, boolean hasComparativeOperator) throws ExpressionException {
+
+		if (hasComparativeOperator)
+			reduceComparison(items, Expression.NATURE_DATE);
+
+		return getReducedNode(items, Expression.TEXTS.dateReducedExp);
+	}
+
+	private Node reduceLogical(List<Object> items) throws ExpressionException {
+
+		int indexNOT = indexOfOperator(items, Expression.OL_NOT);
+		while (indexNOT != -1) {
+
+			Node operand = getOperand(items, indexNOT + 1, Expression.TEXTS.logicalReducedExp);
+			items.remove(indexNOT);
+			items.set(indexNOT, new NotNode(operand));
+			indexNOT = indexOfOperator(items, Expression.OL_NOT);
+		}
+
+		int indexAND = indexOfOperator(items, Expression.OL_AND);
+		while (indexAND != -1) {
+			replaceBinaryOperation(items, indexAND, Expression.TEXTS.logicalReducedExp);
+			indexAND = indexOfOperator(items, Expression.OL_AND);
+		}
+
+		int indexOR = indexOfOperator(items, Expression.OL_OR);
+		while (indexOR != -1) {
+			replaceBinaryOperation(items, indexOR, Expression.TEXTS.logicalReducedExp);
+			indexOR = indexOfOperator(items, Expression.OL_OR);
+		}
+
+		return getReducedNode(items, Expression.TEXTS.logicalReducedExp);
+	}
+
+	private void reduceComparison(List<Object> items, int nature) throws ExpressionException {
+
+		for (int i = 0; i < items.size(); i++) {
+
+			Object item = items.get(i);
+			if (item instanceof StackElement && ((StackElement) item).getOperatorType() == Expression.OPERATOR_COMPARATIVE) {
+
+				String operator = ((StackElement) item).getText();
+				int comparison = getComparison(operator);
+				boolean ignore = operator.length() > 1 && Character.toLowerCase(operator.charAt(0)) == 'i';
+
+				boolean valid = comparison != -1;
+				if (nature == Expression.NATURE_ALPHANUMERIC)
+					valid = valid && (comparison == COMPARISON_EQUAL || comparison == COMPARISON_DISTINCT || comparison >= COMPARISON_STARTS);
+				else
+					valid = valid && comparison < COMPARISON_STARTS;
+
+				String errorText = nature == Expression.NATURE_ALPHANUMERIC ? Expression.TEXTS.alphanumericReducedExp : nature == Expression.NATURE_DATE ? Expression.TEXTS.dateReducedExp : Expression.TEXTS.numericReducedExp;
+				if (!valid)
+					throw new ExpressionException(errorText + " \""+ operator +"\" " + Expression.TEXTS.couldNotBeSolved, getPosition(item));
+
+				Node operand1 = getOperand(items, i - 1, errorText);
+				Node operand2 = getOperand(items, i + 1, errorText);
+
+				Node comparisonNode;
+				if (nature == Expression.NATURE_ALPHANUMERIC)
+					comparisonNode = new AlphanumericComparisonNode(comparison, ignore, operand1, operand2);
+				else if (nature == Expression.NATURE_DATE)
+					comparisonNode = new DateComparisonNode(comparison, ignore, operand1, operand2);
+				else
+					comparisonNode = new NumericComparisonNode(comparison, operand1, operand2);
+
+				items.remove(i - 1);
+				items.remove(i - 1);
+				items.set(i - 1, comparisonNode);
+				return;
+			}
+		}
+	}
+
+	private void replaceBinaryOperation(List<Object> items, int index, String errorText) throws ExpressionException {
+
+		String operator = ((StackElement) items.get(index)).getText();
+		Node operand1 = getOperand(items, index - 1, errorText);
+		Node operand2 = getOperand(items, index + 1, errorText);
+
+		Node operation;
+		if (operator.equalsIgnoreCase(Expression.OL_AND))
+			operation = new LogicalNode(true, operand1, operand2);
+		else if (operator.equalsIgnoreCase(Expression.OL_OR))
+			operation = new LogicalNode(false, operand1, operand2);
+		else if (errorText == Expression.TEXTS.alphanumericReducedExp)
+			operation = new ConcatenationNode(operand1, operand2);
+		else
+			operation = new ArithmeticNode(operator.charAt(0), operand1, operand2);
+
+		//Sustituimos los operandos y el operador por el resultado
+		items.remove(index - 1);
+		items.remove(index - 1);
+		items.set(index - 1, operation);
+	}
+
+	private static Node getOperand(List<Object> items, int index, String errorText) throws ExpressionException {
+
+		Object item = index >= 0 && index < items.size() ? items.get(index) : null;
+		if (item instanceof Node)
+			return (Node) item;
+
+		throw new ExpressionException(errorText + " \""+ items +"\" " + Expression.TEXTS.couldNotBeSolved, getPosition(item));
+	}
+
+	private static Node getReducedNode(List<Object> items, String errorText) throws ExpressionException {
+
+		//LLegados a este punto la expresión debe tener un único elemento
+		if (items.size() == 1 && items.get(0) instanceof Node)
+			return (Node) items.get(0);
+
+		throw new ExpressionException(errorText + " \""+ items +"\" " + Expression.TEXTS.couldNotBeSolved, getPosition(items.isEmpty() ? null : items.get(0)));
+	}
+
+	private static int indexOfOperator(List<Object> items, String operator) {
+
+		for (int i = 0; i < items.size(); i++) {
+			Object item = items.get(i);
+			if (item instanceof StackElement && ((StackElement) item).getText().equalsIgnoreCase(operator))
+				return i;
+		}
+		return -1;
+	}
+
+	private static int getPosition(Object item) {
+		return item instanceof StackElement ? ((StackElement) item).getPositionInText() : 0;
+	}
+
+	private static int getComparison(String operator) {
+
+		if (operator.equalsIgnoreCase(Expression.OC_EQUAL) || operator.equalsIgnoreCase(Expression.OC_EQUAL_IGNORE))
+			return COMPARISON_EQUAL;
+		else if (operator.equalsIgnoreCase(Expression.OC_DISTINCT) || operator.equalsIgnoreCase(Expression.OC_DISTINCT_IGNORE))
+			return COMPARISON_DISTINCT;
+		else if (operator.equalsIgnoreCase(Expression.OC_GREATER) || operator.equalsIgnoreCase(Expression.OC_GREATER_IGNORE))
+			return COMPARISON_GREATER;
+		else if (operator.equalsIgnoreCase(Expression.OC_LESS) || operator.equalsIgnoreCase(Expression.OC_LESS_IGNORE))
+			return COMPARISON_LESS;
+		else if (operator.equalsIgnoreCase(Expression.OC_GREATER_EQUAL) || operator.equalsIgnoreCase(Expression.OC_EQUAL_GREATER)
+			  || operator.equalsIgnoreCase(Expression.OC_GREATER_EQUAL_IGNORE) || operator.equalsIgnoreCase(Expression.OC_EQUAL_GREATER_IGNORE))
+			return COMPARISON_GREATER_EQUAL;
+		else if (operator.equalsIgnoreCase(Expression.OC_LESS_EQUAL) || operator.equalsIgnoreCase(Expression.OC_EQUAL_LESS)
+			  || operator.equalsIgnoreCase(Expression.OC_LESS_EQUAL_IGNORE) || operator.equalsIgnoreCase(Expression.OC_EQUAL_LESS_IGNORE))
+			return COMPARISON_LESS_EQUAL;
+		else if (operator.equalsIgnoreCase(Expression.OC_STARTS) || operator.equalsIgnoreCase(Expression.OC_STARTS_IGNORE))
+			return COMPARISON_STARTS;
+		else if (operator.equalsIgnoreCase(Expression.OC_ENDS) || operator.equalsIgnoreCase(Expression.OC_ENDS_IGNORE))
+			return COMPARISON_ENDS;
+		else if (operator.equalsIgnoreCase(Expression.OC_CONTAINS) || operator.equalsIgnoreCase(Expression.OC_CONTAINS_IGNORE))
+			return COMPARISON_CONTAINS;
+		else
+			return -1;
+	}
+
+	private static int getNature(Expression expression) {
+
+		//La expresión raíz suele contener una única subexpresión con la naturaleza real
+		Expression natureExpression = expression;
+		while (natureExpression.getNature() == -1 && natureExpression.size() == 1 && natureExpression.firstElement() instanceof Expression)
+			natureExpression = (Expression) natureExpression.firstElement();
+
+		return natureExpression.getNature();
+	}
+
+	private static String getExpressionText(Expression expression) {
+
+		StringBuilder text = new StringBuilder();
+		Vector<StackElement> stackElements = expression.getStackElements();
+		if (stackElements != null) {
+			for (int i = 0; i < stackElements.size(); i++) {
+				if (i > 0)
+					text.append(' ');
+				text.append(stackElements.elementAt(i).getText());
+			}
+		}
+		return text.toString();
+	}
+
+	private static boolean matchComparison(int comparison, int compareResult) {
+
+		switch (comparison) {
+			case COMPARISON_EQUAL: return compareResult == 0;
+			case COMPARISON_DISTINCT: return compareResult != 0;
+			case COMPARISON_GREATER: return compareResult > 0;
+			case COMPARISON_LESS: return compareResult < 0;
+			case COMPARISON_GREATER_EQUAL: return compareResult >= 0;
+			case COMPARISON_LESS_EQUAL: return compareResult <= 0;
+			default: return false;
+		}
+	}
+
+	private static boolean toBoolean(Object value) {
+
+		if (value instanceof Boolean)
+			return ((Boolean) value).booleanValue();
+		else
+			return Boolean.parseBoolean(value.toString());
+	}
+
+	private static Date toDate(Object value) {
+
+		if (value instanceof Date)
+			return (Date) value;
+		else if (value instanceof Calendar)
+			return ((Calendar) value).getTime();
+		else
+			return null;
+	}
+
+	private static String getLiteralText(Object value) {
+
+		if (value instanceof String)
+			return "'" + value + "'";
+		else if (value instanceof Date)
+			return StackElement.getFormattedDate((Date) value);
+		else
+			return String.valueOf(value);
+	}
+
+	private final class RowsEvaluation extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Object[] rows;
+		private final int[] variableColumns;
+		private final int fromRow;
+		private final int toRow;
+		private final boolean[] booleanValues;
+		private final double[] numericValues;
+
+		RowsEvaluation(Object[] rows, int[] variableColumns, int fromRow, int toRow, boolean[] booleanValues, double[] numericValues) {
+			this.rows = rows;
+			this.variableColumns = variableColumns;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.booleanValues = booleanValues;
+			this.numericValues = numericValues;
+		}
+
+		protected void compute() {
+
+			if (toRow - fromRow <= ROWS_CHUNK_SIZE) {
+				evaluateRows(rows, variableColumns, fromRow, toRow, booleanValues, numericValues);
+			}
+			else {
+				int middleRow = (fromRow + toRow) >>> 1;
+				invokeAll(new RowsEvaluation(rows, variableColumns, fromRow, middleRow, booleanValues, numericValues),
+						  new RowsEvaluation(rows, variableColumns, middleRow, toRow, booleanValues, numericValues));
+			}
+		}
+	}
+
+	/**
+	 * State of one evaluation of the program, so the same nodes can be evaluated at the same time from several threads
+	 */
+	private static final class Evaluation {
+
+		private final Variable[] variables;
+		private final Object[] values;
+		//Sólo se modifican las variables en getValue(), en el resto de casos se evalúa con los valores de values
+		private final boolean markVariables;
+		private final EvaluationContext context;
+
+		Evaluation(Variable[] variables, boolean markVariables, EvaluationContext context) {
+			this.variables = variables;
+			this.values = new Object[variables.length];
+			this.markVariables = markVariables;
+			this.context = context;
+		}
+
+		/**
+		 * The logical operations stop as soon as the result is known when the flags of the variables are not needed
+		 */
+		boolean isShortCircuit() {
+			return !markVariables && (context == null || context.isShortCircuit());
+		}
+	}
+
+	private static abstract class Node {
+
+		abstract Object evaluate(Evaluation evaluation) throws ExpressionException;
+
+		/**
+		 * Numeric nodes override this method to work with primitives, the rest convert their value
+		 */
+		double evaluateNumber(Evaluation evaluation) throws ExpressionException {
+			return StackElement.toDouble(evaluate(evaluation));
+		}
+
+		String evaluateText(Evaluation evaluation) throws ExpressionException {
+			Object value = evaluate(evaluation);
+			return value != null ? value.toString() : null;
+		}
+
+		/**
+		 * Approximate cost of evaluating the node, used to evaluate first the cheapest operands of the logical operations
+		 */
+		abstract int getCost();
+	}
+
+	private static final class ConstantNode extends Node {
+
+		private final Object value;
+		private final String text;
+		private final boolean numeric;
+		private final double number;
+
+		ConstantNode(Object value, String text) {
+			this.value = value;
+			this.text = text;
+			this.numeric = value instanceof Number;
+			this.number = numeric ? StackElement.toDouble(value) : 0;
+		}
+
+		Object evaluate(Evaluation evaluation) {
+			return value;
+		}
+
+		double evaluateNumber(Evaluation evaluation) {
+			return numeric ? number : StackElement.toDouble(value);
+		}
+
+		public String toString() {
+			return text;
+		}
+
+		int getCost() {
+			return 0;
+		}
+	}
+
+	private static final class VariableNode extends Node {
+
+		private final int index;
+		private final String name;
+
+		VariableNode(int index, String name) {
+			this.index = index;
+			this.name = name;
+		}
+
+		Object evaluate(Evaluation evaluation) {
+			return evaluation.values[index];
+		}
+
+		String evaluateText(Evaluation evaluation) {
+			//Los valores alfanuméricos de las variables se comparan sin espacios (StackElement.getAlphanumericValue)
+			Object value = evaluation.values[index];
+			return value != null ? value.toString().trim() : null;
+		}
+
+		public String toString() {
+			return name;
+		}
+
+		int getCost() {
+			return 1;
+		}
+	}
+
+	private static final class ArithmeticNode extends Node {
+
+		private final char operator;
+		private final Node operand1;
+		private final Node operand2;
+
+		ArithmeticNode(char operator, Node operand1, Node operand2) {
+			this.operator = operator;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+			//Sólo pasamos el resultado a objeto cuando sale de la parte numérica de la expresión
+			return Double.valueOf(evaluateNumber(evaluation));
+		}
+
+		double evaluateNumber(Evaluation evaluation) throws ExpressionException {
+
+			double value1 = operand1.evaluateNumber(evaluation);
+			double value2 = operand2.evaluateNumber(evaluation);
+
+			switch (operator) {
+				case '+': return value1 + value2;
+				case '-': return value1 - value2;
+				case '*': return value1 * value2;
+				default: return value1 / value2;
+			}
+		}
+
+		public String toString() {
+			return "(" + operand1 + " " + operator + " " + operand2 + ")";
+		}
+
+		int getCost() {
+			return 1 + operand1.getCost() + operand2.getCost();
+		}
+	}
+
+	private static final class ConcatenationNode extends Node {
+
+		private final Node operand1;
+		private final Node operand2;
+
+		ConcatenationNode(Node operand1, Node operand2) {
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+			return operand1.evaluateText(evaluation) + operand2.evaluateText(evaluation);
+		}
+
+		public String toString() {
+			return "(" + operand1 + " + " + operand2 + ")";
+		}
+
+		int getCost() {
+			return 1 + operand1.getCost() + operand2.getCost();
+		}
+	}
+
+	private static final class NumericComparisonNode extends Node {
+
+		private final int comparison;
+		private final Node operand1;
+		private final Node operand2;
+
+		NumericComparisonNode(int comparison, Node operand1, Node operand2) {
+			this.comparison = comparison;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+		}
+
+		Object evaluate(Evaluation evaluation) {
+
+			try {
+
+				double value1 = operand1.evaluateNumber(evaluation);
+				double value2 = operand2.evaluateNumber(evaluation);
+
+				boolean result;
+				switch (comparison) {
+					case COMPARISON_EQUAL: result = value1 == value2; break;
+					case COMPARISON_DISTINCT: result = value1 != value2; break;
+					case COMPARISON_GREATER: result = value1 > value2; break;
+					case COMPARISON_LESS: result = value1 < value2; break;
+					case COMPARISON_GREATER_EQUAL: result = value1 >= value2; break;
+					default: result = value1 <= value2; break;
+				}
+				return Boolean.valueOf(result);
+			}
+			catch (Throwable ex) {
+				return Boolean.FALSE;
+			}
+		}
+
+		int getCost() {
+			return 1 + operand1.getCost() + operand2.getCost();
+		}
+	}
+
+	private static final class AlphanumericComparisonNode extends Node {
+
+		private final int comparison;
+		private final boolean ignore;
+		private final Node operand1;
+		private final Node operand2;
+
+		AlphanumericComparisonNode(int comparison, boolean ignore, Node operand1, Node operand2) {
+			this.comparison = comparison;
+			this.ignore = ignore;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+		}
+
+		Object evaluate(Evaluation evaluation) {
+
+			try {
+
+				String value1 = operand1.evaluateText(evaluation);
+				String value2 = operand2.evaluateText(evaluation);
+				if (ignore) {
+					value1 = value1.trim();
+					value2 = value2.trim();
+					if (comparison == COMPARISON_EQUAL)
+						return Boolean.valueOf(value1.equalsIgnoreCase(value2));
+					else if (comparison == COMPARISON_DISTINCT)
+						return Boolean.valueOf(!value1.equalsIgnoreCase(value2));
+					value1 = value1.toUpperCase();
+					value2 = value2.toUpperCase();
+				}
+
+				boolean result;
+				switch (comparison) {
+					case COMPARISON_EQUAL: result = value1.equals(value2); break;
+					case COMPARISON_DISTINCT: result = !value1.equals(value2); break;
+					case COMPARISON_STARTS: result = value1.startsWith(value2); break;
+					case COMPARISON_ENDS: result = value1.endsWith(value2); break;
+					default: result = value1.indexOf(value2) != -1; break;
+				}
+				return Boolean.valueOf(result);
+			}
+			catch (Throwable ex) {
+				return Boolean.FALSE;
+			}
+		}
+
+		int getCost() {
+			return 2 + operand1.getCost() + operand2.getCost();
+		}
+	}
+
+	private static final class DateComparisonNode extends Node {
+
+		private final int comparison;
+		private final boolean ignore;
+		private final Node operand1;
+		private final Node operand2;
+		//Valor de los operandos constantes (Dates.getLocalTime), calculado al compilar
+		private final Long constantTime1;
+		private final Long constantTime2;
+
+		DateComparisonNode(int comparison, boolean ignore, Node operand1, Node operand2) {
+			this.comparison = comparison;
+			this.ignore = ignore;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+			this.constantTime1 = getConstantTime(operand1);
+			this.constantTime2 = getConstantTime(operand2);
+		}
+
+		Object evaluate(Evaluation evaluation) {
+
+			try {
+
+				long time1 = constantTime1 != null ? constantTime1.longValue() : Dates.getLocalTime(toDate(operand1.evaluate(evaluation)));
+				long time2 = constantTime2 != null ? constantTime2.longValue() : Dates.getLocalTime(toDate(operand2.evaluate(evaluation)));
+				int compareResult = Dates.compareLocalTimes(time1, time2, ignore);
+
+				return Boolean.valueOf(matchComparison(comparison, compareResult));
+			}
+			catch (Throwable ex) {
+				return Boolean.FALSE;
+			}
+		}
+
+		private static Long getConstantTime(Node operand) {
+			Date date = operand instanceof ConstantNode ? toDate(((ConstantNode) operand).value) : null;
+			return date != null ? Long.valueOf(Dates.getLocalTime(date)) : null;
+		}
+
+		int getCost() {
+			return 2 + operand1.getCost() + operand2.getCost();
+		}
+	}
+
+	private static final class NotNode extends Node {
+
+		private final Node operand;
+
+		NotNode(Node operand) {
+			this.operand = operand;
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+			return Boolean.valueOf(!toBoolean(operand.evaluate(evaluation)));
+		}
+
+		int getCost() {
+			return operand.getCost();
+		}
+	}
+
+	/**
+	 * AND or OR of several operands. Consecutive operations of the same kind are joined in one node,
+	 * so the operands can be evaluated from the cheapest to the most expensive one
+	 */
+	private static final class LogicalNode extends Node {
+
+		private final boolean and;
+		//Operandos en el orden de la expresión y ordenados por coste
+		private final Node[] operands;
+		private final Node[] operandsByCost;
+		private final int cost;
+
+		LogicalNode(boolean and, Node operand1, Node operand2) {
+
+			this.and = and;
+
+			List<Node> operandsList = new ArrayList<>();
+			addOperand(operandsList, operand1);
+			addOperand(operandsList, operand2);
+			this.operands = operandsList.toArray(new Node[operandsList.size()]);
+
+			this.operandsByCost = operands.clone();
+			Arrays.sort(operandsByCost, (node1, node2) -> Integer.compare(node1.getCost(), node2.getCost()));
+
+			int cost = 0;
+			for (int i = 0; i < operands.length; i++)
+				cost += operands[i].getCost();
+			this.cost = cost;
+		}
+
+		private void addOperand(List<Node> operandsList, Node operand) {
+			if (operand instanceof LogicalNode && ((LogicalNode) operand).and == and)
+				operandsList.addAll(Arrays.asList(((LogicalNode) operand).operands));
+			else
+				operandsList.add(operand);
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+
+			if (evaluation.isShortCircuit()) {
+
+				for (int i = 0; i < operandsByCost.length; i++) {
+					if (toBoolean(operandsByCost[i].evaluate(evaluation)) != and)
+						return Boolean.valueOf(!and);
+				}
+				return Boolean.valueOf(and);
+			}
+
+			//Se evaluan todos los operandos para que las variables se marquen igual que en Expression.getValue()
+			boolean result = and;
+			for (int i = 0; i < operands.length; i++) {
+				boolean value = toBoolean(operands[i].evaluate(evaluation));
+				result = and ? result && value : result || value;
+			}
+			return Boolean.valueOf(result);
+		}
+
+		int getCost() {
+			return cost;
+		}
+	}
+
+	private static final class FunctionNode extends Node {
+
+		private final String function;
+		private final Node[] operands;
+		private final boolean alphanumeric;
+
+		FunctionNode(String function, Node[] operands, boolean alphanumeric) {
+			this.function = function;
+			this.operands = operands;
+			this.alphanumeric = alphanumeric;
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+
+			Vector<Object> functionValues = new Vector<>(operands.length);
+			for (int i = 0; i < operands.length; i++) {
+
+				Node operand = operands[i];
+				if (operand instanceof VariableNode) {
+					int index = ((VariableNode) operand).index;
+					functionValues.addElement(evaluation.variables[index].getFunctionValue(function, evaluation.values[index]));
+				}
+				else
+					functionValues.addElement(operand.evaluate(evaluation));
+			}
+
+			Object functionResult = ExpressionsAnalyzer.getFunctionResult(function, functionValues, null);
+			if (alphanumeric)
+				return String.valueOf(functionResult);
+			else if (functionResult instanceof Number || functionResult instanceof Date)
+				return functionResult;
+			else
+				return new StackElement(functionResult.toString(), -1, 0).getValue();
+		}
+
+		int getCost() {
+			//Las funciones recorren todos los valores de la variable
+			int cost = 10;
+			for (int i = 0; i < operands.length; i++)
+				cost += operands[i].getCost();
+			return cost;
+		}
+	}
+
+	private static final class GlobalNode extends Node {
+
+		//Operadores (StackElement) y operandos (Node) de una expresión cuya naturaleza depende de los datos
+		private final Object[] items;
+		private final int[] variableIndices;
+
+		GlobalNode(Object[] items, int[] variableIndices) {
+			this.items = items;
+			this.variableIndices = variableIndices;
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+
+			//Igual que en Expression.getValueExpressionReducedGlobal, los datos globales se convierten a su tipo y se vuelve a analizar la expresión
+			Vector<StackElement> stackElements = new Vector<>(items.length);
+			for (int i = 0; i < items.length; i++) {
+
+				Object item = items[i];
+				if (item instanceof StackElement) {
+
+					stackElements.addElement((StackElement) item);
+				}
+				else if (item instanceof VariableNode) {
+
+					VariableNode variableNode = (VariableNode) item;
+					Variable variable = evaluation.variables[variableNode.index];
+					if (variable.getNature() == Expression.NATURE_GLOBAL) {
+
+						Object value = variableNode.evaluate(evaluation);
+						Object nonAlphanumericData = GlobalDataConverter.getNonAlphanumericData(value.toString());
+
+						StackElement stackElement;
+						if (nonAlphanumericData == null) {
+							stackElement = new StackElement("'" + value + "'", -1, 0);
+						}
+						else {
+							stackElement = new StackElement(getLiteralText(nonAlphanumericData), -1, 0);
+							stackElement.setAlphanumericValue(value.toString());
+						}
+						stackElements.addElement(stackElement);
+					}
+					else {
+
+						stackElements.addElement(new StackElement(variable.getName(), -1, 0));
+					}
+				}
+				else if (item instanceof ConstantNode) {
+
+					stackElements.addElement(new StackElement(((ConstantNode) item).text, -1, 0));
+				}
+				else {
+
+					stackElements.addElement(new StackElement(getLiteralText(((Node) item).evaluate(evaluation)), -1, 0));
+				}
+			}
+
+			Expression expressionWithoutGlobalVariables = ExpressionsAnalyzer.parseStackElements(stackElements, getVariableRegistry(evaluation), false);
+			expressionWithoutGlobalVariables.setShortCircuit(evaluation.isShortCircuit());
+			StackElement result = expressionWithoutGlobalVariables.getValue();
+
+			return result != null ? result.getValue() : null;
+		}
+
+		private VariableRegistry getVariableRegistry(Evaluation evaluation) {
+
+			//Como en Expression.getValueExpressionReducedGlobal, sólo se buscan las variables de esta expresión
+			VariableRegistry variableRegistry = new VariableRegistry();
+			for (int i = 0; i < variableIndices.length; i++) {
+
+				Variable variable = evaluation.variables[variableIndices[i]];
+				if (!evaluation.markVariables) {
+
+					//Al analizar la expresión se modifican las variables, así que usamos copias con los valores de esta evaluación
+					Variable boundVariable = new Variable(variable.getName(), variable.getType(), evaluation.values[variableIndices[i]]);
+					boundVariable.setDescription(variable.getDescription());
+					variable = boundVariable;
+				}
+				variableRegistry.add(variable);
+			}
+
+			return variableRegistry;
+		}
+
+		int getCost() {
+			//Se vuelve a analizar la expresión en cada evaluación
+			return 50 + items.length;
+		}
+	}
+
+	private static final class MetPartialExpressionNode extends Node {
+
+		private final Node node;
+		private final int[] variableIndices;
+
+		MetPartialExpressionNode(Node node, int[] variableIndices) {
+			this.node = node;
+			this.variableIndices = variableIndices;
+		}
+
+		Object evaluate(Evaluation evaluation) throws ExpressionException {
+
+			Object value = node.evaluate(evaluation);
+			if ((evaluation.markVariables || evaluation.context != null) && value != null && value.toString().equalsIgnoreCase("true")) {
+
+				//Indicamos a las variables que se han cumplido para la subexpresión en la que intervienen
+				for (int i = 0; i < variableIndices.length; i++) {
+					Variable variable = evaluation.variables[variableIndices[i]];
+					if (evaluation.context != null)
+						evaluation.context.setMetPartialExpression(variable);
+					else
+						variable.setMetPartialExpression(true);
+				}
+			}
+			return value;
+		}
+
+		int getCost() {
+			return node.getCost();
+		}
+	}
+}
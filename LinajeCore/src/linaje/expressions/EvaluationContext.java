@@ -0,0 +1,155 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.expressions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Values of the variables and flags of one evaluation of a {@link CompiledExpression}.
+ * <p>
+ * When a compiled expression is evaluated with a context, the values are taken from it (or from the variable if it's not bound)
+ * and the metPartialExpression and calledOutOfFunction flags are stored in it instead of in the variables,
+ * so the same compiled expression can be evaluated at the same time from several threads, each one with its own context.
+ * <p>
+ * A context is not thread safe, it must be used by one evaluation at a time.
+ */
+public class EvaluationContext {
+
+	private Map<Variable, Object> variableValues = null;
+	private Map<String, Object> namedValues = null;
+	private Set<Variable> metPartialExpressionVariables = null;
+	private Set<Variable> calledOutOfFunctionVariables = null;
+	private boolean shortCircuit = false;
+
+	public EvaluationContext() {
+		super();
+	}
+
+	/**
+	 * Binds a value to the variable for the evaluations with this context
+	 */
+	public void setValue(Variable variable, Object value) {
+		getVariableValues().put(variable, value);
+	}
+
+	/**
+	 * Binds a value to the variables with this name or description (ignoring case) for the evaluations with this context
+	 */
+	public void setValue(String variableName, Object value) {
+		getNamedValues().put(VariableRegistry.getKey(variableName), value);
+	}
+
+	public boolean isBound(Variable variable) {
+		return (variableValues != null && variableValues.containsKey(variable))
+			|| (namedValues != null && (namedValues.containsKey(VariableRegistry.getKey(variable.getName())) || namedValues.containsKey(VariableRegistry.getKey(variable.getDescription()))));
+	}
+
+	/**
+	 * Returns the value bound to the variable, or its current value if it's not bound
+	 */
+	public Object getValue(Variable variable) {
+
+		if (variableValues != null && variableValues.containsKey(variable))
+			return variableValues.get(variable);
+
+		if (namedValues != null) {
+
+			String nameKey = VariableRegistry.getKey(variable.getName());
+			if (namedValues.containsKey(nameKey))
+				return namedValues.get(nameKey);
+
+			String descriptionKey = VariableRegistry.getKey(variable.getDescription());
+			if (namedValues.containsKey(descriptionKey))
+				return namedValues.get(descriptionKey);
+		}
+
+		return variable.getValue();
+	}
+
+	/**
+	 * Same as {@link Variable#isMetPartialExpression()} for the last evaluation with this context
+	 */
+	public boolean isMetPartialExpression(Variable variable) {
+		return metPartialExpressionVariables != null && metPartialExpressionVariables.contains(variable);
+	}
+
+	/**
+	 * Same as {@link Variable#isCalledOutOfFunction()} for the last evaluation with this context
+	 */
+	public boolean isCalledOutOfFunction(Variable variable) {
+		return calledOutOfFunctionVariables != null && calledOutOfFunctionVariables.contains(variable);
+	}
+
+	/**
+	 * When it's true, the logical operations stop evaluating their operands as soon as the result is known, evaluating first the cheapest ones.
+	 * The flags are only set for the variables of the operands evaluated
+	 */
+	public boolean isShortCircuit() {
+		return shortCircuit;
+	}
+	public void setShortCircuit(boolean shortCircuit) {
+		this.shortCircuit = shortCircuit;
+	}
+
+	/**
+	 * Removes the values bound to the variables and the flags
+	 */
+	public void clear() {
+
+		if (variableValues != null)
+			variableValues.clear();
+		if (namedValues != null)
+			namedValues.clear();
+		clearFlags();
+	}
+
+	void clearFlags() {
+
+		if (metPartialExpressionVariables != null)
+			metPartialExpressionVariables.clear();
+		if (calledOutOfFunctionVariables != null)
+			calledOutOfFunctionVariables.clear();
+	}
+
+	void setMetPartialExpression(Variable variable) {
+		if (metPartialExpressionVariables == null)
+			metPartialExpressionVariables = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+		metPartialExpressionVariables.add(variable);
+	}
+
+	void setCalledOutOfFunction(Variable variable) {
+		if (calledOutOfFunctionVariables == null)
+			calledOutOfFunctionVariables = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+		calledOutOfFunctionVariables.add(variable);
+	}
+
+	private Map<Variable, Object> getVariableValues() {
+		if (variableValues == null)
+			variableValues = new IdentityHashMap<>();
+		return variableValues;
+	}
+
+	private Map<String, Object> getNamedValues() {
+		if (namedValues == null)
+			namedValues = new HashMap<>();
+		return namedValues;
+	}
+}
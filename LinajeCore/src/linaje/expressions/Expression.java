@@ -17,7 +17,6 @@
 package linaje.expressions;
 
 import java.awt.Color;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Vector;
 
@@ -40,6 +39,8 @@ public class Expression extends Vector<Object> {
 	private boolean forceLogicalType = false;
 	private boolean forbidLogicalType = false;
 	private boolean function = false;
+	private boolean shortCircuit = false;
+	private int estimatedCost = -1;
 	
 	public static final int OPERATOR_LOGICAL = 0;
 	public static final int OPERATOR_COMPARATIVE = 1;
@@ -416,6 +417,12 @@ public class Expression extends Vector<Object> {
 	
 	public StackElement getValue() throws ExpressionException {
 	
+		if (isShortCircuit() && getNature() == NATURE_LOGICAL && !isFunction()) {
+			StackElement value = getValueShortCircuit();
+			if (value != null)
+				return value;
+		}
+		
 		Object element = null;
 		
 		Expression expressionReduced = new Expression(null);
@@ -476,6 +483,140 @@ public class Expression extends Vector<Object> {
 		}
 	}
 	
+	/**
+	 * Evaluates the operands of a logical expression only until the result is known, starting with the cheapest ones.
+	 * Returns null if the expression doesn't have the form "[NOT] operand AND|OR [NOT] operand..."
+	 */
+	private StackElement getValueShortCircuit() throws ExpressionException {
+	
+		//Separamos los operandos por los OR y cada grupo por los AND, contando los NOT que lleva delante cada operando
+		Vector<Vector<Object>> groupsOR = new Vector<>();
+		Vector<Object> groupAND = new Vector<>();
+		groupsOR.addElement(groupAND);
+		int numNOT = 0;
+		boolean expectingOperand = true;
+		for (int i = 0; i < size(); i++) {
+	
+			Object element = elementAt(i);
+			String operator = element instanceof StackElement && ((StackElement) element).getOperatorType() == OPERATOR_LOGICAL ? element.toString() : null;
+			if (expectingOperand) {
+	
+				if (operator != null && operator.equalsIgnoreCase(OL_NOT))
+					numNOT++;
+				else if (operator != null)
+					return null;
+				else {
+					groupAND.addElement(new Object[] {element, Integer.valueOf(numNOT)});
+					numNOT = 0;
+					expectingOperand = false;
+				}
+			}
+			else if (operator != null && operator.equalsIgnoreCase(OL_AND)) {
+				expectingOperand = true;
+			}
+			else if (operator != null && operator.equalsIgnoreCase(OL_OR)) {
+				groupAND = new Vector<>();
+				groupsOR.addElement(groupAND);
+				expectingOperand = true;
+			}
+			else return null;
+		}
+		if (expectingOperand)
+			return null;
+	
+		//Ordenamos por coste estimado, primero los grupos y dentro de cada grupo los operandos
+		for (int i = 0; i < groupsOR.size(); i++)
+			groupsOR.elementAt(i).sort((term1, term2) -> Integer.compare(getEstimatedCost(((Object[]) term1)[0]), getEstimatedCost(((Object[]) term2)[0])));
+		groupsOR.sort((group1, group2) -> Integer.compare(getEstimatedCost(group1), getEstimatedCost(group2)));
+	
+		int position = getStackElements() != null && !getStackElements().isEmpty() ? getStackElements().firstElement().getPositionInText() : 0;
+		for (int i = 0; i < groupsOR.size(); i++) {
+	
+			boolean resultAND = true;
+			Vector<Object> group = groupsOR.elementAt(i);
+			for (int j = 0; j < group.size() && resultAND; j++) {
+	
+				Object[] term = (Object[]) group.elementAt(j);
+				boolean value = getLogicalValue(term[0]);
+				if (((Integer) term[1]).intValue() % 2 != 0)
+					value = !value;
+				resultAND = value;
+			}
+	
+			if (resultAND)
+				return new StackElement("true", -1, position);
+		}
+		return new StackElement("false", -1, position);
+	}
+	
+	private boolean getLogicalValue(Object operand) throws ExpressionException {
+	
+		StackElement value;
+		if (operand instanceof Expression) {
+			value = ((Expression) operand).getValue();
+		}
+		else {
+			StackElement stackElement = (StackElement) operand;
+			if (stackElement.getLinkedVariable() != null)
+				stackElement.getLinkedVariable().setCalledOutOfFunction(true);
+			value = stackElement;
+		}
+		return value != null && new Boolean(value.toString()).booleanValue();
+	}
+	
+	private static int getEstimatedCost(Object operand) {
+	
+		if (operand instanceof Expression)
+			return ((Expression) operand).getEstimatedCost();
+		else if (operand instanceof Vector) {
+			int cost = 0;
+			Vector<?> terms = (Vector<?>) operand;
+			for (int i = 0; i < terms.size(); i++)
+				cost += getEstimatedCost(((Object[]) terms.elementAt(i))[0]);
+			return cost;
+		}
+		else
+			return 1;
+	}
+	
+	/**
+	 * Approximate cost of evaluating the expression: one for each element, more for functions (they go through all the values
+	 * of the variable), dates and global expressions (they are analyzed again with the values of the variables)
+	 */
+	protected int getEstimatedCost() {
+	
+		if (estimatedCost == -1) {
+	
+			int cost = 0;
+			for (int i = 0; i < size(); i++) {
+				Object element = elementAt(i);
+				cost += element instanceof Expression ? ((Expression) element).getEstimatedCost() : 1;
+			}
+			if (isFunction())
+				cost += 10;
+			else if (getNature() == NATURE_DATE)
+				cost += 4;
+			else if (getNature() == NATURE_GLOBAL)
+				cost += 50;
+	
+			estimatedCost = cost;
+		}
+		return estimatedCost;
+	}
+	
+	/**
+	 * When it's true, logical expressions stop evaluating their operands as soon as the result is known, evaluating first the cheapest ones.
+	 * The variables of the operands not evaluated are not marked with metPartialExpression or calledOutOfFunction.
+	 * <p>
+	 * It's a property of the root expression, that is used by all its subexpressions
+	 */
+	public boolean isShortCircuit() {
+		return getParent() != null ? getParent().isShortCircuit() : shortCircuit;
+	}
+	public void setShortCircuit(boolean shortCircuit) {
+		this.shortCircuit = shortCircuit;
+	}
+	
 	private StackElement getValueExpressionReduced(Expression expressionReduced) throws ExpressionException {
 	
 		if (expressionReduced.size() == 0)
@@ -483,7 +624,9 @@ public class Expression extends Vector<Object> {
 		else if (expressionReduced.size() == 1) {
 			
 			StackElement stackElement = (StackElement) expressionReduced.firstElement();
-			if (stackElement.getNature() != -1)
+			if (stackElement.isNumericResult())
+				return stackElement;
+			else if (stackElement.getNature() != -1)
 				return new StackElement("" + stackElement.getValue(), -1, stackElement.getPositionInText());
 			else
 				return stackElement;
@@ -661,7 +804,6 @@ public class Expression extends Vector<Object> {
 		StackElement elemOp2;
 		StackElement elemResult = null;
 	
-		Date operand1, operand2;
 		boolean result = false;
 		
 		if (getComparativeOperator() != null) {
@@ -767,55 +909,32 @@ public class Expression extends Vector<Object> {
 	
 				try {
 	
-					if (elemOp1.getValue() instanceof Date)
-						operand1 = (Date) elemOp1.getValue();
-					else if (elemOp1.getValue() instanceof Calendar)
-						operand1 = ((Calendar)elemOp1.getValue()).getTime();
-					else
-						operand1 = null;
-						
-					if (elemOp2.getValue() instanceof Date)
-						operand2 = (Date) elemOp2.getValue();
-					else if (elemOp1.getValue() instanceof Calendar)
-						operand2 = ((Calendar)elemOp2.getValue()).getTime();
-					else
-						operand2 = null;
-	
-					if (operator.equals(Expression.OC_EQUAL))			
-						result = Dates.compare(operand1, operand2) == 0;
-					
-					else if (operator.equals(Expression.OC_GREATER))				
-						result = Dates.compare(operand1, operand2) > 0;
-					
-					else if (operator.equals(Expression.OC_LESS))
-						result = Dates.compare(operand1, operand2) < 0;
-					
-					else if (operator.equals(Expression.OC_DISTINCT))
-						result = Dates.compare(operand1, operand2) != 0;
+					//Las fechas se comparan por su valor numérico, que se calcula una sola vez para cada elemento
+					boolean ignoreTimeOfDay = operator.equals(Expression.OC_EQUAL_IGNORE) || operator.equals(Expression.OC_GREATER_IGNORE)
+										   || operator.equals(Expression.OC_LESS_IGNORE) || operator.equals(Expression.OC_DISTINCT_IGNORE)
+										   || operator.equals(Expression.OC_GREATER_EQUAL_IGNORE) || operator.equals(Expression.OC_EQUAL_GREATER_IGNORE)
+										   || operator.equals(Expression.OC_LESS_EQUAL_IGNORE) || operator.equals(Expression.OC_EQUAL_LESS_IGNORE);
+					int compareResult = Dates.compareLocalTimes(elemOp1.getLocalTime(), elemOp2.getLocalTime(), ignoreTimeOfDay);
 					
-					else if (operator.equals(Expression.OC_GREATER_EQUAL) || operator.equals(Expression.OC_EQUAL_GREATER))
-						result = Dates.compare(operand1, operand2) >= 0;
+					if (operator.equals(Expression.OC_EQUAL) || operator.equals(Expression.OC_EQUAL_IGNORE))
+						result = compareResult == 0;
 					
-					else if (operator.equals(Expression.OC_LESS_EQUAL) || operator.equals(Expression.OC_EQUAL_LESS))
-						result = Dates.compare(operand1, operand2) <= 0;
+					else if (operator.equals(Expression.OC_GREATER) || operator.equals(Expression.OC_GREATER_IGNORE))
+						result = compareResult > 0;
 					
-					else if (operator.equals(Expression.OC_EQUAL_IGNORE))
-						result = Dates.compareIgnoringTimeOfDay(operand1, operand2) == 0;
+					else if (operator.equals(Expression.OC_LESS) || operator.equals(Expression.OC_LESS_IGNORE))
+						result = compareResult < 0;
 					
-					else if (operator.equals(Expression.OC_GREATER_IGNORE))
-						result = Dates.compareIgnoringTimeOfDay(operand1, operand2) > 0;
+					else if (operator.equals(Expression.OC_DISTINCT) || operator.equals(Expression.OC_DISTINCT_IGNORE))
+						result = compareResult != 0;
 					
-					else if (operator.equals(Expression.OC_LESS_IGNORE))
-						result = Dates.compareIgnoringTimeOfDay(operand1, operand2) < 0;
+					else if (operator.equals(Expression.OC_GREATER_EQUAL) || operator.equals(Expression.OC_EQUAL_GREATER)
+						  || operator.equals(Expression.OC_GREATER_EQUAL_IGNORE) || operator.equals(Expression.OC_EQUAL_GREATER_IGNORE))
+						result = compareResult >= 0;
 					
-					else if (operator.equals(Expression.OC_DISTINCT_IGNORE))
-						result = Dates.compareIgnoringTimeOfDay(operand1, operand2) != 0;
-	
-					else if (operator.equals(Expression.OC_GREATER_EQUAL_IGNORE) || operator.equals(Expression.OC_EQUAL_GREATER_IGNORE))
-						result = Dates.compareIgnoringTimeOfDay(operand1, operand2) >= 0;
-	
-					else if (operator.equals(Expression.OC_LESS_EQUAL_IGNORE) || operator.equals(Expression.OC_EQUAL_LESS_IGNORE))
-						result = Dates.compareIgnoringTimeOfDay(operand1, operand2) <= 0;
+					else if (operator.equals(Expression.OC_LESS_EQUAL) || operator.equals(Expression.OC_EQUAL_LESS)
+						  || operator.equals(Expression.OC_LESS_EQUAL_IGNORE) || operator.equals(Expression.OC_EQUAL_LESS_IGNORE))
+						result = compareResult <= 0;
 					
 					elemResult = new StackElement(String.valueOf(result), -1, elemOp1.getPositionInText());
 	
@@ -1084,11 +1203,11 @@ public class Expression extends Vector<Object> {
 				expressionReduced.setElementAt(elemOp2, indiceMultiplica + 1);
 			}
 	
-			operand1 = new Double(elemOp1.getValue().toString()).doubleValue();
-			operand2 = new Double(elemOp2.getValue().toString()).doubleValue();
+			operand1 = elemOp1.getDoubleValue();
+			operand2 = elemOp2.getDoubleValue();
 			result = operand1 * operand2;
 	
-			elemResult = new StackElement("" + result, -1, elemOp1.getPositionInText());
+			elemResult = new StackElement(result, elemOp1.getPositionInText());
 	
 			//Sustituimos los operandos y el operador por el resultado
 			expressionReduced.removeElementAt(indiceMultiplica - 1);
@@ -1115,11 +1234,11 @@ public class Expression extends Vector<Object> {
 				expressionReduced.setElementAt(elemOp2, indiceDivision + 1);
 			}
 	
-			operand1 = new Double(elemOp1.getValue().toString()).doubleValue();
-			operand2 = new Double(elemOp2.getValue().toString()).doubleValue();
+			operand1 = elemOp1.getDoubleValue();
+			operand2 = elemOp2.getDoubleValue();
 			result = operand1 / operand2;
 	
-			elemResult = new StackElement("" + result, -1, elemOp1.getPositionInText());
+			elemResult = new StackElement(result, elemOp1.getPositionInText());
 	
 			//Sustituimos los operandos y el operador por el resultado
 			expressionReduced.removeElementAt(indiceDivision - 1);
@@ -1154,11 +1273,11 @@ public class Expression extends Vector<Object> {
 				expressionReduced.setElementAt(elemOp2, indexSum + 1);
 			}
 	
-			operand1 = new Double(elemOp1.getValue().toString()).doubleValue();
-			operand2 = new Double(elemOp2.getValue().toString()).doubleValue();
+			operand1 = elemOp1.getDoubleValue();
+			operand2 = elemOp2.getDoubleValue();
 			result = operand1 + operand2;
 	
-			elemResult = new StackElement("" + result, -1, elemOp1.getPositionInText());
+			elemResult = new StackElement(result, elemOp1.getPositionInText());
 	
 			//Sustituimos los operandos y el operador por el resultado
 			expressionReduced.removeElementAt(indexSum - 1);
@@ -1193,11 +1312,11 @@ public class Expression extends Vector<Object> {
 				expressionReduced.setElementAt(elemOp2, indexSubtract + 1);
 			}
 	
-			operand1 = new Double(elemOp1.getValue().toString()).doubleValue();
-			operand2 = new Double(elemOp2.getValue().toString()).doubleValue();
+			operand1 = elemOp1.getDoubleValue();
+			operand2 = elemOp2.getDoubleValue();
 			result = operand1 - operand2;
 	
-			elemResult = new StackElement("" + result, -1, elemOp1.getPositionInText());
+			elemResult = new StackElement(result, elemOp1.getPositionInText());
 	
 			//Sustituimos los operandos y el operador por el resultado
 			expressionReduced.removeElementAt(indexSubtract - 1);
@@ -1310,8 +1429,8 @@ public class Expression extends Vector<Object> {
 	
 				try {
 				
-					operand1 = new Double(elemOp1.getValue().toString()).doubleValue();
-					operand2 = new Double(elemOp2.getValue().toString()).doubleValue();
+					operand1 = elemOp1.getDoubleValue();
+					operand2 = elemOp2.getDoubleValue();
 					
 					if (operator.equals(Expression.OC_EQUAL))			
 						elemResult = new StackElement("" + (operand1 == operand2), -1, elemOp1.getPositionInText());
@@ -1383,7 +1502,12 @@ public class Expression extends Vector<Object> {
 	
 			for (int i = 0; i < this.size(); i++) {
 	
-				if (this.elementAt(i).toString().equalsIgnoreCase(str))
+				Object element = this.elementAt(i);
+				//Los resultados numéricos nunca son operadores, así evitamos pasarlos a texto
+				if (element instanceof StackElement && ((StackElement) element).isNumericResult())
+					continue;
+				
+				if (element.toString().equalsIgnoreCase(str))
 					return i;
 			}
 		} 
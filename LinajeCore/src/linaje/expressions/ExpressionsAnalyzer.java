@@ -68,6 +68,8 @@ public class ExpressionsAnalyzer {
 	
 	public static final Texts TEXTS = new Texts();
 	
+	private static final ExpressionsCache EXPRESSIONS_CACHE = new ExpressionsCache();
+	
 /**
  * ExpressionsAnalyzer constructor comment.
  */
@@ -101,12 +103,68 @@ public static Expression parseExpression(String expression, Vector<Variable> var
  */
 public static Expression parseExpression(String expression, Vector<Variable> variables, boolean forceLogicalType) throws ExpressionException {
 
+	return parseExpression(expression, variables != null ? new VariableRegistry(variables) : null, forceLogicalType);
+}
+/**
+ * Parses the expression looking for its variables in the registry, so it can be reused by many expressions
+ * with the same variables
+ *
+ * @param expression java.lang.String
+ */
+public static Expression parseExpression(String expression, VariableRegistry variableRegistry, boolean forceLogicalType) throws ExpressionException {
+
 	Vector<StackElement> stackElements = createStackElements(expression, true);
 	
-	Expression parsedExpression = parseStackElements(stackElements, variables, forceLogicalType);
+	Expression parsedExpression = parseStackElements(stackElements, variableRegistry, forceLogicalType);
 
 	return parsedExpression;
 }
+/**
+ * Parses the expression and reduces it to a CompiledExpression that can be evaluated many times
+ * with new variable values without parsing it again
+ *
+ * @param expression java.lang.String
+ */
+public static CompiledExpression compileExpression(String expression, Vector<Variable> variables) throws ExpressionException {
+
+	return compileExpression(expression, variables, true);
+}
+/**
+ * Parses the expression and reduces it to a CompiledExpression that can be evaluated many times
+ * with new variable values without parsing it again
+ *
+ * @param expression java.lang.String
+ */
+public static CompiledExpression compileExpression(String expression, Vector<Variable> variables, boolean forceLogicalType) throws ExpressionException {
+
+	return compileExpression(expression, variables != null ? new VariableRegistry(variables) : null, forceLogicalType);
+}
+/**
+ * Parses the expression looking for its variables in the registry and reduces it to a CompiledExpression
+ *
+ * @param expression java.lang.String
+ */
+public static CompiledExpression compileExpression(String expression, VariableRegistry variableRegistry, boolean forceLogicalType) throws ExpressionException {
+
+	Expression parsedExpression = parseExpression(expression, variableRegistry, forceLogicalType);
+
+	return new CompiledExpression(parsedExpression, expression);
+}
+/**
+ * Returns the compiled expression from the shared cache, compiling it only the first time it's used with the same variables signature
+ *
+ * @param expression java.lang.String
+ */
+public static CompiledExpression getCompiledExpression(String expression, Vector<Variable> variables, boolean forceLogicalType) throws ExpressionException {
+
+	return getExpressionsCache().getCompiledExpression(expression, variables, forceLogicalType);
+}
+/**
+ * Shared cache of compiled expressions used by getCompiledExpression
+ */
+public static ExpressionsCache getExpressionsCache() {
+	return EXPRESSIONS_CACHE;
+}
 /**
  * <b>Descripción:</b><br>
  * Creado por: Pablo Linaje (02/12/2005 10:49:25)
@@ -115,7 +173,7 @@ public static Expression parseExpression(String expression, Vector<Variable> var
  */
 public static Expression parseStackElements(Vector<StackElement> stackElements) throws ExpressionException {
 
-	return parseStackElements(stackElements, null);
+	return parseStackElements(stackElements, (Vector<Variable>) null);
 }
 /**
  * <b>Descripción:</b><br>
@@ -135,6 +193,15 @@ public static Expression parseStackElements(Vector<StackElement> stackElements,
  */
 public static Expression parseStackElements(Vector<StackElement> stackElements, Vector<Variable> variables, boolean forceLogicalType) throws ExpressionException {
 
+	return parseStackElements(stackElements, variables != null ? new VariableRegistry(variables) : null, forceLogicalType);
+}
+/**
+ * Parses the stack elements looking for their variables in the registry
+ *
+ * @param stackElements java.util.Vector
+ */
+public static Expression parseStackElements(Vector<StackElement> stackElements, VariableRegistry variableRegistry, boolean forceLogicalType) throws ExpressionException {
+
 	Expression expression = new Expression(null);
 	expression.setForceLogicalType(forceLogicalType);
 	StackElement stackElement;
@@ -162,8 +229,8 @@ public static Expression parseStackElements(Vector<StackElement> stackElements,
 		operatorType = stackElement.getOperatorType();
 		position = stackElement.getPositionInText();
 
-		//Pasamos el vector de variables al elemento para que se inicie su nature y valor
-		stackElement.initElement(variables);
+		//Pasamos las variables al elemento para que se inicie su nature y valor
+		stackElement.initElement(variableRegistry);
 		
 		elementNature = stackElement.getNature();
 		
@@ -641,7 +708,13 @@ public final static char getNature(Class<?> type) {
  */
 public static Object getFunctionResult(String function, Vector<?> values, Object defaultValue) {
 
-	Object functionValue = getFunctionValue(function, values, defaultValue);
+	return getFunctionResult(function, getFunctionValue(function, values, defaultValue));
+}
+/**
+ * Converts the value of the function to the result shown for it (the value with type of MAX, MIN, MAX2 and MIN2)
+ */
+static Object getFunctionResult(String function, Object functionValue) {
+
 	Object result;
 
 	if (function.equalsIgnoreCase(Expression.OF_MAX)
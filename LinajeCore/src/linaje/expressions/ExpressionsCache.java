@@ -0,0 +1,176 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.expressions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Bounded LRU cache of compiled expressions, keyed by the text of the expression and the names, descriptions and types of the variables.
+ * <p>
+ * The parsed {@link Expression} keeps the values of the variables when it was parsed, so the cache keeps the {@link CompiledExpression}
+ * instead, that reads the values on each evaluation and is bound to the variables received in each call.
+ * It's thread safe.
+ */
+public class ExpressionsCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 500;
+
+	private static final char SEPARATOR_KEY = '\u0000';
+	private static final char SEPARATOR_VARIABLE = '\u0001';
+
+	private final int maximumSize;
+	private final Map<String, CachedExpression> cachedExpressions;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public ExpressionsCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+	public ExpressionsCache(int maximumSize) {
+
+		super();
+		this.maximumSize = maximumSize;
+		this.cachedExpressions = new LinkedHashMap<String, CachedExpression>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedExpression> eldest) {
+
+				boolean remove = size() > getMaximumSize();
+				if (remove)
+					evictions++;
+				return remove;
+			}
+		};
+	}
+
+	public CompiledExpression getCompiledExpression(String expression, Vector<Variable> variables) throws ExpressionException {
+		return getCompiledExpression(expression, variables, true);
+	}
+
+	/**
+	 * Returns the compiled expression bound to these variables, parsing it only if there isn't one cached with the same text and variables signature
+	 */
+	public CompiledExpression getCompiledExpression(String expression, Vector<Variable> variables, boolean forceLogicalType) throws ExpressionException {
+
+		Variable[] variablesArray = variables != null ? variables.toArray(new Variable[variables.size()]) : new Variable[0];
+		String key = getKey(expression, variablesArray, forceLogicalType);
+
+		CachedExpression cachedExpression;
+		synchronized (this) {
+			cachedExpression = cachedExpressions.get(key);
+			if (cachedExpression != null)
+				hits++;
+			else
+				misses++;
+		}
+
+		if (cachedExpression != null)
+			return cachedExpression.bind(variablesArray);
+
+		//Compilamos fuera del bloqueo, si otro hilo compila la misma expresión a la vez nos quedamos con la última
+		CompiledExpression compiledExpression = ExpressionsAnalyzer.compileExpression(expression, variables, forceLogicalType);
+		cachedExpression = new CachedExpression(compiledExpression, variablesArray);
+		synchronized (this) {
+			cachedExpressions.put(key, cachedExpression);
+		}
+
+		return compiledExpression;
+	}
+
+	public synchronized void clear() {
+		cachedExpressions.clear();
+	}
+
+	public synchronized int size() {
+		return cachedExpressions.size();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public String toString() {
+		return getClass().getSimpleName() + "[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	private static String getKey(String expression, Variable[] variables, boolean forceLogicalType) {
+
+		StringBuilder key = new StringBuilder(expression);
+		key.append(SEPARATOR_KEY).append(forceLogicalType);
+		for (int i = 0; i < variables.length; i++) {
+
+			Variable variable = variables[i];
+			Class<?> type = variable.getType();
+			key.append(SEPARATOR_KEY).append(variable.getName());
+			key.append(SEPARATOR_VARIABLE).append(variable.getDescription());
+			key.append(SEPARATOR_VARIABLE).append(type != null ? type.getName() : null);
+		}
+		return key.toString();
+	}
+
+	private static final class CachedExpression {
+
+		private final CompiledExpression compiledExpression;
+		private final Variable[] compiledVariables;
+		//Posición de cada variable de la expresión compilada en las variables con las que se compiló
+		private final int[] variablePositions;
+
+		CachedExpression(CompiledExpression compiledExpression, Variable[] variables) {
+
+			this.compiledExpression = compiledExpression;
+			this.compiledVariables = compiledExpression.getVariables().toArray(new Variable[0]);
+			this.variablePositions = new int[compiledVariables.length];
+			for (int i = 0; i < variablePositions.length; i++) {
+				for (int j = 0; j < variables.length; j++) {
+					if (variables[j] == compiledVariables[i]) {
+						variablePositions[i] = j;
+						break;
+					}
+				}
+			}
+		}
+
+		CompiledExpression bind(Variable[] variables) {
+
+			Variable[] boundVariables = new Variable[variablePositions.length];
+			boolean sameVariables = true;
+			for (int i = 0; i < variablePositions.length; i++) {
+				boundVariables[i] = variables[variablePositions[i]];
+				sameVariables = sameVariables && boundVariables[i] == compiledVariables[i];
+			}
+
+			return sameVariables ? compiledExpression : compiledExpression.bind(boundVariables);
+		}
+	}
+}
@@ -22,6 +22,7 @@ package linaje.expressions;
  */
 
 import java.awt.Color;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.Vector;
 
@@ -42,6 +43,8 @@ public class StackElement {
 	private Variable linkedVariable = null;
 	private Vector<String> callingFunctions = null;
 	private Vector<Object> functionsResults = null;
+	private boolean numericResult = false;
+	private Long localTime = null;
 	
 	public static final String DEFAULT_DATE_FORMAT = "d_M_y";
 	
@@ -97,6 +100,20 @@ public class StackElement {
 		setText(text.toString());
 	}
 	
+	/**
+	 * Element with the result of a numeric operation.
+	 * The value is kept as a number and its text is only created if it is requested
+	 */
+	StackElement(double numericValue, int positionInText) {
+		
+		super();
+		
+		setPositionInText(positionInText);
+		setNature(Expression.NATURE_NUMERICAL);
+		setValue(new Double(numericValue));
+		this.numericResult = true;
+	}
+	
 	public void addCallingFunction(String callingFunction) {
 	
 		getCallingFunctions().addElement(callingFunction);
@@ -192,6 +209,8 @@ public class StackElement {
 		return functionsResults;
 	}
 	public String getText() {
+		if (text == null && isNumericResult())
+			text = value.toString();
 		return text;
 	}
 	public int getOperatorType() {
@@ -200,10 +219,48 @@ public class StackElement {
 	
 	public Object getValue() throws ExpressionException {
 		if (value == null)
-			initElement(null);
+			initElement((Vector<Variable>) null);
 		return value;
 	}
 	
+	protected double getDoubleValue() throws ExpressionException {
+		return toDouble(getValue());
+	}
+	
+	/**
+	 * Numbers are read without converting them to text, other values are parsed as before
+	 */
+	static double toDouble(Object value) {
+		
+		if (value instanceof Double || value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+			return ((Number) value).doubleValue();
+		else
+			return new Double(value.toString()).doubleValue();
+	}
+	
+	/**
+	 * Indicates if this element holds the result of a numeric operation, this kind of elements are never operators
+	 */
+	boolean isNumericResult() {
+		return numericResult;
+	}
+	
+	/**
+	 * Value of a date element as {@link Dates#getLocalTime(Date)}, so the date is converted only once
+	 * and the comparisons are made with the long values
+	 */
+	long getLocalTime() throws ExpressionException {
+		
+		if (localTime == null) {
+			
+			Object value = getValue();
+			Date date = value instanceof Calendar ? ((Calendar) value).getTime() : (Date) value;
+			//Si no hay fecha falla igual que Dates.compare
+			localTime = Long.valueOf(Dates.getLocalTime(date));
+		}
+		return localTime.longValue();
+	}
+	
 	public String getAlphanumericValue() throws ExpressionException {
 		
 		if (alphanumericValue == null) {
@@ -224,6 +281,14 @@ public class StackElement {
 	}
 	
 	public void initElement(Vector<Variable> variables) throws ExpressionException {
+		initElement(variables, null);
+	}
+	
+	public void initElement(VariableRegistry variableRegistry) throws ExpressionException {
+		initElement(null, variableRegistry);
+	}
+	
+	private void initElement(Vector<Variable> variables, VariableRegistry variableRegistry) throws ExpressionException {
 	
 		String text = getText();
 		if (text != null && getOperatorType() == -1) {
@@ -243,7 +308,7 @@ public class StackElement {
 			}
 			else {
 	
-				Variable variable = Variable.searchVariable(text, variables);
+				Variable variable = variableRegistry != null ? variableRegistry.search(text) : Variable.searchVariable(text, variables);
 				if (variable != null) {
 	
 					if (variable.isValid()) {
@@ -58,7 +58,7 @@ public class Variable {
 	private String description = null;
 	private boolean metPartialExpression = false;
 	private boolean calledOutOfFunction = false;
-	private Vector<Object> values = null;
+	private VariableValues values = null;
 	private Vector<String> callingFunctions = null;
 	private Vector<Object> functionResults = null;
 
@@ -101,6 +101,13 @@ public class Variable {
 		return null;
 	}
 	
+	/**
+	 * Same search as {@link #searchVariable(String, Vector)} using the indices of the registry
+	 */
+	public static Variable searchVariable(String name, VariableRegistry variableRegistry) {
+		return variableRegistry != null ? variableRegistry.search(name) : null;
+	}
+	
 	public boolean isCalledOutOfFunction() {
 		return calledOutOfFunction;
 	}
@@ -179,15 +186,15 @@ public class Variable {
 	}
 	
 	public Object getMax() {
-		return ExpressionsAnalyzer.getFunctionResult(Expression.OF_MAX, getValues(), getValue());
+		return getFunctionResult(Expression.OF_MAX);
 	}
 	
 	public Object getMax2() {
-		return ExpressionsAnalyzer.getFunctionResult(Expression.OF_MAX2, getValues(), getValue());
+		return getFunctionResult(Expression.OF_MAX2);
 	}
 	
 	public double getAvg() {
-		return ExpressionsAnalyzer.getAvg(getValues(), getValue()).doubleValue();
+		return ((Double) getVariableValues().getFunctionValue(Expression.OF_AVG, getValue())).doubleValue();
 	}
 	
 	public double getAbs() {
@@ -195,15 +202,15 @@ public class Variable {
 	}
 	
 	public Object getMin() {
-		return ExpressionsAnalyzer.getFunctionResult(Expression.OF_MIN, getValues(), getValue());
+		return getFunctionResult(Expression.OF_MIN);
 	}
 	
 	public Object getMin2() {
-		return ExpressionsAnalyzer.getFunctionResult(Expression.OF_MIN2, getValues(), getValue());
+		return getFunctionResult(Expression.OF_MIN2);
 	}
 	
 	public double getSum() {
-		return ExpressionsAnalyzer.getSum(getValues(), getValue()).doubleValue();
+		return ((Double) getVariableValues().getFunctionValue(Expression.OF_SUM, getValue())).doubleValue();
 	}
 	
 	public String getName() {
@@ -211,7 +218,7 @@ public class Variable {
 	}
 	
 	public Object getFunctionResult(String function) {
-		return ExpressionsAnalyzer.getFunctionResult(function, getValues(), getValue());
+		return ExpressionsAnalyzer.getFunctionResult(function, getVariableValues().getFunctionValue(function, getValue()));
 	}
 	
 	public Vector<Object> getFunctionResults() {
@@ -229,23 +236,47 @@ public class Variable {
 		return value;
 	}
 	
+	/**
+	 * Values used by the functions of the variable.
+	 * <p>
+	 * The results of MAX, MIN, MAX2, MIN2, SUM and AVG are updated as values are added or removed from this vector
+	 */
 	public Vector<Object> getValues() {
+		return getVariableValues();
+	}
+	
+	private VariableValues getVariableValues() {
 		if (values == null)
-			values = Lists.newVector();
+			values = new VariableValues();
 		return values;
 	}
 	
+	public void addValue(Object value) {
+		getVariableValues().addElement(value);
+	}
+	
+	public boolean removeValue(Object value) {
+		return getVariableValues().removeElement(value);
+	}
+	
 	public Object getFunctionValue(String function) {
+		return getFunctionValue(function, getValue());
+	}
+	
+	/**
+	 * Same as {@link #getFunctionValue(String)} taking value as the value of the variable
+	 */
+	Object getFunctionValue(String function, Object value) {
 	
 		if (getType() == null && (function.equalsIgnoreCase(Expression.OF_SUM) || function.equalsIgnoreCase(Expression.OF_AVG))) {
 	
 			//Si la variable es global y estamos en una suma o media, obtenemos los values con el GlobalDataConverter
 			Object globalValue = null;
-			if (getValue() != null)
-				globalValue = GlobalDataConverter.getNonAlphanumericData(getValue().toString());
+			if (value != null)
+				globalValue = GlobalDataConverter.getNonAlphanumericData(value.toString());
 			
 			if (globalValue == null)
-				globalValue = getValue();
+				globalValue = value;
 	
 			Vector<Object> globalValues = Lists.newVector();
 			for (int i = 0; i < getValues().size(); i++) {
@@ -264,24 +295,24 @@ public class Variable {
 		}
 		else {
 			
-			return ExpressionsAnalyzer.getFunctionValue(function, getValues(), getValue());
+			return getVariableValues().getFunctionValue(function, value);
 		}
 	}
 	
 	public Object getMaxValue() {
-		return ExpressionsAnalyzer.getMaxValue(getValues(), getValue());
+		return getVariableValues().getFunctionValue(Expression.OF_MAX, getValue());
 	}
 	
 	public Object getMaxValue2() {
-		return ExpressionsAnalyzer.getMaxValue2(getValues(), getValue());
+		return getVariableValues().getFunctionValue(Expression.OF_MAX2, getValue());
 	}
 	
 	public Object getMinValue() {
-		return ExpressionsAnalyzer.getMinValue(getValues(), getValue());
+		return getVariableValues().getFunctionValue(Expression.OF_MIN, getValue());
 	}
 	
 	public Object getMinValue2() {
-		return ExpressionsAnalyzer.getMinValue2(getValues(), getValue());
+		return getVariableValues().getFunctionValue(Expression.OF_MIN2, getValue());
 	}
 	
 	public static Variable getVariable(String encodedVariable) {
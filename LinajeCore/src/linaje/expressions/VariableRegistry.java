@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.expressions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Case insensitive index of variables by name and by description.
+ * <p>
+ * {@link #search(String)} finds the same variable as {@link Variable#searchVariable(String, Vector)} without scanning the variables,
+ * so it's used by the analyzer to link the variables of each element of the expression.
+ * <p>
+ * The description of a variable is indexed when it's added, so changes made to it later are not seen by the registry.
+ * It's not synchronized.
+ */
+public class VariableRegistry {
+
+	private List<Variable> variables = null;
+	//Posición de la primera variable con cada nombre o descripción, para devolver la misma que la búsqueda secuencial
+	private Map<String, Integer> namePositions = null;
+	private Map<String, Integer> descriptionPositions = null;
+
+	public VariableRegistry() {
+		super();
+	}
+	public VariableRegistry(Collection<Variable> variables) {
+		super();
+		if (variables != null) {
+			for (Variable variable : variables)
+				add(variable);
+		}
+	}
+
+	public void add(Variable variable) {
+
+		Integer position = Integer.valueOf(getVariablesList().size());
+		getVariablesList().add(variable);
+
+		if (variable.getName() != null)
+			getNamePositions().putIfAbsent(getKey(variable.getName()), position);
+		if (variable.getDescription() != null)
+			getDescriptionPositions().putIfAbsent(getKey(variable.getDescription()), position);
+	}
+
+	public Variable search(String name) {
+
+		if (name == null || variables == null)
+			return null;
+
+		String key = getKey(name);
+		Integer namePosition = getNamePositions().get(key);
+		Integer descriptionPosition = getDescriptionPositions().get(key);
+
+		int position;
+		if (namePosition == null && descriptionPosition == null)
+			return null;
+		else if (namePosition == null)
+			position = descriptionPosition.intValue();
+		else if (descriptionPosition == null)
+			position = namePosition.intValue();
+		else
+			position = Math.min(namePosition.intValue(), descriptionPosition.intValue());
+
+		return variables.get(position);
+	}
+
+	public boolean contains(String name) {
+		return search(name) != null;
+	}
+
+	public int size() {
+		return variables != null ? variables.size() : 0;
+	}
+
+	public Vector<Variable> getVariables() {
+		return new Vector<>(getVariablesList());
+	}
+
+	private List<Variable> getVariablesList() {
+		if (variables == null)
+			variables = new ArrayList<>();
+		return variables;
+	}
+
+	private Map<String, Integer> getNamePositions() {
+		if (namePositions == null)
+			namePositions = new HashMap<>();
+		return namePositions;
+	}
+
+	private Map<String, Integer> getDescriptionPositions() {
+		if (descriptionPositions == null)
+			descriptionPositions = new HashMap<>();
+		return descriptionPositions;
+	}
+
+	static String getKey(String name) {
+
+		//Normalizamos cada caracter igual que String.equalsIgnoreCase para que las claves coincidan en los mismos casos
+		char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+
+		return new String(chars);
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.expressions;
+
+import java.util.Vector;
+
+import linaje.utils.Utils;
+
+/**
+ * Values of a {@link Variable} that keep the results of the functions MAX, MIN, MAX2, MIN2, SUM and AVG updated
+ * while values are appended or removed, so they don't have to be calculated again scanning all the values.
+ * <p>
+ * Any other modification of the vector is detected and the results are calculated again the next time they are requested.
+ * The results are the same as the ones of {@link ExpressionsAnalyzer#getFunctionValue(String, Vector, Object)}
+ */
+class VariableValues extends Vector<Object> {
+
+	private static final long serialVersionUID = -2739406510817213587L;
+
+	//modCount del vector con el que se han acumulado los valores, si no coincide es que se ha modificado por otro método
+	private transient boolean aggregatesCalculated = false;
+	private transient int aggregatesModCount = 0;
+	private transient boolean extremesUpdated = false;
+
+	//Al quitar valores la suma se recalcula cuando se pida, restando se acumularían errores de redondeo
+	private transient double sum = 0;
+	private transient boolean sumUpdated = false;
+	private transient int nonNumericValues = 0;
+	private transient int nullValues = 0;
+	private transient Class<?> valuesType = null;
+	private transient boolean mixedTypes = false;
+
+	//Valor original del máximo y del mínimo, y valores con tipo (GlobalDataConverter) de los dos mayores y los dos menores
+	private transient Object maxValue = null;
+	private transient Object max = null;
+	private transient Object max2 = null;
+	private transient Object minValue = null;
+	private transient Object min = null;
+	private transient Object min2 = null;
+
+	public VariableValues() {
+		super();
+	}
+
+	public synchronized void addElement(Object value) {
+
+		boolean aggregatesUpdated = isAggregatesUpdated();
+		super.addElement(value);
+		if (aggregatesUpdated) {
+			accumulate(value);
+			aggregatesModCount = modCount;
+		}
+	}
+
+	public synchronized boolean add(Object value) {
+
+		boolean aggregatesUpdated = isAggregatesUpdated();
+		super.add(value);
+		if (aggregatesUpdated) {
+			accumulate(value);
+			aggregatesModCount = modCount;
+		}
+		return true;
+	}
+
+	public synchronized boolean removeElement(Object value) {
+
+		int index = indexOf(value);
+		if (index == -1)
+			return false;
+
+		Object removedValue = elementAt(index);
+		boolean aggregatesUpdated = isAggregatesUpdated();
+		super.removeElementAt(index);
+		if (aggregatesUpdated) {
+			subtract(removedValue);
+			aggregatesModCount = modCount;
+		}
+		return true;
+	}
+
+	public synchronized Object set(int index, Object value) {
+
+		//Vector no cuenta las sustituciones como modificaciones, así que lo indicamos para que se recalculen los acumulados
+		Object previousValue = super.set(index, value);
+		modCount++;
+		return previousValue;
+	}
+
+	public synchronized void setElementAt(Object value, int index) {
+		super.setElementAt(value, index);
+		modCount++;
+	}
+
+	/**
+	 * Returns the same value as {@link ExpressionsAnalyzer#getFunctionValue(String, Vector, Object)} for these values
+	 */
+	synchronized Object getFunctionValue(String function, Object defaultValue) {
+
+		updateAggregates();
+
+		int size = size();
+		if (size == 0 || nullValues > 0 || mixedTypes || function.equalsIgnoreCase(Expression.OF_ABS))
+			return ExpressionsAnalyzer.getFunctionValue(function, this, defaultValue);
+
+		if (function.equalsIgnoreCase(Expression.OF_SUM))
+			return new Double(nonNumericValues > 0 ? 0 : getSum());
+		else if (function.equalsIgnoreCase(Expression.OF_AVG))
+			return new Double((nonNumericValues > 0 ? 0 : getSum()) / size);
+
+		boolean isMax = function.equalsIgnoreCase(Expression.OF_MAX);
+		boolean isMin = function.equalsIgnoreCase(Expression.OF_MIN);
+		boolean isMax2 = function.equalsIgnoreCase(Expression.OF_MAX2);
+		boolean isMin2 = function.equalsIgnoreCase(Expression.OF_MIN2);
+		if (!isMax && !isMin && !isMax2 && !isMin2)
+			return null;
+		else if (size == 1)
+			return elementAt(0);
+
+		updateExtremes();
+
+		if (isMax)
+			return maxValue;
+		else if (isMin)
+			return minValue;
+		else if (isMax2)
+			return max2;
+		else
+			return min2;
+	}
+
+	private boolean isAggregatesUpdated() {
+		return aggregatesCalculated && aggregatesModCount == modCount;
+	}
+
+	private void updateAggregates() {
+
+		if (!isAggregatesUpdated()) {
+
+			sum = 0;
+			sumUpdated = true;
+			nonNumericValues = 0;
+			nullValues = 0;
+			valuesType = null;
+			mixedTypes = false;
+			resetExtremes();
+			for (int i = 0; i < size(); i++)
+				accumulate(elementAt(i));
+
+			aggregatesCalculated = true;
+			aggregatesModCount = modCount;
+		}
+	}
+
+	/**
+	 * Suma los valores en orden, igual que ExpressionsAnalyzer.getSum
+	 */
+	private double getSum() {
+
+		if (!sumUpdated) {
+
+			sum = 0;
+			for (int i = 0; i < size(); i++) {
+				Double number = getNumber(elementAt(i));
+				if (number != null)
+					sum = sum + number.doubleValue();
+			}
+			sumUpdated = true;
+		}
+		return sum;
+	}
+
+	private void updateExtremes() {
+
+		if (!extremesUpdated) {
+
+			resetExtremes();
+			for (int i = 0; i < size(); i++) {
+				Object value = elementAt(i);
+				accumulateExtremes(value, getValueWithType(value));
+			}
+		}
+	}
+
+	private void resetExtremes() {
+
+		maxValue = null;
+		max = null;
+		max2 = null;
+		minValue = null;
+		min = null;
+		min2 = null;
+		extremesUpdated = true;
+	}
+
+	private void accumulate(Object value) {
+
+		if (value == null) {
+			nullValues++;
+			return;
+		}
+
+		Double number = getNumber(value);
+		if (number == null)
+			nonNumericValues++;
+		else if (sumUpdated)
+			sum = sum + number.doubleValue();
+
+		Object valueWithType = getValueWithType(value);
+		if (valuesType == null)
+			valuesType = valueWithType.getClass();
+		else if (valuesType != valueWithType.getClass() && !(valueWithType instanceof Number && Number.class.isAssignableFrom(valuesType)))
+			mixedTypes = true; //Con tipos distintos la ordenación no es consistente, así que usaremos el cálculo completo
+
+		if (extremesUpdated)
+			accumulateExtremes(value, valueWithType);
+	}
+
+	private void subtract(Object value) {
+
+		if (value == null) {
+			nullValues--;
+			return;
+		}
+
+		Double number = getNumber(value);
+		if (number == null)
+			nonNumericValues--;
+		else
+			sumUpdated = false;
+
+		//Si quitamos uno de los extremos los recalcularemos cuando se pidan
+		Object valueWithType = getValueWithType(value);
+		if (extremesUpdated && (Utils.compare(valueWithType, max) == 0 || Utils.compare(valueWithType, max2) == 0
+							|| Utils.compare(valueWithType, min) == 0 || Utils.compare(valueWithType, min2) == 0))
+			extremesUpdated = false;
+
+		if (isEmpty()) {
+			valuesType = null;
+			mixedTypes = false;
+			resetExtremes();
+		}
+	}
+
+	private void accumulateExtremes(Object value, Object valueWithType) {
+
+		//Igual que en getMaxValue y getMinValue, con valores iguales nos quedamos con el primero
+		if (max == null || Utils.compare(valueWithType, max) > 0) {
+			max2 = max;
+			max = valueWithType;
+			maxValue = value;
+		}
+		else if (max2 == null || Utils.compare(valueWithType, max2) > 0) {
+			max2 = valueWithType;
+		}
+
+		if (min == null || Utils.compare(valueWithType, min) < 0) {
+			min2 = min;
+			min = valueWithType;
+			minValue = value;
+		}
+		else if (min2 == null || Utils.compare(valueWithType, min2) < 0) {
+			min2 = valueWithType;
+		}
+	}
+
+	private static Object getValueWithType(Object value) {
+
+		Object valueWithType = GlobalDataConverter.getNonAlphanumericData(value.toString());
+		return valueWithType != null ? valueWithType : value;
+	}
+
+	private static Double getNumber(Object value) {
+
+		//Igual que en ExpressionsAnalyzer.getSum
+		try {
+			return new Double(value.toString());
+		}
+		catch (Throwable ex) {
+			try {
+				Object possibleNumber = GlobalDataConverter.getNonAlphanumericData(value.toString());
+				return new Double(possibleNumber.toString());
+			}
+			catch (Throwable ex2) {
+				return null;
+			}
+		}
+	}
+}
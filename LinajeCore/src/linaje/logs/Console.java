@@ -21,6 +21,8 @@ import java.io.*;
 import java.net.SocketException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import linaje.App;
 import linaje.LocalizedStrings;
@@ -37,6 +39,7 @@ import linaje.utils.Files;
 import linaje.utils.FileNameExtensionFilter;
 import linaje.utils.Lists;
 import linaje.utils.Processes;
+import linaje.utils.RingBuffer;
 import linaje.utils.Strings;
  
 public class Console {
@@ -67,6 +70,11 @@ public class Console {
 	public static final int SYSTEM_CONSOLE_COLORS_8_BIT = 1;
 	public static final int SYSTEM_CONSOLE_COLORS_24_BIT = 2;
 	
+	public static final int OVERFLOW_WAIT = 0;
+	public static final int OVERFLOW_DROP = 1;
+	
+	public static final int TRACES_BUFFER_SIZE_DEFAULT = 8192;
+	
 	public static final ConsoleWriter CONSOLE_WRITER = new ConsoleWriter();
 	
 	public static final FileNameExtensionFilter FILTER_HTML_EXTENSION = new FileNameExtensionFilter("Html files", new String[]{"htm", "html"});
@@ -109,6 +117,19 @@ public class Console {
 	private Color systemBackground = null;
 	private int systemConsoleAnsiColorsCompatibility = getDefaultSystemConsoleAnsiColorsCompatibility();//SYSTEM_CONSOLE_COLORS_NOT_COMPATIBLE;	
 	
+	//Las trazas se dejan en el buffer y las escribe el hilo writerThread, así el hilo que escribe la traza no espera a las consolas, el fichero o System.out
+	private boolean asynchronous = true;
+	private int overflow = OVERFLOW_WAIT;
+	private int tracesBufferSize = TRACES_BUFFER_SIZE_DEFAULT;
+	//Se crean una sola vez, así los hilos que escriben trazas no toman ningún lock, ni esperan al que tenga el hilo de escritura mientras escribe
+	private volatile RingBuffer<Trace> traces = null;
+	private volatile Thread writerThread = null;
+	private final Object writerLock = new Object();
+	private volatile boolean writerWaiting = false;
+	private final AtomicLong addedTraces = new AtomicLong();
+	private volatile long writtenTraces = 0;
+	private final AtomicLong droppedTraces = new AtomicLong();
+	
 	private static Console instance = null;
 	
 	public static class Texts extends LocalizedStrings {
@@ -133,6 +154,19 @@ public class Console {
 	
 	public static final Texts TEXTS = new Texts();
 	
+	private static class Trace {
+		
+		private final String text;
+		private final Color color;
+		private final int typeData;
+		
+		private Trace(String text, Color color, int typeData) {
+			this.text = text;
+			this.color = color;
+			this.typeData = typeData;
+		}
+	}
+	
 	protected Console() {
 		super();
 	}
@@ -160,8 +194,14 @@ public class Console {
 	}
 	
 	public static void print(String text, Color color, int typeData) {
-		getInstance().setTypeData(typeData);
-		getInstance().setText(text, color);
+		getInstance().addTrace(text, color, typeData);
+	}
+	
+	/**
+	 * Waits until the traces printed so far have been written
+	 */
+	public static void flushTraces() {
+		getInstance().flush();
 	}
 	
 	public static void printException(Throwable exception) {
@@ -295,6 +335,7 @@ public class Console {
 	
 	public void destroy() {
 		try {
+			flush();
 			getServer().finalizeServer();
 			closeHtmlOutputFile();
 		}
@@ -427,6 +468,124 @@ public class Console {
 		}
 	}
 	
+	/**
+	 * Leaves the trace in the buffer for the writer thread, or writes it in this thread if the console is not asynchronous
+	 */
+	protected void addTrace(String text, Color color, int typeData) {
+		
+		Thread writerThread = isAsynchronous() ? getWriterThread() : null;
+		//Las trazas del propio hilo de escritura (p.e. los errores al escribir) no pueden esperar a que haya sitio
+		if (writerThread == null || Thread.currentThread() == writerThread) {
+			writeTrace(text, color, typeData);
+			return;
+		}
+		
+		Trace trace = new Trace(text, color, typeData);
+		while (!getTraces().offer(trace)) {
+			if (getOverflow() == OVERFLOW_DROP) {
+				droppedTraces.incrementAndGet();
+				return;
+			}
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(100000);
+		}
+		addedTraces.incrementAndGet();
+		
+		if (writerWaiting)
+			LockSupport.unpark(writerThread);
+	}
+	
+	private synchronized void writeTrace(String text, Color color, int typeData) {
+		setTypeData(typeData);
+		setText(text, color);
+	}
+	
+	private void writeTraces() {
+		
+		while (true) {
+			
+			Trace trace = getTraces().poll();
+			if (trace == null) {
+				//Avisamos antes de comprobar otra vez para no perder el unpark de una traza que llegue ahora
+				writerWaiting = true;
+				trace = getTraces().poll();
+				if (trace == null) {
+					System.out.flush();
+					LockSupport.park(this);
+				}
+				writerWaiting = false;
+			}
+			
+			if (trace != null) {
+				try {
+					writeTrace(trace.text, trace.color, trace.typeData);
+				}
+				catch (Throwable ex) {
+					handleException(ex);
+				}
+				writtenTraces++;
+			}
+		}
+	}
+	
+	/**
+	 * Waits until the writer thread has written the traces added so far
+	 */
+	public void flush() {
+		
+		Thread writerThread = this.writerThread;
+		if (writerThread != null && Thread.currentThread() != writerThread) {
+			long traces = addedTraces.get();
+			while (writtenTraces < traces && writerThread.isAlive()) {
+				LockSupport.unpark(writerThread);
+				LockSupport.parkNanos(1000000);
+			}
+		}
+		System.out.flush();
+		System.err.flush();
+	}
+	
+	private Thread getWriterThread() {
+		Thread thread = writerThread;
+		if (thread == null) {
+			synchronized (writerLock) {
+				thread = writerThread;
+				if (thread == null) {
+					getTraces();
+					thread = new Thread("Console-writer") {
+						public void run() {
+							writeTraces();
+						}
+					};
+					thread.setDaemon(true);
+					writerThread = thread;
+					thread.start();
+					//Al salir de la aplicación escribimos las trazas pendientes
+					Runtime.getRuntime().addShutdownHook(new Thread() {
+						public void run() {
+							flush();
+						}
+					});
+				}
+			}
+		}
+		return thread;
+	}
+	
+	private RingBuffer<Trace> getTraces() {
+		RingBuffer<Trace> buffer = traces;
+		if (buffer == null) {
+			synchronized (writerLock) {
+				buffer = traces;
+				if (buffer == null) {
+					buffer = new RingBuffer<Trace>(getTracesBufferSize());
+					traces = buffer;
+				}
+			}
+		}
+		return buffer;
+	}
+	
 	public synchronized void setText(String text, Color color) {
 	
 		try {
@@ -609,6 +768,8 @@ public class Console {
 		if (server == null) {
 			try {
 				server = ConnectionsServer.getServer(getInstance().getPort());
+				//Una consola lenta no puede bloquear la aplicación que escribe las trazas
+				server.setDropOverflow(true);
 				server.addConnectionListener(new ConnectionListener() {
 					
 					public void connectionEnd(ConnectionEvent evt) {
@@ -701,6 +862,44 @@ public class Console {
 		return dateLine;
 	}
 	
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+	/**
+	 * If true (default) the traces are written by a writer thread, so the threads that print traces don't wait for the
+	 * console windows, the output file or System.out. Call {@link #flush()} to wait until they are written
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		if (!asynchronous)
+			flush();
+		this.asynchronous = asynchronous;
+	}
+	
+	public int getOverflow() {
+		return overflow;
+	}
+	/**
+	 * What to do when the traces buffer is full: OVERFLOW_WAIT (default) waits until the writer thread makes room,
+	 * OVERFLOW_DROP drops the trace (see {@link #getDroppedTraces()})
+	 */
+	public void setOverflow(int overflow) {
+		this.overflow = overflow;
+	}
+	
+	public int getTracesBufferSize() {
+		return tracesBufferSize;
+	}
+	/**
+	 * Number of traces that can wait to be written, it has to be set before printing the first trace
+	 */
+	public void setTracesBufferSize(int tracesBufferSize) {
+		this.tracesBufferSize = tracesBufferSize;
+	}
+	
+	public long getDroppedTraces() {
+		return droppedTraces.get();
+	}
+	
 	public boolean isErrorsOnSystemOut() {
 		return errorsOnSystemOut;
 	}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.table;
+
+import java.io.Serializable;
+
+import linaje.expressions.Expression;
+
+/**
+ * Function (SUM, AVG, MIN, MAX or COUNT) and index of the column to aggregate by {@link TableGrouper}.
+ * <p>
+ * The function is also the column where the result is shown in the rows of the groups
+ */
+public class Aggregate implements Serializable {
+
+	private static final long serialVersionUID = -6125634874381806245L;
+
+	public static final String SUM = Expression.OF_SUM;
+	public static final String AVG = Expression.OF_AVG;
+	public static final String MIN = Expression.OF_MIN;
+	public static final String MAX = Expression.OF_MAX;
+	public static final String COUNT = "COUNT";
+
+	private final String function;
+	private final int index;
+
+	/**
+	 * @exception IllegalArgumentException if the function is not SUM, AVG, MIN, MAX or COUNT
+	 */
+	public Aggregate(String function, int index) {
+		super();
+		this.function = getFunction(function);
+		this.index = index;
+	}
+
+	private static String getFunction(String function) {
+
+		String[] functions = {SUM, AVG, MIN, MAX, COUNT};
+		for (int i = 0; i < functions.length; i++) {
+			if (functions[i].equalsIgnoreCase(function))
+				return functions[i];
+		}
+		throw new IllegalArgumentException("Unknown aggregate function: " + function);
+	}
+
+	public String getFunction() {
+		return function;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String toString() {
+		return function + "(" + index + ")";
+	}
+}
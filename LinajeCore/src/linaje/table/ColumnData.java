@@ -0,0 +1,478 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.table;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import linaje.utils.Lists;
+
+/**
+ * Values of a column of a {@link ColumnTableModel}, stored in an array of the type of the column.
+ * <p>
+ * The array grows like the one of a Vector. Int, long and double columns mark the null cells in a boolean array that is only created
+ * with the first null, the rest of types keep the nulls in the array itself.
+ */
+abstract class ColumnData implements Serializable {
+
+	private static final long serialVersionUID = 2194735024189364810L;
+
+	private static final int INITIAL_CAPACITY = 10;
+
+	protected Object values = null;
+	protected boolean[] nulls = null;
+	protected int size = 0;
+
+	static ColumnData newColumnData(int columnType) {
+
+		switch (columnType) {
+			case ColumnTableModel.COLUMN_TYPE_INT:
+				return new IntColumnData();
+			case ColumnTableModel.COLUMN_TYPE_LONG:
+				return new LongColumnData();
+			case ColumnTableModel.COLUMN_TYPE_DOUBLE:
+				return new DoubleColumnData();
+			case ColumnTableModel.COLUMN_TYPE_BOOLEAN:
+				return new BooleanColumnData();
+			case ColumnTableModel.COLUMN_TYPE_STRING:
+				return new StringColumnData();
+			case ColumnTableModel.COLUMN_TYPE_OBJECT:
+				return new ObjectColumnData();
+			default:
+				throw new IllegalArgumentException("Unknown column type: " + columnType);
+		}
+	}
+
+	abstract int getType();
+	abstract Class<?> getValueClass();
+	protected abstract Object newArray(int capacity);
+	/**
+	 * Returns if the value can be stored in the column keeping its class
+	 */
+	abstract boolean accepts(Object value);
+	protected abstract Object getValue(int row);
+	protected abstract void setValue(int row, Object value);
+	/**
+	 * Empties the cells from the row to the row + count, when the column keeps the nulls in the array
+	 */
+	protected abstract void clearValues(int row, int count);
+
+	int size() {
+		return size;
+	}
+
+	Object get(int row) {
+		checkRow(row);
+		return isNullValue(row) ? null : getValue(row);
+	}
+
+	void set(int row, Object value) {
+
+		checkRow(row);
+		if (value == null) {
+			if (usesNullsArray())
+				getNulls()[row] = true;
+			else
+				setValue(row, null);
+		}
+		else {
+			if (nulls != null)
+				nulls[row] = false;
+			setValue(row, value);
+		}
+	}
+
+	boolean isNull(int row) {
+		return get(row) == null;
+	}
+
+	/**
+	 * Inserts count cells at row, with null values if fillNulls, otherwise their values have to be set next
+	 */
+	void insert(int row, int count, boolean fillNulls) {
+
+		if (row < 0 || row > size)
+			throw new ArrayIndexOutOfBoundsException(row + " > " + size);
+		if (count == 0)
+			return;
+
+		ensureCapacity(size + count);
+		System.arraycopy(values, row, values, row + count, size - row);
+		if (nulls != null)
+			System.arraycopy(nulls, row, nulls, row + count, size - row);
+		size += count;
+
+		if (fillNulls) {
+			if (usesNullsArray()) {
+				boolean[] nulls = getNulls();
+				for (int i = row; i < row + count; i++)
+					nulls[i] = true;
+			}
+			else {
+				clearValues(row, count);
+			}
+		}
+	}
+
+	void remove(int row, int count) {
+
+		if (row < 0 || row + count > size)
+			throw new ArrayIndexOutOfBoundsException(row + count + " > " + size);
+		if (count == 0)
+			return;
+
+		System.arraycopy(values, row + count, values, row, size - row - count);
+		if (nulls != null)
+			System.arraycopy(nulls, row + count, nulls, row, size - row - count);
+		size -= count;
+		//Liberamos las referencias de los valores que han quedado fuera
+		if (!usesNullsArray())
+			clearValues(size, count);
+	}
+
+	void setSize(int newSize) {
+		if (newSize > size)
+			insert(size, newSize - size, true);
+		else if (newSize < size)
+			remove(newSize, size - newSize);
+	}
+
+	/**
+	 * Moves the cells from start to end (inclusive) so the cell at start ends at to, like {@link TableModel#moveElements(List, int, int, int)}
+	 */
+	void move(int start, int end, int to) {
+
+		int count = end - start + 1;
+		if (start < 0 || end >= size || to < 0 || to + count > size)
+			throw new ArrayIndexOutOfBoundsException(Math.max(end, to + count - 1) + " >= " + size);
+
+		if (to == start)
+			return;
+
+		Object movedValues = newArray(count);
+		System.arraycopy(values, start, movedValues, 0, count);
+		if (to < start)
+			System.arraycopy(values, to, values, to + count, start - to);
+		else
+			System.arraycopy(values, end + 1, values, start, to - start);
+		System.arraycopy(movedValues, 0, values, to, count);
+
+		if (nulls != null) {
+			boolean[] movedNulls = new boolean[count];
+			System.arraycopy(nulls, start, movedNulls, 0, count);
+			if (to < start)
+				System.arraycopy(nulls, to, nulls, to + count, start - to);
+			else
+				System.arraycopy(nulls, end + 1, nulls, start, to - start);
+			System.arraycopy(movedNulls, 0, nulls, to, count);
+		}
+	}
+
+	/**
+	 * Returns a column of another type with the same values (ints widened to long or double and longs to double),
+	 * or null if some value can't be stored in it
+	 */
+	ColumnData convert(int columnType) {
+
+		ColumnData columnData = newColumnData(columnType);
+		columnData.insert(0, size, false);
+		for (int i = 0; i < size; i++) {
+			Object value = widenValue(get(i), columnType);
+			if (!columnData.accepts(value))
+				return null;
+			columnData.set(i, value);
+		}
+		return columnData;
+	}
+
+	private static Object widenValue(Object value, int columnType) {
+		if (columnType == ColumnTableModel.COLUMN_TYPE_LONG && value instanceof Integer)
+			return Long.valueOf(((Integer) value).longValue());
+		if (columnType == ColumnTableModel.COLUMN_TYPE_DOUBLE && (value instanceof Integer || value instanceof Long))
+			return Double.valueOf(((Number) value).doubleValue());
+		return value;
+	}
+
+	protected boolean usesNullsArray() {
+		return false;
+	}
+
+	protected boolean isNullValue(int row) {
+		return nulls != null && nulls[row];
+	}
+
+	protected void checkRow(int row) {
+		if (row >= size)
+			throw new ArrayIndexOutOfBoundsException(row + " >= " + size);
+	}
+
+	private boolean[] getNulls() {
+		if (nulls == null)
+			nulls = new boolean[getCapacity()];
+		return nulls;
+	}
+
+	private int getCapacity() {
+		return values == null ? 0 : Array.getLength(values);
+	}
+
+	private void ensureCapacity(int minCapacity) {
+
+		int capacity = getCapacity();
+		if (values == null || minCapacity > capacity) {
+
+			int newCapacity = Math.max(Math.max(capacity * 2, minCapacity), INITIAL_CAPACITY);
+			Object newValues = newArray(newCapacity);
+			if (values != null)
+				System.arraycopy(values, 0, newValues, 0, size);
+			values = newValues;
+
+			if (nulls != null) {
+				boolean[] newNulls = new boolean[newCapacity];
+				System.arraycopy(nulls, 0, newNulls, 0, size);
+				nulls = newNulls;
+			}
+		}
+	}
+
+	static final class IntColumnData extends ColumnData {
+
+		private static final long serialVersionUID = -5082347706164925311L;
+
+		int getType() {
+			return ColumnTableModel.COLUMN_TYPE_INT;
+		}
+		Class<?> getValueClass() {
+			return Integer.class;
+		}
+		protected Object newArray(int capacity) {
+			return new int[capacity];
+		}
+		boolean accepts(Object value) {
+			return value == null || value.getClass() == Integer.class;
+		}
+		protected Object getValue(int row) {
+			return ((int[]) values)[row];
+		}
+		protected void setValue(int row, Object value) {
+			((int[]) values)[row] = (Integer) value;
+		}
+		protected void clearValues(int row, int count) {}
+		protected boolean usesNullsArray() {
+			return true;
+		}
+
+		int getInt(int row) {
+			checkRow(row);
+			return isNullValue(row) ? 0 : ((int[]) values)[row];
+		}
+	}
+
+	static final class LongColumnData extends ColumnData {
+
+		private static final long serialVersionUID = 7712408938256651806L;
+
+		int getType() {
+			return ColumnTableModel.COLUMN_TYPE_LONG;
+		}
+		Class<?> getValueClass() {
+			return Long.class;
+		}
+		protected Object newArray(int capacity) {
+			return new long[capacity];
+		}
+		boolean accepts(Object value) {
+			return value == null || value.getClass() == Long.class;
+		}
+		protected Object getValue(int row) {
+			return ((long[]) values)[row];
+		}
+		protected void setValue(int row, Object value) {
+			((long[]) values)[row] = (Long) value;
+		}
+		protected void clearValues(int row, int count) {}
+		protected boolean usesNullsArray() {
+			return true;
+		}
+
+		long getLong(int row) {
+			checkRow(row);
+			return isNullValue(row) ? 0 : ((long[]) values)[row];
+		}
+	}
+
+	static final class DoubleColumnData extends ColumnData {
+
+		private static final long serialVersionUID = -3309574519327245823L;
+
+		int getType() {
+			return ColumnTableModel.COLUMN_TYPE_DOUBLE;
+		}
+		Class<?> getValueClass() {
+			return Double.class;
+		}
+		protected Object newArray(int capacity) {
+			return new double[capacity];
+		}
+		boolean accepts(Object value) {
+			return value == null || value.getClass() == Double.class;
+		}
+		protected Object getValue(int row) {
+			return ((double[]) values)[row];
+		}
+		protected void setValue(int row, Object value) {
+			((double[]) values)[row] = (Double) value;
+		}
+		protected void clearValues(int row, int count) {}
+		protected boolean usesNullsArray() {
+			return true;
+		}
+
+		double getDouble(int row) {
+			checkRow(row);
+			return isNullValue(row) ? 0 : ((double[]) values)[row];
+		}
+	}
+
+	/**
+	 * Booleans stored in a byte per cell: 1 true, 0 false and -1 null
+	 */
+	static final class BooleanColumnData extends ColumnData {
+
+		private static final long serialVersionUID = 4183926305524971683L;
+
+		int getType() {
+			return ColumnTableModel.COLUMN_TYPE_BOOLEAN;
+		}
+		Class<?> getValueClass() {
+			return Boolean.class;
+		}
+		protected Object newArray(int capacity) {
+			return new byte[capacity];
+		}
+		boolean accepts(Object value) {
+			return value == null || value.getClass() == Boolean.class;
+		}
+		protected Object getValue(int row) {
+			byte value = ((byte[]) values)[row];
+			return value == -1 ? null : Boolean.valueOf(value == 1);
+		}
+		protected void setValue(int row, Object value) {
+			((byte[]) values)[row] = value == null ? -1 : ((Boolean) value).booleanValue() ? (byte) 1 : (byte) 0;
+		}
+		protected void clearValues(int row, int count) {
+			Arrays.fill((byte[]) values, row, row + count, (byte) -1);
+		}
+
+		boolean getBoolean(int row) {
+			checkRow(row);
+			return ((byte[]) values)[row] == 1;
+		}
+	}
+
+	/**
+	 * Strings stored as the code of each distinct string in a dictionary, -1 is null.
+	 * <p>
+	 * The dictionary keeps the strings no longer used until the column is converted or emptied
+	 */
+	static final class StringColumnData extends ColumnData {
+
+		private static final long serialVersionUID = -8458320653393851337L;
+
+		private List<String> dictionary = null;
+		private Map<String, Integer> dictionaryCodes = null;
+
+		int getType() {
+			return ColumnTableModel.COLUMN_TYPE_STRING;
+		}
+		Class<?> getValueClass() {
+			return String.class;
+		}
+		protected Object newArray(int capacity) {
+			return new int[capacity];
+		}
+		boolean accepts(Object value) {
+			return value == null || value.getClass() == String.class;
+		}
+		protected Object getValue(int row) {
+			int code = ((int[]) values)[row];
+			return code == -1 ? null : getDictionary().get(code);
+		}
+		protected void setValue(int row, Object value) {
+			((int[]) values)[row] = value == null ? -1 : getCode((String) value);
+		}
+		protected void clearValues(int row, int count) {
+			Arrays.fill((int[]) values, row, row + count, -1);
+		}
+
+		int getDictionarySize() {
+			return getDictionary().size();
+		}
+
+		private int getCode(String value) {
+			Integer code = getDictionaryCodes().get(value);
+			if (code == null) {
+				code = getDictionary().size();
+				getDictionary().add(value);
+				getDictionaryCodes().put(value, code);
+			}
+			return code;
+		}
+
+		private List<String> getDictionary() {
+			if (dictionary == null)
+				dictionary = Lists.newList();
+			return dictionary;
+		}
+		private Map<String, Integer> getDictionaryCodes() {
+			if (dictionaryCodes == null)
+				dictionaryCodes = new HashMap<>();
+			return dictionaryCodes;
+		}
+	}
+
+	static final class ObjectColumnData extends ColumnData {
+
+		private static final long serialVersionUID = 1496205346587126350L;
+
+		int getType() {
+			return ColumnTableModel.COLUMN_TYPE_OBJECT;
+		}
+		Class<?> getValueClass() {
+			return Object.class;
+		}
+		protected Object newArray(int capacity) {
+			return new Object[capacity];
+		}
+		boolean accepts(Object value) {
+			return true;
+		}
+		protected Object getValue(int row) {
+			return ((Object[]) values)[row];
+		}
+		protected void setValue(int row, Object value) {
+			((Object[]) values)[row] = value;
+		}
+		protected void clearValues(int row, int count) {
+			Arrays.fill((Object[]) values, row, row + count, null);
+		}
+	}
+}
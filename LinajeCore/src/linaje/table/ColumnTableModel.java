@@ -0,0 +1,455 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.table;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Vector;
+
+import linaje.tree.TreeNodeVector;
+import linaje.utils.Lists;
+
+/**
+ * {@link TableModel} that stores its values by columns instead of by rows, each column in an array of its type:
+ * int, long, double and boolean columns in primitive arrays and string columns as codes of a dictionary of distinct strings.
+ * <p>
+ * It keeps the contract of TableModel (getValueAt returns the same value set with setValueAt or addRow) with a fraction of the memory
+ * of a TreeNodeVector of boxed values per row, and the primitive getters ({@link #getInt(int, int)}, {@link #getDouble(int, int)}...)
+ * read a column without boxing.
+ * <p>
+ * A typed column only stores values of its exact class (Integer in an int column...), a value of other class turns the column into an object column.
+ * The rows are not tree nodes, so the children of the rows inserted are ignored and {@link #getRows()} returns copies of the values.
+ */
+public abstract class ColumnTableModel<E> extends TableModel<E> {
+
+	private static final long serialVersionUID = -1942706351183264427L;
+
+	public static final int COLUMN_TYPE_OBJECT = 0;
+	public static final int COLUMN_TYPE_INT = 1;
+	public static final int COLUMN_TYPE_LONG = 2;
+	public static final int COLUMN_TYPE_DOUBLE = 3;
+	public static final int COLUMN_TYPE_BOOLEAN = 4;
+	public static final int COLUMN_TYPE_STRING = 5;
+
+	//Sin inicializar aquí, porque el constructor de TableModel ya los usa al llamar a setRows
+	private List<ColumnData> columns;
+	private int rowCount;
+
+	public ColumnTableModel() {
+		super();
+	}
+	public ColumnTableModel(int rowCount, int columnCount) {
+		super(rowCount, columnCount);
+	}
+	public ColumnTableModel(Vector<String> columnNames, int rowCount) {
+		super(columnNames, rowCount);
+	}
+	public ColumnTableModel(String[] columnNames, int rowCount) {
+		super(columnNames, rowCount);
+	}
+	public ColumnTableModel(Vector<TreeNodeVector<E>> data, Vector<String> columnNames) {
+		super(data, columnNames);
+	}
+	public ColumnTableModel(E[][] data, String[] columnNames) {
+		super(data, columnNames);
+	}
+	public ColumnTableModel(String[] columnNames, int[] columnTypes) {
+		super(columnNames, 0);
+		setColumnTypes(columnTypes);
+	}
+	public ColumnTableModel(E[][] data, String[] columnNames, int[] columnTypes) {
+		this(columnNames, columnTypes);
+		insertArrays(0, data);
+	}
+
+	private List<ColumnData> getColumns() {
+		if (columns == null)
+			columns = Lists.newList();
+		return columns;
+	}
+
+	private ColumnData getColumnData(int column) {
+		return getColumns().get(column);
+	}
+
+	//
+	// Column types
+	//
+
+	public int getColumnType(int column) {
+		return getColumnData(column).getType();
+	}
+
+	/**
+	 * Changes the type of the column keeping its values (ints are widened to long or double and longs to double)
+	 *
+	 * @exception IllegalArgumentException if some value of the column can't be stored in the new type
+	 */
+	public void setColumnType(int column, int columnType) {
+		if (changeColumnType(column, columnType))
+			fireTableStructureChanged();
+	}
+
+	public void setColumnTypes(int[] columnTypes) {
+		boolean changed = false;
+		for (int i = 0; columnTypes != null && i < columnTypes.length && i < getColumnCount(); i++) {
+			if (changeColumnType(i, columnTypes[i]))
+				changed = true;
+		}
+		if (changed)
+			fireTableStructureChanged();
+	}
+
+	private boolean changeColumnType(int column, int columnType) {
+
+		ColumnData columnData = getColumnData(column);
+		if (columnData.getType() == columnType)
+			return false;
+
+		ColumnData newColumnData = columnData.convert(columnType);
+		if (newColumnData == null)
+			throw new IllegalArgumentException("The values of the column " + getColumnName(column) + " can't be stored in the type " + columnType);
+		getColumns().set(column, newColumnData);
+		return true;
+	}
+
+	public Class<?> getColumnClass(int columnIndex) {
+		return getColumnData(columnIndex).getValueClass();
+	}
+
+	//
+	// Primitive getters
+	//
+
+	/**
+	 * Returns the value of an int column without boxing it, or the int value of the number in other column. Null cells return 0
+	 */
+	public int getInt(int row, int column) {
+		ColumnData columnData = getColumnData(column);
+		if (columnData instanceof ColumnData.IntColumnData)
+			return ((ColumnData.IntColumnData) columnData).getInt(row);
+		Number value = (Number) columnData.get(row);
+		return value == null ? 0 : value.intValue();
+	}
+
+	/**
+	 * Returns the value of a long or int column without boxing it, or the long value of the number in other column. Null cells return 0
+	 */
+	public long getLong(int row, int column) {
+		ColumnData columnData = getColumnData(column);
+		if (columnData instanceof ColumnData.LongColumnData)
+			return ((ColumnData.LongColumnData) columnData).getLong(row);
+		if (columnData instanceof ColumnData.IntColumnData)
+			return ((ColumnData.IntColumnData) columnData).getInt(row);
+		Number value = (Number) columnData.get(row);
+		return value == null ? 0 : value.longValue();
+	}
+
+	/**
+	 * Returns the value of a numeric column without boxing it, or the double value of the number in other column. Null cells return 0
+	 */
+	public double getDouble(int row, int column) {
+		ColumnData columnData = getColumnData(column);
+		if (columnData instanceof ColumnData.DoubleColumnData)
+			return ((ColumnData.DoubleColumnData) columnData).getDouble(row);
+		if (columnData instanceof ColumnData.IntColumnData)
+			return ((ColumnData.IntColumnData) columnData).getInt(row);
+		if (columnData instanceof ColumnData.LongColumnData)
+			return ((ColumnData.LongColumnData) columnData).getLong(row);
+		Number value = (Number) columnData.get(row);
+		return value == null ? 0 : value.doubleValue();
+	}
+
+	/**
+	 * Returns the value of a boolean column without boxing it. Null cells return false
+	 */
+	public boolean getBoolean(int row, int column) {
+		ColumnData columnData = getColumnData(column);
+		if (columnData instanceof ColumnData.BooleanColumnData)
+			return ((ColumnData.BooleanColumnData) columnData).getBoolean(row);
+		Boolean value = (Boolean) columnData.get(row);
+		return value != null && value.booleanValue();
+	}
+
+	public boolean isNull(int row, int column) {
+		return getColumnData(column).isNull(row);
+	}
+
+	//
+	// Rows
+	//
+
+	/**
+	 * Returns copies of the rows, changes in them don't modify the model
+	 */
+	public Vector<TreeNodeVector<E>> getRows() {
+		Vector<TreeNodeVector<E>> rows = new Vector<TreeNodeVector<E>>(getRowCount());
+		for (int i = 0; i < getRowCount(); i++)
+			rows.addElement(getRow(i));
+		return rows;
+	}
+	public Vector<TreeNodeVector<E>> getRows(int[] rowIndices) {
+		Vector<TreeNodeVector<E>> rows = new Vector<TreeNodeVector<E>>();
+		if (rowIndices != null) {
+			for (int i = 0; i < rowIndices.length; i++)
+				rows.addElement(getRow(rowIndices[i]));
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns a copy of the values of the row
+	 */
+	public TreeNodeVector<E> getRow(int row) {
+		int columnCount = getColumnCount();
+		TreeNodeVector<E> rowNode = new TreeNodeVector<E>(columnCount);
+		for (int i = 0; i < columnCount; i++)
+			rowNode.addElement(getValueAt(row, i));
+		return rowNode;
+	}
+
+	public void setRows(Vector<TreeNodeVector<E>> rows, Vector<String> columnIdentifiers) {
+
+		this.columnIdentifiers = columnIdentifiers;
+		//Conservamos el tipo de las columnas que siguen existiendo
+		List<ColumnData> columns = getColumns();
+		for (int i = 0; i < columns.size(); i++)
+			columns.set(i, ColumnData.newColumnData(columns.get(i).getType()));
+		rowCount = 0;
+		justifyColumns();
+		insertNodes(0, rows);
+		fireTableStructureChanged();
+	}
+
+	public void setRowCount(int rowCount) {
+		int old = getRowCount();
+		if (old == rowCount)
+			return;
+
+		setColumnsSize(rowCount);
+		if (rowCount <= old)
+			fireTableRowsDeleted(rowCount, old - 1);
+		else
+			fireTableRowsInserted(old, rowCount - 1);
+	}
+
+	public void addRow(E[] rowData) {
+		insertRow(getRowCount(), rowData);
+	}
+	public void addRows(E[][] rowsData) {
+		insertRows(getRowCount(), rowsData);
+	}
+
+	public void insertRows(int rowIndex, Vector<TreeNodeVector<E>> rows) {
+		if (rows != null && !rows.isEmpty()) {
+			insertNodes(rowIndex, rows);
+			fireTableRowsInserted(rowIndex, rowIndex + rows.size() - 1);
+		}
+	}
+	public void insertRow(int row, E[] rowData) {
+		Object[][] rowsData = {rowData};
+		if (insertArrays(row, rowsData) > 0)
+			fireTableRowsInserted(row, row);
+	}
+	public void insertRows(int row, E[][] rowsData) {
+		int rowsInserted = insertArrays(row, rowsData);
+		if (rowsInserted > 0)
+			fireTableRowsInserted(row, row + rowsInserted - 1);
+	}
+
+	private void insertNodes(int rowIndex, List<TreeNodeVector<E>> rows) {
+
+		int rowsCount = rows != null ? rows.size() : 0;
+		insertEmptyRows(rowIndex, rowsCount);
+		for (int i = 0; i < rowsCount; i++) {
+			TreeNodeVector<E> row = rows.get(i);
+			//Una fila null queda vacía, igual que en TableModel
+			for (int j = 0; row != null && j < getColumnCount() && j < row.size(); j++)
+				setCell(rowIndex + i, j, row.elementAt(j));
+		}
+	}
+
+	private int insertArrays(int rowIndex, Object[][] rows) {
+
+		int rowsCount = rows != null ? rows.length : 0;
+		insertEmptyRows(rowIndex, rowsCount);
+		for (int i = 0; i < rowsCount; i++) {
+			Object[] row = rows[i];
+			for (int j = 0; row != null && j < getColumnCount() && j < row.length; j++)
+				setCell(rowIndex + i, j, row[j]);
+		}
+		return rowsCount;
+	}
+
+	private void insertEmptyRows(int rowIndex, int rowsCount) {
+		if (rowIndex < 0 || rowIndex > rowCount)
+			throw new ArrayIndexOutOfBoundsException(rowIndex + " > " + rowCount);
+		for (int i = 0; i < getColumns().size(); i++)
+			getColumnData(i).insert(rowIndex, rowsCount, true);
+		rowCount += rowsCount;
+	}
+
+	public void moveRows(int start, int end, int to) {
+
+		int shift = to - start;
+		int first, last;
+		if (shift < 0) {
+			first = to;
+			last = end;
+		}
+		else {
+			first = start;
+			last = to + end - start;
+		}
+
+		for (int i = 0; i < getColumns().size(); i++)
+			getColumnData(i).move(start, end, to);
+
+		fireTableRowsUpdated(first, last);
+	}
+
+	public void removeRow(TreeNodeVector<E> rowNodeVector) {
+		int rowIndex = indexOfRow(rowNodeVector);
+		if (rowIndex != -1)
+			removeRow(rowIndex);
+	}
+
+	/**
+	 * Removes the rows from firstRow to lastRow, both included (there are no children to remove)
+	 */
+	public void removeRows(int firstRow, int lastRow) {
+		if (firstRow > lastRow) {
+			int aux = firstRow;
+			firstRow = lastRow;
+			lastRow = aux;
+		}
+		if (lastRow >= rowCount)
+			throw new ArrayIndexOutOfBoundsException(lastRow + " >= " + rowCount);
+
+		int rowsRemoved = lastRow - firstRow + 1;
+		for (int i = 0; i < getColumns().size(); i++)
+			getColumnData(i).remove(firstRow, rowsRemoved);
+		rowCount -= rowsRemoved;
+		fireTableRowsDeleted(firstRow, lastRow);
+	}
+
+	/**
+	 * Returns the first row with the same values as the node (like Vector.indexOf with the rows of a TableModel), or -1
+	 */
+	public int indexOfRow(TreeNodeVector<E> rowNodeVector) {
+		int columnCount = getColumnCount();
+		if (rowNodeVector != null && rowNodeVector.size() == columnCount) {
+			for (int i = 0; i < rowCount; i++) {
+				boolean equals = true;
+				for (int j = 0; j < columnCount && equals; j++)
+					equals = Objects.equals(getColumnData(j).get(i), rowNodeVector.elementAt(j));
+				if (equals)
+					return i;
+			}
+		}
+		return -1;
+	}
+
+	//
+	// Columns
+	//
+
+	public void setColumnIdentifiers(Vector<String> columnIdentifiers) {
+		this.columnIdentifiers = columnIdentifiers;
+		justifyColumns();
+		fireTableStructureChanged();
+	}
+
+	public void setColumnCount(int columnCount) {
+		getColumnIdentifiers().setSize(columnCount);
+		justifyColumns();
+		fireTableStructureChanged();
+	}
+
+	public void addColumn(String columnName, Vector<E> columnData) {
+		addColumn(columnName, COLUMN_TYPE_OBJECT, columnData);
+	}
+	public void addColumn(String columnName, int columnType) {
+		addColumn(columnName, columnType, null);
+	}
+
+	/**
+	 * Adds a column of the type with the values of columnData, adding empty rows if it has more values than rows
+	 */
+	public void addColumn(String columnName, int columnType, Vector<E> columnData) {
+
+		getColumnIdentifiers().addElement(columnName);
+		ColumnData newColumnData = ColumnData.newColumnData(columnType);
+		newColumnData.insert(0, rowCount, true);
+		getColumns().add(newColumnData);
+
+		if (columnData != null) {
+			if (columnData.size() > rowCount)
+				setColumnsSize(columnData.size());
+			int newColumn = getColumnCount() - 1;
+			for (int i = 0; i < columnData.size(); i++)
+				setCell(i, newColumn, columnData.elementAt(i));
+		}
+		fireTableStructureChanged();
+	}
+
+	private void justifyColumns() {
+		int columnCount = getColumnCount();
+		List<ColumnData> columns = getColumns();
+		while (columns.size() > columnCount)
+			columns.remove(columns.size() - 1);
+		while (columns.size() < columnCount) {
+			ColumnData columnData = ColumnData.newColumnData(COLUMN_TYPE_OBJECT);
+			columnData.insert(0, rowCount, true);
+			columns.add(columnData);
+		}
+	}
+
+	private void setColumnsSize(int rowCount) {
+		for (int i = 0; i < getColumns().size(); i++)
+			getColumnData(i).setSize(rowCount);
+		this.rowCount = rowCount;
+	}
+
+	//
+	// Values
+	//
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E getValueAt(int row, int column) {
+		return (E) getColumnData(column).get(row);
+	}
+
+	public void setValueAt(E aValue, int row, int column) {
+		setCell(row, column, aValue);
+		fireTableCellUpdated(row, column);
+	}
+
+	private void setCell(int row, int column, Object value) {
+		ColumnData columnData = getColumnData(column);
+		if (!columnData.accepts(value)) {
+			//Un valor de otra clase convierte la columna en una de objetos para no perder el contrato de getValueAt
+			columnData = columnData.convert(COLUMN_TYPE_OBJECT);
+			getColumns().set(column, columnData);
+		}
+		columnData.set(row, value);
+	}
+}
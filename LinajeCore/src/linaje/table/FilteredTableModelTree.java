@@ -0,0 +1,628 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.table;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import linaje.expressions.CompiledExpression;
+import linaje.expressions.Expression;
+import linaje.expressions.ExpressionException;
+import linaje.tree.TreeNodeVector;
+import linaje.utils.Lists;
+
+/**
+ * Filtered view of the rows of a {@link TableModelTree}, with the rows that match a filter and their ancestors, without copying the nodes.
+ * <p>
+ * The rows are in the same order and with the same expanded state as in the model. A row is shown if it matches the filter
+ * or some of its descendants match it, even if they are collapsed, so they can be found expanding it.
+ * <p>
+ * The view is updated with the tree events of the model, evaluating the filter only for the nodes inserted or changed,
+ * and when the filter is narrowed (e.g. adding a character to the text searched) {@link #refineFilter(Predicate)}
+ * only evaluates the rows that matched the previous filter. Call {@link #destroy()} when the view isn't used anymore.
+ */
+public abstract class FilteredTableModelTree<E> {
+
+	private final TableModelTree<E> model;
+
+	private Predicate<? super TreeNodeVector<E>> filter = null;
+	private Expression filterExpression = null;
+	//Nodos que cumplen el filtro o tienen descendientes que lo cumplen, por identidad ya que equals compara los valores
+	private Map<TreeNodeVector<E>, FilterState> filterStates = null;
+	private VisibleRows<E> rows = null;
+
+	private static final class FilterState {
+
+		private boolean matches = false;
+		//Número de descendientes que cumplen el filtro, así al cambiar un nodo sólo hay que actualizar sus padres
+		private int matchingDescendants = 0;
+
+		private boolean isIncluded() {
+			return matches || matchingDescendants > 0;
+		}
+	}
+
+	/**
+	 * Creates a view with all the rows of the model, until a filter is set
+	 */
+	public FilteredTableModelTree(TableModelTree<E> model) {
+		super();
+		this.model = model;
+		model.addFilteredModel(this);
+		resetRows(false);
+	}
+
+	public TableModelTree<E> getModel() {
+		return model;
+	}
+
+	/**
+	 * Stops updating the view with the changes of the model
+	 */
+	public void destroy() {
+		model.removeFilteredModel(this);
+	}
+
+	//
+	// Filter
+	//
+
+	public Predicate<? super TreeNodeVector<E>> getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Returns the expression of the filter if it was set with {@link #setFilter(Expression)}
+	 */
+	public Expression getFilterExpression() {
+		return filterExpression;
+	}
+
+	/**
+	 * Sets the filter of the rows, evaluating it for all the nodes of the model. A null filter shows all the rows
+	 */
+	public void setFilter(Predicate<? super TreeNodeVector<E>> filter) {
+		this.filterExpression = null;
+		this.filter = filter;
+		refilter();
+	}
+
+	/**
+	 * Sets a filter that only matches nodes that match the current filter, evaluating it only for them
+	 */
+	public void refineFilter(Predicate<? super TreeNodeVector<E>> filter) {
+
+		if (this.filter == null || filter == null) {
+			setFilter(filter);
+		}
+		else {
+			this.filterExpression = null;
+			this.filter = filter;
+			refineFilterStates();
+			resetRows(true);
+		}
+	}
+
+	/**
+	 * Sets a logical expression as filter, binding each variable to the column of the model with its name or description
+	 */
+	public void setFilter(Expression expression) throws ExpressionException {
+		setFilter(getExpressionFilter(expression));
+		this.filterExpression = expression;
+	}
+
+	/**
+	 * Same as {@link #refineFilter(Predicate)} with a logical expression
+	 */
+	public void refineFilter(Expression expression) throws ExpressionException {
+		refineFilter(getExpressionFilter(expression));
+		this.filterExpression = expression;
+	}
+
+	private Predicate<TreeNodeVector<E>> getExpressionFilter(Expression expression) throws ExpressionException {
+
+		if (expression == null)
+			return null;
+
+		final CompiledExpression compiledExpression = new CompiledExpression(expression);
+		final int[] variableColumns = compiledExpression.getColumnIndices(getModel().getColumnNames());
+		return node -> {
+			try {
+				return compiledExpression.getBooleanValue(node, variableColumns);
+			}
+			catch (ExpressionException ex) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns true if the node matches the filter or some of its descendants match it
+	 */
+	public boolean isIncluded(TreeNodeVector<E> node) {
+		return filter == null || getFilterStates().containsKey(node);
+	}
+
+	public boolean isMatching(TreeNodeVector<E> node) {
+		if (filter == null)
+			return true;
+		FilterState filterState = getFilterStates().get(node);
+		return filterState != null && filterState.matches;
+	}
+
+	private void refilter() {
+		evaluateFilter();
+		resetRows(true);
+	}
+
+	private void evaluateFilter() {
+
+		filterStates = null;
+		TreeNodeVector<E> root = getModel().getRoot();
+		if (filter != null && root != null) {
+			for (int i = 0; i < root.getChildCount(); i++)
+				evaluateNode(root.getChildAt(i));
+		}
+	}
+
+	private void refineFilterStates() {
+
+		//Sólo pueden cumplir el nuevo filtro los nodos que cumplían el anterior
+		List<TreeNodeVector<E>> matchingNodes = Lists.newList();
+		for (Map.Entry<TreeNodeVector<E>, FilterState> entry : getFilterStates().entrySet()) {
+			if (entry.getValue().matches)
+				matchingNodes.add(entry.getKey());
+		}
+
+		for (int i = 0; i < matchingNodes.size(); i++) {
+			TreeNodeVector<E> node = matchingNodes.get(i);
+			if (!filter.test(node)) {
+				FilterState filterState = getFilterStates().get(node);
+				filterState.matches = false;
+				if (!filterState.isIncluded())
+					getFilterStates().remove(node);
+				addMatchingDescendants(node.getParent(), -1);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the filter for the node and its descendants and returns how many of them match it
+	 */
+	private int evaluateNode(TreeNodeVector<E> node) {
+
+		int matchingDescendants = 0;
+		for (int i = 0; i < node.getChildCount(); i++)
+			matchingDescendants += evaluateNode(node.getChildAt(i));
+
+		boolean matches = filter.test(node);
+		if (matches || matchingDescendants > 0) {
+			FilterState filterState = getFilterState(node);
+			filterState.matches = matches;
+			filterState.matchingDescendants = matchingDescendants;
+		}
+		else {
+			getFilterStates().remove(node);
+		}
+
+		return matchingDescendants + (matches ? 1 : 0);
+	}
+
+	/**
+	 * Removes the states of the node and its descendants and returns how many of them matched the filter
+	 */
+	private int removeFilterStates(TreeNodeVector<E> node) {
+
+		FilterState filterState = getFilterStates().remove(node);
+		if (filterState == null)
+			return 0;
+
+		//Los hijos no incluidos no tienen descendientes que cumplan el filtro
+		if (filterState.matchingDescendants > 0) {
+			for (int i = 0; i < node.getChildCount(); i++)
+				removeFilterStates(node.getChildAt(i));
+		}
+
+		return filterState.matchingDescendants + (filterState.matches ? 1 : 0);
+	}
+
+	/**
+	 * Adds count to the matching descendants of node and its ancestors,
+	 * returning the highest of them that has been included or excluded, or null if none of them has changed
+	 */
+	private TreeNodeVector<E> addMatchingDescendants(TreeNodeVector<E> node, int count) {
+
+		TreeNodeVector<E> highestNodeChanged = null;
+		TreeNodeVector<E> root = getModel().getRoot();
+		for (TreeNodeVector<E> ancestor = node; count != 0 && ancestor != null && ancestor != root; ancestor = ancestor.getParent()) {
+
+			boolean included = getFilterStates().containsKey(ancestor);
+			FilterState filterState = getFilterState(ancestor);
+			filterState.matchingDescendants = Math.max(filterState.matchingDescendants + count, 0);
+			if (!filterState.isIncluded())
+				getFilterStates().remove(ancestor);
+			if (filterState.isIncluded() != included)
+				highestNodeChanged = ancestor;
+		}
+
+		return highestNodeChanged;
+	}
+
+	private FilterState getFilterState(TreeNodeVector<E> node) {
+
+		FilterState filterState = getFilterStates().get(node);
+		if (filterState == null) {
+			filterState = new FilterState();
+			getFilterStates().put(node, filterState);
+		}
+		return filterState;
+	}
+
+	private Map<TreeNodeVector<E>, FilterState> getFilterStates() {
+		if (filterStates == null)
+			filterStates = new IdentityHashMap<>();
+		return filterStates;
+	}
+
+	//
+	// Rows
+	//
+
+	private VisibleRows<E> getRows() {
+		if (rows == null)
+			rows = new VisibleRows<E>();
+		return rows;
+	}
+
+	/**
+	 * Returns the node of the row
+	 */
+	public TreeNodeVector<E> getRow(int rowIndex) {
+		return getRows().elementAt(rowIndex);
+	}
+
+	/**
+	 * Returns the row of the node, or -1 if it isn't shown in the view
+	 */
+	public int getRowIndex(TreeNodeVector<E> node) {
+		return getRows().indexOfNode(node);
+	}
+
+	/**
+	 * Returns the row of the model with the row of the view
+	 */
+	public int convertRowIndexToModel(int rowIndex) {
+		return getModel().getRowIndex(getRow(rowIndex));
+	}
+
+	/**
+	 * Returns the row of the view with the row of the model, or -1 if it's filtered
+	 */
+	public int convertRowIndexToView(int modelRowIndex) {
+		return getRowIndex(getModel().getRows().elementAt(modelRowIndex));
+	}
+
+	private void resetRows(boolean fireEvent) {
+
+		List<TreeNodeVector<E>> shownRows = Lists.newList();
+		TreeNodeVector<E> root = getModel().getRoot();
+		if (root != null)
+			addShownChildren(shownRows, root);
+
+		getRows().removeAllElements();
+		getRows().insertRows(0, shownRows);
+
+		if (fireEvent)
+			fireTableDataChanged();
+	}
+
+	/**
+	 * Replaces the rows of the node and its descendants after changing which of them are included or expanded
+	 */
+	private void refreshRows(TreeNodeVector<E> node) {
+
+		if (node == getModel().getRoot()) {
+			resetRows(true);
+			return;
+		}
+
+		int rowIndex = getRowIndex(node);
+		int removedRows = 0;
+		if (rowIndex != -1) {
+			removedRows = getRowAndChildrenCount(rowIndex);
+			getRows().removeRows(rowIndex, rowIndex + removedRows);
+		}
+
+		List<TreeNodeVector<E>> shownRows = Lists.newList();
+		if (isShown(node)) {
+			if (rowIndex == -1)
+				rowIndex = getInsertionRowIndex(node);
+			shownRows.add(node);
+			if (node.isExpanded())
+				addShownChildren(shownRows, node);
+			getRows().insertRows(rowIndex, shownRows);
+		}
+
+		fireRowsReplaced(rowIndex, removedRows, shownRows.size());
+	}
+
+	private void fireRowsReplaced(int rowIndex, int removedRows, int insertedRows) {
+
+		int updatedRows = Math.min(removedRows, insertedRows);
+		if (updatedRows > 0)
+			fireTableRowsUpdated(rowIndex, rowIndex + updatedRows - 1);
+		if (removedRows > updatedRows)
+			fireTableRowsDeleted(rowIndex + updatedRows, rowIndex + removedRows - 1);
+		else if (insertedRows > updatedRows)
+			fireTableRowsInserted(rowIndex + updatedRows, rowIndex + insertedRows - 1);
+	}
+
+	private void addShownChildren(List<TreeNodeVector<E>> shownRows, TreeNodeVector<E> parent) {
+		for (int i = 0; i < parent.getChildCount(); i++) {
+			TreeNodeVector<E> child = parent.getChildAt(i);
+			if (isIncluded(child)) {
+				shownRows.add(child);
+				if (child.isExpanded() && child.getChildCount() > 0)
+					addShownChildren(shownRows, child);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the node is included and all its ancestors up to the root of the model are expanded
+	 */
+	private boolean isShown(TreeNodeVector<E> node) {
+
+		if (!isIncluded(node))
+			return false;
+
+		TreeNodeVector<E> root = getModel().getRoot();
+		TreeNodeVector<E> parent = node.getParent();
+		while (parent != null && parent != root) {
+			if (!parent.isExpanded())
+				return false;
+			parent = parent.getParent();
+		}
+		return parent != null;
+	}
+
+	/**
+	 * Returns the row of a shown node that isn't in the rows yet, just after its previous sibling included and its rows
+	 */
+	private int getInsertionRowIndex(TreeNodeVector<E> node) {
+
+		TreeNodeVector<E> parent = node.getParent();
+		for (int i = parent.getIndex(node) - 1; i >= 0; i--) {
+			TreeNodeVector<E> sibling = parent.getChildAt(i);
+			if (isIncluded(sibling))
+				return getRowIndex(getLastShownDescendant(sibling)) + 1;
+		}
+
+		return parent == getModel().getRoot() ? 0 : getRowIndex(parent) + 1;
+	}
+
+	private TreeNodeVector<E> getLastShownDescendant(TreeNodeVector<E> node) {
+
+		TreeNodeVector<E> lastShownDescendant = node;
+		boolean found = true;
+		while (found && lastShownDescendant.isExpanded()) {
+			found = false;
+			for (int i = lastShownDescendant.getChildCount() - 1; i >= 0 && !found; i--) {
+				TreeNodeVector<E> child = lastShownDescendant.getChildAt(i);
+				if (isIncluded(child)) {
+					lastShownDescendant = child;
+					found = true;
+				}
+			}
+		}
+		return lastShownDescendant;
+	}
+
+	/**
+	 * Returns the number of rows of the node at rowIndex and its descendants
+	 */
+	private int getRowAndChildrenCount(int rowIndex) {
+
+		TreeNodeVector<E> node = getRow(rowIndex);
+		int nextRow = rowIndex + 1;
+		while (nextRow < getRows().size() && getRow(nextRow).isNodeAncestor(node))
+			nextRow++;
+
+		return nextRow - rowIndex;
+	}
+
+	//
+	// Model changes
+	//
+
+	/**
+	 * children must be sorted by their index in parent
+	 */
+	void nodesInserted(TreeNodeVector<E> parent, TreeNodeVector<E>[] children) {
+
+		if (filter != null) {
+			int matchingNodes = 0;
+			for (int i = 0; i < children.length; i++)
+				matchingNodes += evaluateNode(children[i]);
+
+			TreeNodeVector<E> highestNodeChanged = addMatchingDescendants(parent, matchingNodes);
+			if (highestNodeChanged != null) {
+				refreshRows(highestNodeChanged);
+				return;
+			}
+		}
+
+		//En orden de índice, así el hermano anterior de cada hijo ya está en las filas
+		for (int i = 0; i < children.length; i++)
+			refreshRows(children[i]);
+	}
+
+	void nodesRemoved(TreeNodeVector<E> parent, TreeNodeVector<E>[] children) {
+
+		int matchingNodes = 0;
+		for (int i = 0; i < children.length; i++) {
+
+			if (filter != null)
+				matchingNodes += removeFilterStates(children[i]);
+
+			//Los nodos ya no están en el árbol pero sus descendientes siguen colgando de ellos
+			int rowIndex = getRowIndex(children[i]);
+			if (rowIndex != -1) {
+				int removedRows = getRowAndChildrenCount(rowIndex);
+				getRows().removeRows(rowIndex, rowIndex + removedRows);
+				fireTableRowsDeleted(rowIndex, rowIndex + removedRows - 1);
+			}
+		}
+
+		if (filter != null) {
+			TreeNodeVector<E> highestNodeChanged = addMatchingDescendants(parent, -matchingNodes);
+			if (highestNodeChanged != null)
+				refreshRows(highestNodeChanged);
+		}
+	}
+
+	void nodesChanged(TreeNodeVector<E>[] children) {
+		for (int i = 0; i < children.length; i++)
+			nodeChanged(children[i]);
+	}
+
+	void nodeChanged(TreeNodeVector<E> node) {
+
+		TreeNodeVector<E> nodeChanged = null;
+		if (filter != null) {
+
+			FilterState filterState = getFilterStates().get(node);
+			boolean included = filterState != null;
+			boolean matched = included && filterState.matches;
+			boolean matches = filter.test(node);
+			if (matches != matched) {
+
+				filterState = getFilterState(node);
+				filterState.matches = matches;
+				if (!filterState.isIncluded())
+					getFilterStates().remove(node);
+
+				nodeChanged = addMatchingDescendants(node.getParent(), matches ? 1 : -1);
+				if (nodeChanged == null && filterState.isIncluded() != included)
+					nodeChanged = node;
+			}
+		}
+
+		if (nodeChanged != null) {
+			refreshRows(nodeChanged);
+		}
+		else {
+			int rowIndex = getRowIndex(node);
+			if (rowIndex != -1)
+				fireTableRowsUpdated(rowIndex, rowIndex);
+		}
+	}
+
+	/**
+	 * The children of node have changed, or only their expanded state if expandedStateChanged is true
+	 */
+	void nodeStructureChanged(TreeNodeVector<E> node, boolean expandedStateChanged) {
+
+		if (node == null || node == getModel().getRoot()) {
+			if (expandedStateChanged)
+				resetRows(true);
+			else
+				refilter();
+		}
+		else {
+			TreeNodeVector<E> nodeChanged = node;
+			if (filter != null && !expandedStateChanged) {
+				int previousMatchingNodes = removeFilterStates(node);
+				int matchingNodes = evaluateNode(node);
+				TreeNodeVector<E> highestNodeChanged = addMatchingDescendants(node.getParent(), matchingNodes - previousMatchingNodes);
+				if (highestNodeChanged != null)
+					nodeChanged = highestNodeChanged;
+			}
+			refreshRows(nodeChanged);
+		}
+	}
+
+	/**
+	 * All the rows or the columns of the model have been replaced
+	 */
+	void rowsReplaced(boolean columnsChanged) {
+
+		if (columnsChanged && filterExpression != null) {
+			//Las variables de la expresión se asocian a las columnas por nombre
+			try {
+				filter = getExpressionFilter(filterExpression);
+			}
+			catch (ExpressionException ex) {
+				filter = null;
+				filterExpression = null;
+			}
+		}
+
+		evaluateFilter();
+		resetRows(!columnsChanged);
+		if (columnsChanged)
+			fireTableStructureChanged();
+	}
+
+	//
+	// Implementing the TableModel interface
+	//
+
+	public int getRowCount() {
+		return getRows().size();
+	}
+
+	public int getColumnCount() {
+		return getModel().getColumnCount();
+	}
+
+	public String getColumnName(int column) {
+		return getModel().getColumnName(column);
+	}
+
+	public Class<?> getColumnClass(int columnIndex) {
+		return getModel().getColumnClass(columnIndex);
+	}
+
+	public boolean isCellEditable(int row, int column) {
+		return getModel().isCellEditable(convertRowIndexToModel(row), column);
+	}
+
+	public E getValueAt(int row, int column) {
+		return getRow(row).elementAt(column);
+	}
+
+	/**
+	 * Sets the value in the model, so the row can be filtered after changing it
+	 */
+	public void setValueAt(E aValue, int row, int column) {
+		getModel().setValueAt(aValue, convertRowIndexToModel(row), column);
+	}
+
+	//
+	//  Fire methods
+	//
+
+	public abstract void fireTableDataChanged();
+	public abstract void fireTableStructureChanged();
+	public abstract void fireTableRowsInserted(int firstRow, int lastRow);
+	public abstract void fireTableRowsUpdated(int firstRow, int lastRow);
+	public abstract void fireTableRowsDeleted(int firstRow, int lastRow);
+	public abstract void fireTableCellUpdated(int row, int column);
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.table;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Vector;
+
+import linaje.expressions.ExpressionsAnalyzer;
+import linaje.expressions.GlobalDataConverter;
+import linaje.tree.TreeNodeVector;
+import linaje.utils.Utils;
+
+/**
+ * Groups the rows of a flat table by the values of some columns, building a hierarchy with a node for each group
+ * whose values are the values of the grouping columns and the {@link Aggregate}s of all the rows below it.
+ * <p>
+ * The hierarchy is built in a single pass over the rows, looking for the group of each row in a hash map by level,
+ * and the rows themselves are the leaves, so they are compared by identity. The groups are in the order their first row is found.
+ * Once built, the rows can be added, removed or changed one by one and only the groups of the row are updated,
+ * firing the tree events of the model if there is one (see {@link #group(TableModelTree, List)}).
+ * <p>
+ * The aggregates follow the semantics of {@link ExpressionsAnalyzer#getFunctionValue(String, Vector, Object)}, ignoring the null values:
+ * SUM and AVG are 0 if some value isn't numeric, and MIN and MAX compare the values converted by {@link GlobalDataConverter}.
+ * SUM and AVG are summed exactly and rounded once, so they don't depend on the order of the rows nor drift when rows are removed.
+ * COUNT is the number of rows of the group.
+ */
+public class TableGrouper<E> {
+
+	private final int[] groupColumns;
+	private final Aggregate[] aggregates;
+
+	private TableModelTree<E> model = null;
+	private int columnCount = 0;
+	//Nodo del que cuelgan los grupos de primer nivel, el root del modelo si hay modelo
+	private TreeNodeVector<E> root = null;
+	private Group rootGroup = null;
+	//Grupo de último nivel de cada fila y valores que se han acumulado de ella, por identidad ya que equals compara los valores
+	private Map<TreeNodeVector<E>, RowEntry> rowEntries = null;
+
+	private final class Group {
+
+		private final Group parent;
+		private final Object key;
+		private final TreeNodeVector<E> node;
+		private Map<Object, Group> subgroups = null;
+		private int rowCount = 0;
+		private final Accumulator[] accumulators;
+
+		private Group(Group parent, Object key, TreeNodeVector<E> node) {
+			this.parent = parent;
+			this.key = key;
+			this.node = node;
+			this.accumulators = new Accumulator[aggregates.length];
+			for (int i = 0; i < accumulators.length; i++)
+				accumulators[i] = new Accumulator(isNumeric(aggregates[i]));
+		}
+
+		private Map<Object, Group> getSubgroups() {
+			if (subgroups == null)
+				subgroups = new HashMap<>();
+			return subgroups;
+		}
+
+		/**
+		 * Node the subgroups or rows of this group hang from
+		 */
+		private TreeNodeVector<E> getChildrenParent() {
+			return parent == null ? root : node;
+		}
+	}
+
+	/**
+	 * Group and values to aggregate of a row, converted only once for all the levels of groups
+	 */
+	private final class RowEntry {
+
+		private final Group group;
+		private final Object[] values;
+		private final Double[] numbers;
+		private final Object[] valuesWithType;
+
+		private RowEntry(Group group, TreeNodeVector<E> row) {
+			this.group = group;
+			this.values = new Object[aggregates.length];
+			this.numbers = new Double[aggregates.length];
+			this.valuesWithType = new Object[aggregates.length];
+			setValues(row);
+		}
+
+		private void setValues(TreeNodeVector<E> row) {
+			for (int i = 0; i < aggregates.length; i++) {
+				//COUNT solo cuenta filas, SUM y AVG solo necesitan el número y MIN y MAX el valor con tipo
+				String function = aggregates[i].getFunction();
+				Object value = function != Aggregate.COUNT ? getValue(row, aggregates[i].getIndex()) : null;
+				values[i] = value;
+				numbers[i] = value != null && isNumeric(aggregates[i]) ? getNumber(value) : null;
+				valuesWithType[i] = value != null && !isNumeric(aggregates[i]) ? getValueWithType(value) : null;
+			}
+		}
+	}
+
+	/**
+	 * Running aggregate of the non null values of a column in a group
+	 */
+	private static final class Accumulator {
+
+		private final boolean numeric;
+		private int values = 0;
+		//Suma exacta como una serie de doubles que no se solapan, de menor a mayor, así quitar un valor deshace exactamente lo que sumó
+		private double[] partials = null;
+		private int partialsCount = 0;
+		private int positiveInfinities = 0;
+		private int negativeInfinities = 0;
+		private int nanValues = 0;
+		private int nonNumericValues = 0;
+		//Valor original del máximo y del mínimo y su valor con tipo (GlobalDataConverter)
+		private Object maxValue = null;
+		private Object max = null;
+		private Object minValue = null;
+		private Object min = null;
+		private boolean extremesUpdated = true;
+
+		private Accumulator(boolean numeric) {
+			this.numeric = numeric;
+		}
+
+		private void add(Object value, Double number, Object valueWithType) {
+
+			if (value == null)
+				return;
+
+			values++;
+			if (numeric) {
+				if (number != null)
+					addToSum(number.doubleValue(), 1);
+				else
+					nonNumericValues++;
+			}
+			else if (extremesUpdated) {
+				//Igual que en ExpressionsAnalyzer.getMaxValue y getMinValue, con valores iguales nos quedamos con el primero
+				if (max == null || Utils.compare(valueWithType, max) > 0) {
+					max = valueWithType;
+					maxValue = value;
+				}
+				if (min == null || Utils.compare(valueWithType, min) < 0) {
+					min = valueWithType;
+					minValue = value;
+				}
+			}
+		}
+
+		private void subtract(Object value, Double number, Object valueWithType) {
+
+			if (value == null)
+				return;
+
+			values--;
+			if (numeric) {
+				if (number != null)
+					addToSum(-number.doubleValue(), -1);
+				else
+					nonNumericValues--;
+			}
+			else if (values == 0) {
+				setExtremes(null, null);
+			}
+			else if (extremesUpdated && (Utils.compare(valueWithType, max) == 0 || Utils.compare(valueWithType, min) == 0)) {
+				//Si quitamos uno de los extremos los recalcularemos cuando se pidan
+				extremesUpdated = false;
+			}
+		}
+
+		private void setExtremes(Object maxValue, Object minValue) {
+			this.maxValue = maxValue;
+			this.max = maxValue != null ? getValueWithType(maxValue) : null;
+			this.minValue = minValue;
+			this.min = minValue != null ? getValueWithType(minValue) : null;
+			this.extremesUpdated = true;
+		}
+
+		/**
+		 * Adds the number to the partials of the sum (Shewchuk's algorithm), counting apart the infinite and NaN values
+		 */
+		private void addToSum(double number, int count) {
+
+			if (Double.isNaN(number)) {
+				nanValues = nanValues + count;
+				return;
+			}
+			if (Double.isInfinite(number)) {
+				//Al restar llega el valor cambiado de signo
+				if ((number > 0) == (count > 0))
+					positiveInfinities = positiveInfinities + count;
+				else
+					negativeInfinities = negativeInfinities + count;
+				return;
+			}
+
+			if (partials == null)
+				partials = new double[4];
+
+			int newCount = 0;
+			double x = number;
+			for (int i = 0; i < partialsCount; i++) {
+				double y = partials[i];
+				if (Math.abs(x) < Math.abs(y)) {
+					double t = x;
+					x = y;
+					y = t;
+				}
+				double high = x + y;
+				double low = y - (high - x);
+				if (low != 0)
+					partials[newCount++] = low;
+				x = high;
+			}
+			if (newCount == partials.length)
+				partials = Arrays.copyOf(partials, partials.length * 2);
+			partials[newCount++] = x;
+			partialsCount = newCount;
+		}
+
+		private Double getSum() {
+
+			if (nonNumericValues > 0)
+				return Double.valueOf(0);
+			if (nanValues > 0 || (positiveInfinities > 0 && negativeInfinities > 0))
+				return Double.valueOf(Double.NaN);
+			if (positiveInfinities > 0)
+				return Double.valueOf(Double.POSITIVE_INFINITY);
+			if (negativeInfinities > 0)
+				return Double.valueOf(Double.NEGATIVE_INFINITY);
+			if (partialsCount == 0)
+				return Double.valueOf(0);
+
+			//Sumamos de mayor a menor hasta que el resto no cambia el resultado y redondeamos al par si el resto está justo en la mitad
+			int i = partialsCount - 1;
+			double high = partials[i];
+			double low = 0;
+			while (i > 0) {
+				double x = high;
+				double y = partials[--i];
+				high = x + y;
+				low = y - (high - x);
+				if (low != 0)
+					break;
+			}
+			if (i > 0 && ((low < 0 && partials[i - 1] < 0) || (low > 0 && partials[i - 1] > 0))) {
+				double y = low * 2;
+				double x = high + y;
+				if (y == x - high)
+					high = x;
+			}
+			return Double.valueOf(high);
+		}
+	}
+
+	/**
+	 * @param groupColumns columns to group the rows by, one level of groups for each column
+	 */
+	public TableGrouper(int[] groupColumns, Aggregate... aggregates) {
+		super();
+		this.groupColumns = groupColumns != null ? groupColumns.clone() : new int[0];
+		this.aggregates = aggregates != null ? aggregates.clone() : new Aggregate[0];
+	}
+
+	public int[] getGroupColumns() {
+		return groupColumns.clone();
+	}
+
+	public Aggregate[] getAggregates() {
+		return aggregates.clone();
+	}
+
+	public TableModelTree<E> getModel() {
+		return model;
+	}
+
+	/**
+	 * Builds the hierarchy of the rows without firing events, so it can be done out of the event thread.
+	 * The rows are moved from their parents, if they have one, to the last level of groups.
+	 *
+	 * @return a new root with the groups of first level as children and the aggregates of all the rows as values
+	 */
+	public TreeNodeVector<E> buildTree(List<? extends TreeNodeVector<E>> rows, int columnCount) {
+
+		this.model = null;
+		this.columnCount = columnCount;
+		this.rowEntries = new IdentityHashMap<>();
+		this.rootGroup = new Group(null, null, newGroupNode());
+		this.root = rootGroup.node;
+
+		for (int i = 0; i < rows.size(); i++)
+			addRow(rows.get(i), false);
+
+		setAllGroupValues(rootGroup);
+		return root;
+	}
+
+	/**
+	 * Replaces the nodes of the model with the hierarchy of the rows (see {@link TableModelTree#loadRows(TreeNodeVector)}),
+	 * with as many columns as the model, and keeps the model to fire the events of the next changes of rows
+	 */
+	public void group(TableModelTree<E> model, List<? extends TreeNodeVector<E>> rows) {
+
+		TreeNodeVector<E> newRoot = buildTree(rows, model.getColumnCount());
+		model.loadRows(newRoot);
+		//Los totales se quedan en el nuevo root, ya sin hijos
+		this.root = model.getRoot();
+		this.model = model;
+	}
+
+	/**
+	 * Returns the node with the aggregates of all the rows
+	 */
+	public TreeNodeVector<E> getTotals() {
+		return rootGroup != null ? rootGroup.node : null;
+	}
+
+	/**
+	 * Returns the node of the group with these values of the grouping columns, from the first level, or null if there are no rows with them
+	 */
+	public TreeNodeVector<E> getGroupNode(Object... keys) {
+
+		Group group = rootGroup;
+		for (int i = 0; group != null && i < keys.length; i++)
+			group = group.subgroups != null ? group.subgroups.get(keys[i]) : null;
+
+		return group != null && group != rootGroup ? group.node : null;
+	}
+
+	//
+	// Incremental changes
+	//
+
+	/**
+	 * Adds the row to its group, creating the groups that don't exist yet
+	 */
+	public void addRow(TreeNodeVector<E> row) {
+		if (rootGroup == null)
+			buildTree(new Vector<TreeNodeVector<E>>(), row.size());
+		if (!getRowEntries().containsKey(row))
+			addRow(row, true);
+	}
+
+	/**
+	 * Removes the row from its group, removing the groups that are left empty
+	 */
+	public void removeRow(TreeNodeVector<E> row) {
+
+		RowEntry rowEntry = getRowEntries().remove(row);
+		if (rowEntry == null)
+			return;
+
+		Group group = rowEntry.group;
+		accumulate(group, rowEntry, false);
+
+		Group highestEmptyGroup = null;
+		for (Group emptyGroup = group; emptyGroup.parent != null && emptyGroup.rowCount == 0; emptyGroup = emptyGroup.parent)
+			highestEmptyGroup = emptyGroup;
+
+		if (highestEmptyGroup != null) {
+			highestEmptyGroup.parent.subgroups.remove(highestEmptyGroup.key);
+			removeNode(highestEmptyGroup.node);
+			row.removeFromParent();
+			updateGroups(highestEmptyGroup.parent);
+		}
+		else {
+			removeNode(row);
+			updateGroups(group);
+		}
+	}
+
+	/**
+	 * Updates the aggregates of the groups of the row after changing its values, moving it to another group if the values of the grouping columns have changed
+	 */
+	public void rowChanged(TreeNodeVector<E> row) {
+
+		RowEntry rowEntry = getRowEntries().get(row);
+		if (rowEntry == null) {
+			addRow(row);
+		}
+		else if (!isRowGroup(row, rowEntry.group)) {
+			removeRow(row);
+			addRow(row);
+		}
+		else {
+			Group group = rowEntry.group;
+			accumulate(group, rowEntry, false);
+			rowEntry.setValues(row);
+			accumulate(group, rowEntry, true);
+			nodeChanged(row);
+			updateGroups(group);
+		}
+	}
+
+	private void addRow(TreeNodeVector<E> row, boolean updateNodes) {
+
+		//Buscamos o creamos el grupo de cada nivel, los grupos nuevos se enlazan sin eventos y se insertan de una vez al final
+		Group group = rootGroup;
+		Group firstNewGroup = null;
+		for (int level = 0; level < groupColumns.length; level++) {
+
+			Object key = getValue(row, groupColumns[level]);
+			Group subgroup = group.getSubgroups().get(key);
+			if (subgroup == null) {
+				subgroup = newGroup(group, key, row, level);
+				if (firstNewGroup == null)
+					firstNewGroup = subgroup;
+				else
+					group.node.addChild(subgroup.node);
+			}
+			group = subgroup;
+		}
+
+		RowEntry rowEntry = new RowEntry(group, row);
+		getRowEntries().put(row, rowEntry);
+		accumulate(group, rowEntry, true);
+
+		if (!updateNodes) {
+			group.getChildrenParent().addChild(row);
+			if (firstNewGroup != null)
+				firstNewGroup.parent.getChildrenParent().addChild(firstNewGroup.node);
+		}
+		else if (firstNewGroup != null) {
+			group.node.addChild(row);
+			setAllGroupValues(firstNewGroup);
+			insertNode(firstNewGroup.node, firstNewGroup.parent.getChildrenParent());
+			updateGroups(firstNewGroup.parent);
+		}
+		else {
+			insertNode(row, group.getChildrenParent());
+			updateGroups(group);
+		}
+	}
+
+	private Group newGroup(Group parent, Object key, TreeNodeVector<E> row, int level) {
+
+		TreeNodeVector<E> node = newGroupNode();
+		for (int i = 0; i <= level; i++)
+			setValue(node, groupColumns[i], getValue(row, groupColumns[i]));
+
+		Group group = new Group(parent, key, node);
+		parent.getSubgroups().put(key, group);
+		return group;
+	}
+
+	private TreeNodeVector<E> newGroupNode() {
+		TreeNodeVector<E> node = new TreeNodeVector<E>(columnCount);
+		node.setSize(columnCount);
+		return node;
+	}
+
+	private boolean isRowGroup(TreeNodeVector<E> row, Group group) {
+
+		int level = groupColumns.length - 1;
+		for (Group levelGroup = group; levelGroup.parent != null; levelGroup = levelGroup.parent) {
+			if (!Objects.equals(levelGroup.key, getValue(row, groupColumns[level])))
+				return false;
+			level--;
+		}
+		return true;
+	}
+
+	private void accumulate(Group group, RowEntry rowEntry, boolean add) {
+
+		for (Group levelGroup = group; levelGroup != null; levelGroup = levelGroup.parent) {
+			levelGroup.rowCount = levelGroup.rowCount + (add ? 1 : -1);
+			for (int i = 0; i < aggregates.length; i++) {
+				if (add)
+					levelGroup.accumulators[i].add(rowEntry.values[i], rowEntry.numbers[i], rowEntry.valuesWithType[i]);
+				else
+					levelGroup.accumulators[i].subtract(rowEntry.values[i], rowEntry.numbers[i], rowEntry.valuesWithType[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the aggregates in the nodes of the group and its ancestors, firing the events of the changes
+	 */
+	private void updateGroups(Group group) {
+		for (Group levelGroup = group; levelGroup != null; levelGroup = levelGroup.parent) {
+			setGroupValues(levelGroup);
+			if (levelGroup.parent != null)
+				nodeChanged(levelGroup.node);
+		}
+	}
+
+	/**
+	 * Sets the aggregates in the nodes of the group and its subgroups, without firing events
+	 */
+	private void setAllGroupValues(Group group) {
+
+		setGroupValues(group);
+		if (group.subgroups != null) {
+			for (Group subgroup : group.subgroups.values())
+				setAllGroupValues(subgroup);
+		}
+	}
+
+	private void setGroupValues(Group group) {
+		for (int i = 0; i < aggregates.length; i++)
+			setValue(group.node, aggregates[i].getIndex(), getAggregateValue(group, i));
+	}
+
+	private Object getAggregateValue(Group group, int aggregateIndex) {
+
+		String function = aggregates[aggregateIndex].getFunction();
+		Accumulator accumulator = group.accumulators[aggregateIndex];
+		if (function == Aggregate.COUNT)
+			return Integer.valueOf(group.rowCount);
+		else if (accumulator.values == 0)
+			return null;
+		else if (function == Aggregate.SUM)
+			return accumulator.getSum();
+		else if (function == Aggregate.AVG)
+			return Double.valueOf(accumulator.getSum().doubleValue() / accumulator.values);
+
+		if (!accumulator.extremesUpdated) {
+			Vector<Object> values = new Vector<>(accumulator.values);
+			addGroupValues(values, group.getChildrenParent(), aggregateIndex);
+			accumulator.setExtremes(ExpressionsAnalyzer.getMaxValue(values, null), ExpressionsAnalyzer.getMinValue(values, null));
+		}
+		return function == Aggregate.MAX ? accumulator.maxValue : accumulator.minValue;
+	}
+
+	/**
+	 * Adds the non null values accumulated of the aggregate from the rows below the node
+	 */
+	private void addGroupValues(Vector<Object> values, TreeNodeVector<E> node, int aggregateIndex) {
+		for (int i = 0; i < node.getChildCount(); i++) {
+			TreeNodeVector<E> child = node.getChildAt(i);
+			RowEntry rowEntry = getRowEntries().get(child);
+			if (rowEntry != null) {
+				if (rowEntry.values[aggregateIndex] != null)
+					values.addElement(rowEntry.values[aggregateIndex]);
+			}
+			else {
+				addGroupValues(values, child, aggregateIndex);
+			}
+		}
+	}
+
+	private static boolean isNumeric(Aggregate aggregate) {
+		return aggregate.getFunction() == Aggregate.SUM || aggregate.getFunction() == Aggregate.AVG;
+	}
+
+	private Map<TreeNodeVector<E>, RowEntry> getRowEntries() {
+		if (rowEntries == null)
+			rowEntries = new IdentityHashMap<>();
+		return rowEntries;
+	}
+
+	//
+	// Nodes
+	//
+
+	private void insertNode(TreeNodeVector<E> node, TreeNodeVector<E> parent) {
+		if (model != null)
+			model.insertNodeInto(node, parent, parent.getChildCount());
+		else
+			parent.addChild(node);
+	}
+
+	private void removeNode(TreeNodeVector<E> node) {
+		if (model != null)
+			model.removeNodeFromParent(node);
+		else
+			node.removeFromParent();
+	}
+
+	private void nodeChanged(TreeNodeVector<E> node) {
+		if (model != null)
+			model.nodeChanged(node);
+	}
+
+	private static Object getValue(List<?> row, int column) {
+		return column >= 0 && column < row.size() ? row.get(column) : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void setValue(TreeNodeVector<T> node, int column, Object value) {
+		if (column >= 0 && column < node.size())
+			node.setElementAt((T) value, column);
+	}
+
+	private static Object getValueWithType(Object value) {
+		Object valueWithType = GlobalDataConverter.getNonAlphanumericData(value.toString());
+		return valueWithType != null ? valueWithType : value;
+	}
+
+	private static Double getNumber(Object value) {
+
+		//Igual que en ExpressionsAnalyzer.getSum
+		if (value instanceof Number)
+			return Double.valueOf(((Number) value).doubleValue());
+		try {
+			return new Double(value.toString());
+		}
+		catch (Throwable ex) {
+			try {
+				Object possibleNumber = GlobalDataConverter.getNonAlphanumericData(value.toString());
+				return new Double(possibleNumber.toString());
+			}
+			catch (Throwable ex2) {
+				return null;
+			}
+		}
+	}
+}
@@ -341,19 +341,20 @@ public abstract class TableModel<E> implements Serializable {
     }
     
     private int insertRowsAndChildren(int rowIndex, Vector<TreeNodeVector<E>> rows) {
-    	int rowsInserted = 0;
-    	if (rows != null && !rows.isEmpty()) {
-	    	for (int i = 0; i < rows.size(); i++) {
-	    		TreeNodeVector<E> rowData = rows.elementAt(i);
-	    		getRows().insertElementAt(rowData, rowIndex+rowsInserted);
-	    		rowsInserted++;
-	    		if (rowData.isExpanded() && rowData.getChildCount() > 0) {
-	    			int rowsChildrenInserted = insertRowsAndChildren(rowIndex + rowsInserted + 1, rowData.getChildrenCopyVector());
-	    			rowsInserted = rowsInserted + rowsChildrenInserted;
-	    		}
-			}
+    	//Añadimos las filas, con los hijos de las expandidas, desplazando las siguientes de una sola vez
+    	List<TreeNodeVector<E>> rowsToInsert = Lists.newList();
+    	addRowsAndChildren(rowsToInsert, rows);
+    	getRows().addAll(rowIndex, rowsToInsert);
+    	return rowsToInsert.size();
+    }
+    
+    private void addRowsAndChildren(List<TreeNodeVector<E>> rowsToInsert, List<TreeNodeVector<E>> rows) {
+    	for (int i = 0; i < rows.size(); i++) {
+    		TreeNodeVector<E> rowData = rows.get(i);
+    		rowsToInsert.add(rowData);
+    		if (rowData.isExpanded() && rowData.getChildCount() > 0)
+    			addRowsAndChildren(rowsToInsert, rowData.getChildrenCopyVector());
     	}
-    	return rowsInserted;
     }
 
     /**
@@ -412,7 +413,7 @@ public abstract class TableModel<E> implements Serializable {
             last = to + end - start;
         }
         
-        rotateElements(getRows(), first, last, shift);
+        Lists.moveElements(getRows(), start, end, to);
         
         fireTableRowsUpdated(first, last);
     }
@@ -443,47 +444,7 @@ public abstract class TableModel<E> implements Serializable {
      *
      */
     public static <T> void moveElements(List<T> list, int start, int end, int to) {
-    	
-    	int shift = to - start;
-        int first, last;
-        if (shift < 0) {
-            first = to;
-            last = end;
-        }
-        else {
-            first = start;
-            last = to + end - start;
-        }
-        
-        rotateElements(list, first, last, shift);
-    }
-    
-    private static <T> void rotateElements(List<T> list, int first, int last, int shift) {
-        
-        int size = last - first + 1;
-        int r = size - shift;
-        int g = gcd(size, r);
-        
-        for(int i = 0; i < g; i++) {
-            int toTmp = i;
-            T elem = list.get(first + toTmp);
-            /*if (elem instanceof TreeNodeVector) {
-            	TreeNodeVector<?> elemNV = (TreeNodeVector<?>) elem;
-            	if (elemNV.getChildCount() > 0) {
-            		rotateElements(elemNV.getChildrenCopyVector(), first, last, shift);
-            	}
-            }*/
-            for(int from = (toTmp + r) % size; from != i; from = (toTmp + r) % size) {
-            	int indexFrom = first + from;
-            	int indexTo = first + toTmp;
-            	list.set(indexTo, list.get(indexFrom));
-            	toTmp = from;
-            }
-            list.set(first + toTmp, elem);
-        }
-    }
-    private static int gcd(int i, int j) {
-        return (j == 0) ? i : gcd(j, i%j);
+    	Lists.moveElements(list, start, end, to);
     }
 
     /**
@@ -554,21 +515,30 @@ public abstract class TableModel<E> implements Serializable {
     		lastRowSameLevel = aux;
     	}
     	
-    	int rowsRemoved = 0;
-    	for (int i = firstRow; i <= lastRowSameLevel; i++) {
-	    	TreeNodeVector<E> rowRemoved = getRows().elementAt(firstRow);
-	        getRows().removeElementAt(firstRow);
-	        rowsRemoved++;
-	        
-	        if (rowRemoved.isExpanded() && rowRemoved.getChildCount() > 0) {
-	        	//Antes de borrar los hijos, nos aseguramos de que realmente están incluidos en el modelo
-	        	if (getRows().elementAt(firstRow) == rowRemoved.getChildAt(0)) {
-	        		int rowsChildrenRemoved = removeRowsAndChildren(firstRow, firstRow + rowRemoved.getChildCount() - 1);
-	        		rowsRemoved = rowsRemoved + rowsChildrenRemoved;
-	        	}
-	        }
+    	//Buscamos donde acaban las filas con sus hijos y las eliminamos desplazando las siguientes de una sola vez
+    	int lastRow = firstRow;
+    	for (int i = firstRow; i <= lastRowSameLevel; i++)
+    		lastRow = getRowAndChildrenEnd(lastRow);
+    	
+    	getRows().subList(firstRow, lastRow).clear();
+    	return lastRow - firstRow;
+    }
+    
+    /**
+     * Devuelve la fila siguiente a la fila rowIndex y sus hijos incluidos en el modelo
+     */
+    private int getRowAndChildrenEnd(int rowIndex) {
+    	
+    	TreeNodeVector<E> row = getRows().elementAt(rowIndex);
+    	int nextRow = rowIndex + 1;
+    	if (row.isExpanded() && row.getChildCount() > 0) {
+    		//Antes de contar los hijos, nos aseguramos de que realmente están incluidos en el modelo
+    		if (nextRow < getRows().size() && getRows().elementAt(nextRow) == row.getChildAt(0)) {
+    			for (int i = 0; i < row.getChildCount(); i++)
+    				nextRow = getRowAndChildrenEnd(nextRow);
+    		}
     	}
-    	return rowsRemoved;
+    	return nextRow;
     }
 
 //
@@ -16,6 +16,7 @@
  */
 package linaje.table;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
 
@@ -47,9 +48,11 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     private boolean updatingFromTreeEvent = false;
     private boolean updatingRows = false;
     private boolean refreshing = false;
-    @SuppressWarnings("unused")
-	private TreeNodeVector<E> nodeExpanding = null;
-    private TreeNodeVector<E> nodeCollapsing = null;
+    private boolean changingExpandedState = false;
+    private boolean replacingRows = false;
+    
+    //Vistas filtradas que se actualizan con los eventos del árbol
+    private transient List<FilteredTableModelTree<E>> filteredModels = null;
     
 //
 // Constructors
@@ -170,7 +173,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     }*/
     public Vector<TreeNodeVector<E>> getRows() {
     	if (rows == null)
-    		rows = new Vector<TreeNodeVector<E>>();
+    		rows = new VisibleRows<E>();
         return rows;
     }
     public Vector<TreeNodeVector<E>> getRows(int[] rowIndices) {
@@ -220,10 +223,12 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	
     	try {
     		updatingRows = true;
+    		replacingRows = true;
     		
     		this.rows = null;
             this.columnIdentifiers = columnIdentifiers;
             getRoot().removeAllChildren();
+            invalidateNodesIndex();
             
             //Añadimos las nuevas filas al root
             addNodesToRoot(rows);
@@ -233,7 +238,10 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
 		}
     	finally {
     		updatingRows = false;
+    		replacingRows = false;
 		}
+    	
+    	fireFilteredRowsReplaced(true);
     }
 
     /**
@@ -254,6 +262,35 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     public void setDataVector(E[][] dataArray, String[] columnIdentifiers) {
     	setRows(dataArray, columnIdentifiers);
     }*/
+    
+    /**
+     * Replaces the rows with the hierarchy built from them by {@link TreeModel#buildTree(Iterator, int, int)},
+     * firing a single fireTableDataChanged (the columns don't change)
+     */
+    public void loadRows(Iterator<? extends TreeNodeVector<E>> rows, int keyColumn, int parentKeyColumn) {
+    	loadRows(buildTree(rows, keyColumn, parentKeyColumn));
+    }
+    
+    /**
+     * Replaces the nodes of the tree and the rows of the table with the children of newRoot, that can be built out of the event thread,
+     * firing a single fireTableDataChanged instead of the events of inserting each row
+     */
+    public void loadRows(TreeNodeVector<E> newRoot) {
+    	
+    	try {
+    		updatingRows = true;
+    		
+    		getRoot().moveChildrenFrom(newRoot);
+    		invalidateNodesIndex();
+    		refreshTableFromTreeStructure();
+		}
+    	finally {
+    		updatingRows = false;
+		}
+    	
+    	fireTableDataChanged();
+    	fireFilteredRowsReplaced(false);
+    }
 
 //
 // Manipulating rows
@@ -264,7 +301,8 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
         // instead of the AbstractTableModel by mistake.
         // Set the number of rows for the case when getRowCount
         // is overridden.
-        getRows().setSize(getRowCount());
+        if (getRows().size() != getRowCount())
+        	getRows().setSize(getRowCount());
 
         for (int i = from; i < to; i++) {
             if (getRows().elementAt(i) == null) {
@@ -354,42 +392,114 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
      */
     public void insertRows(int rowIndex, Vector<TreeNodeVector<E>> rows) {
     	if (rows != null && !rows.isEmpty()) {
-    		int rowsInserted = insertRowsAndChildren(rowIndex, rows);
+    		int rootChildIndex = -1;
+    		if (!isUpdatingFromTreeEvent()) {
+    			//Las filas nuevas van al root, así que no pueden quedar entre los hijos visibles de otra fila
+    			rootChildIndex = getRootChildIndex(rowIndex);
+    			rowIndex = rootChildIndex < getRoot().getChildCount() ? getRowIndex(getRoot().getChildAt(rootChildIndex)) : getRowCount();
+    		}
+    		int rowsInserted = insertRowsAndChildren(rowIndex, rootChildIndex, rows);
 	    	justifyRows(rowIndex, rowIndex + rowsInserted);
 	    	if (!isRefreshing())
 	    		fireTableRowsInserted(rowIndex, rowIndex + rowsInserted - 1);
     	}
     }
     
-    private int insertRowsAndChildren(int rowIndex, Vector<TreeNodeVector<E>> rows) {
+    private int insertRowsAndChildren(int rowIndex, int rootChildIndex, Vector<TreeNodeVector<E>> rows) {
     	
     	try {
     		updatingRows = true;
     		
     		if (!isUpdatingFromTreeEvent()) {
         		//Añadimos nodos al arbol
-        		insertNodesIntoRoot(rows, rowIndex);
+        		insertNodesIntoRoot(rows, rootChildIndex);
         	}
         	
-        	//Añadimos filas a la tabla
-    		int rowsInserted = 0;
-        	if (rows != null && !rows.isEmpty()) {
-    	    	for (int i = 0; i < rows.size(); i++) {
-    	    		TreeNodeVector<E> rowData = rows.elementAt(i);
-    	    		getRows().insertElementAt(rowData, rowIndex+rowsInserted);
-    	    		rowsInserted++;
-    	    		if (rowData.isExpanded() && rowData.getChildCount() > 0) {
-    	    			int rowsChildrenInserted = insertRowsAndChildren(rowIndex + rowsInserted, rowData.getChildrenCopyVector());
-    	    			rowsInserted = rowsInserted + rowsChildrenInserted;
-    	    		}
-    			}
-        	}
-        	return rowsInserted;
+        	//Añadimos filas a la tabla, con los hijos de las expandidas, de una sola vez
+    		List<TreeNodeVector<E>> visibleRows = Lists.newList();
+    		addVisibleRows(visibleRows, rows);
+    		insertRowsInVector(rowIndex, visibleRows);
+    		
+        	return visibleRows.size();
 		}
     	finally {
     		updatingRows = false;
 		}
     }
+    
+    private void addVisibleRows(List<TreeNodeVector<E>> visibleRows, List<TreeNodeVector<E>> nodes) {
+    	for (int i = 0; i < nodes.size(); i++) {
+    		TreeNodeVector<E> node = nodes.get(i);
+    		visibleRows.add(node);
+    		if (node.isExpanded() && node.getChildCount() > 0)
+    			addVisibleChildren(visibleRows, node);
+    	}
+    }
+    
+    private void addVisibleChildren(List<TreeNodeVector<E>> visibleRows, TreeNodeVector<E> parent) {
+    	for (int i = 0; i < parent.getChildCount(); i++) {
+    		TreeNodeVector<E> child = parent.getChildAt(i);
+    		visibleRows.add(child);
+    		if (child.isExpanded() && child.getChildCount() > 0)
+    			addVisibleChildren(visibleRows, child);
+    	}
+    }
+    
+    private void insertRowsInVector(int rowIndex, List<TreeNodeVector<E>> rowsToInsert) {
+    	if (getRows() instanceof VisibleRows)
+    		((VisibleRows<E>) getRows()).insertRows(rowIndex, rowsToInsert);
+    	else
+    		getRows().addAll(rowIndex, rowsToInsert);
+    }
+    
+    private void removeRowsFromVector(int fromIndex, int toIndex) {
+    	if (getRows() instanceof VisibleRows)
+    		((VisibleRows<E>) getRows()).removeRows(fromIndex, toIndex);
+    	else
+    		getRows().subList(fromIndex, toIndex).clear();
+    }
+    
+    /**
+     * Returns the row of the node, or -1 if it isn't visible in the table
+     */
+    public int getRowIndex(TreeNodeVector<E> node) {
+    	
+    	if (getRows() instanceof VisibleRows)
+    		return ((VisibleRows<E>) getRows()).indexOfNode(node);
+    	
+    	for (int i = 0; i < getRows().size(); i++) {
+    		if (getRows().elementAt(i) == node)
+    			return i;
+    	}
+    	return -1;
+    }
+    
+    /**
+     * Devuelve el índice entre los hijos del root de la primera fila de primer nivel a partir de rowIndex
+     */
+    private int getRootChildIndex(int rowIndex) {
+    	
+    	for (int i = Math.max(rowIndex, 0); i < getRows().size(); i++) {
+    		TreeNodeVector<E> row = getRows().elementAt(i);
+    		if (row != null && row.getParent() == getRoot())
+    			return getRoot().getIndex(row);
+    	}
+    	return getRoot().getChildCount();
+    }
+    
+    /**
+     * Returns the number of rows of the node at rowIndex and its children visible in the table
+     */
+    private int getRowAndChildrenCount(int rowIndex) {
+    	
+    	TreeNodeVector<E> node = getRows().elementAt(rowIndex);
+    	int nextRow = rowIndex + 1;
+    	//Los hijos siguen en la tabla aunque el nodo ya se haya plegado, así que los buscamos por la jerarquía
+    	while (nextRow < getRows().size() && getRows().elementAt(nextRow).isNodeAncestor(node))
+    		nextRow++;
+    	
+    	return nextRow - rowIndex;
+    }
 
     /**
      *  Inserts a row at <code>row</code> in the model.  The new row
@@ -416,9 +526,11 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	try {
     		refreshing = true;
     		
-    		Vector<TreeNodeVector<E>> firstLevelRows = getRoot().getChildrenCopyVector();
+    		List<TreeNodeVector<E>> visibleRows = Lists.newList();
+    		addVisibleChildren(visibleRows, getRoot());
         	getRows().removeAllElements();
-        	addRows(firstLevelRows);
+        	insertRowsInVector(0, visibleRows);
+        	justifyRows(0, getRowCount());
 		}
     	finally {
     		refreshing = false;
@@ -446,6 +558,11 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
      *          a|G|H|b|c|d|e|f|i|j|k   - after
      *  </pre>
      *
+     *  Like in removeRows, the rows moved are the <code>end - start + 1</code> nodes of the level of <code>start</code>,
+     *  that move among the children of their parent together with their visible children,
+     *  and <code>to - start</code> is the number of siblings they are moved.
+     *  So without expanded rows it's the same as moving the rows of a table.
+     *
      * @param   start       the starting row index to be moved
      * @param   end         the ending row index to be moved
      * @param   to          the destination of the rows to be moved
@@ -454,21 +571,59 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
      *
      */
     public void moveRows(int start, int end, int to) {
-        
-    	int shift = to - start;
-        int first, last;
-        if (shift < 0) {
-            first = to;
-            last = end;
-        }
-        else {
-            first = start;
-            last = to + end - start;
-        }
-        
-        rotateElements(getRows(), first, last, shift);
-        
-        fireTableRowsUpdated(first, last);
+    	
+    	if (start == to)
+    		return;
+    	
+    	TreeNodeVector<E> node = getRows().elementAt(start);
+    	TreeNodeVector<E> parent = node.getParent();
+    	int count = end - start + 1;
+    	int childStart = parent.getIndex(node);
+    	int childTo = childStart + to - start;
+    	if (count <= 0 || childStart + count > parent.getChildCount() || childTo < 0 || childTo + count > parent.getChildCount())
+    		throw new ArrayIndexOutOfBoundsException("start: " + start + ", end: " + end + ", to: " + to);
+    	
+    	//Las filas movidas van desde la del primer hermano hasta el final de los hijos del último
+    	int firstRow = start;
+    	int lastRow = getRowAndChildrenEnd(parent.getChildAt(childStart + count - 1)) - 1;
+    	int toRow;
+    	if (childTo < childStart)
+    		toRow = getRowIndex(parent.getChildAt(childTo));
+    	else
+    		toRow = getRowAndChildrenEnd(parent.getChildAt(childTo + count - 1)) - (lastRow - firstRow + 1);
+    	
+    	@SuppressWarnings("unchecked")
+		TreeNodeVector<E>[] movedChildren = (TreeNodeVector<E>[]) new TreeNodeVector<?>[count];
+    	int[] oldIndices = new int[count];
+    	int[] newIndices = new int[count];
+    	for (int i = 0; i < count; i++) {
+    		movedChildren[i] = parent.getChildAt(childStart + i);
+    		oldIndices[i] = childStart + i;
+    		newIndices[i] = childTo + i;
+    	}
+    	
+    	try {
+    		updatingRows = true;
+    		
+    		parent.moveChildren(childStart, childStart + count - 1, childTo);
+    		Lists.moveElements(getRows(), firstRow, lastRow, toRow);
+    		//El árbol se entera como si se quitaran y se volvieran a insertar los nodos, la tabla con un solo evento
+    		nodesWereRemoved(parent, oldIndices, movedChildren);
+    		nodesWereInserted(parent, newIndices);
+		}
+    	finally {
+    		updatingRows = false;
+		}
+    	
+    	fireTableRowsUpdated(Math.min(firstRow, toRow), Math.max(lastRow, toRow + lastRow - firstRow));
+    }
+    
+    /**
+     * Devuelve la fila siguiente a la del nodo y sus hijos visibles
+     */
+    private int getRowAndChildrenEnd(TreeNodeVector<E> node) {
+    	int rowIndex = getRowIndex(node);
+    	return rowIndex + getRowAndChildrenCount(rowIndex);
     }
     
     /**
@@ -497,47 +652,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
      *
      */
     public static <T> void moveElements(List<T> list, int start, int end, int to) {
-    	
-    	int shift = to - start;
-        int first, last;
-        if (shift < 0) {
-            first = to;
-            last = end;
-        }
-        else {
-            first = start;
-            last = to + end - start;
-        }
-        
-        rotateElements(list, first, last, shift);
-    }
-    
-    private static <T> void rotateElements(List<T> list, int first, int last, int shift) {
-        
-        int size = last - first + 1;
-        int r = size - shift;
-        int g = gcd(size, r);
-        
-        for(int i = 0; i < g; i++) {
-            int toTmp = i;
-            T elem = list.get(first + toTmp);
-            /*if (elem instanceof TreeNodeVector) {
-            	TreeNodeVector<?> elemNV = (TreeNodeVector<?>) elem;
-            	if (elemNV.getChildCount() > 0) {
-            		rotateElements(elemNV.getChildrenCopyVector(), first, last, shift);
-            	}
-            }*/
-            for(int from = (toTmp + r) % size; from != i; from = (toTmp + r) % size) {
-            	int indexFrom = first + from;
-            	int indexTo = first + toTmp;
-            	list.set(indexTo, list.get(indexFrom));
-            	toTmp = from;
-            }
-            list.set(first + toTmp, elem);
-        }
-    }
-    private static int gcd(int i, int j) {
-        return (j == 0) ? i : gcd(j, i%j);
+    	Lists.moveElements(list, start, end, to);
     }
 
     /**
@@ -548,7 +663,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     }
     
     public void removeRow(TreeNodeVector<E> rowNodeVector) {
-    	int rowIndex = getRows().indexOf(rowNodeVector);
+    	int rowIndex = getRowIndex(rowNodeVector);
     	if (rowIndex != -1) {
     		removeRow(rowIndex);
     	}
@@ -617,23 +732,15 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	try {
     		updatingRows = true;
     		
-    		//Eliminamos filas de la tabla
-    		int rowsRemoved = 0;
+    		//Eliminamos filas de la tabla, con los hijos que estén visibles, de una sola vez
     		List<TreeNodeVector<E>> removedRowsList = Lists.newList();
-        	for (int i = firstRow; i <= lastRowSameLevel; i++) {
-    	    	TreeNodeVector<E> rowRemoved = getRows().elementAt(firstRow);
-    	        getRows().removeElementAt(firstRow);
-    	        rowsRemoved++;
-    	        removedRowsList.add(rowRemoved);
-    	        
-    	        if ((rowRemoved.isExpanded() || rowRemoved == nodeCollapsing) && rowRemoved.getChildCount() > 0) {
-    	        	//Antes de borrar los hijos, nos aseguramos de que realmente están incluidos en el modelo
-    	        	if (getRows().size() > firstRow && getRows().elementAt(firstRow) == rowRemoved.getChildAt(0)) {
-    	        		int rowsChildrenRemoved = removeRowsAndChildren(firstRow, firstRow + rowRemoved.getChildCount() - 1);
-    	        		rowsRemoved = rowsRemoved + rowsChildrenRemoved;
-    	        	}
-    	        }
+    		int lastRow = firstRow;
+        	for (int i = firstRow; i <= lastRowSameLevel && lastRow < getRowCount(); i++) {
+        		removedRowsList.add(getRows().elementAt(lastRow));
+        		lastRow = lastRow + getRowAndChildrenCount(lastRow);
         	}
+        	int rowsRemoved = lastRow - firstRow;
+        	removeRowsFromVector(firstRow, lastRow);
         	
         	if (!isUpdatingFromTreeEvent() && !removedRowsList.isEmpty()) {
         		//Eliminamos nodos del arbol
@@ -701,6 +808,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	getColumnIdentifiers().setSize(columnCount);
         justifyRows(0, getRowCount());
         fireTableStructureChanged();
+        fireFilteredRowsReplaced(true);
     }
 
     /**
@@ -749,6 +857,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
         }
 
         fireTableStructureChanged();
+        fireFilteredRowsReplaced(true);
     }
 
     /**
@@ -854,7 +963,12 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     public void setValueAt(E aValue, int row, int column) {
     	TreeNodeVector<E> rowVector = getRows().elementAt(row);
         rowVector.setElementAt(aValue, column);
+        updateNodesIndex(rowVector);
         fireTableCellUpdated(row, column);
+        if (filteredModels != null) {
+        	for (int i = 0; i < filteredModels.size(); i++)
+        		filteredModels.get(i).nodeChanged(rowVector);
+        }
     }
 
 //
@@ -896,10 +1010,10 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     }
 
     public TreeNodeVector<E> findRow(E userObject) {
-    	return getRoot().findNode(userObject);
+    	return findNode(userObject);
     }
     public TreeNodeVector<E> findRowSimilar(E userObject) {
-    	return getRoot().findNodeSimilar(userObject);
+    	return findNodeSimilar(userObject);
     }
     
     /**
@@ -934,11 +1048,11 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	expand(node, Numbers.MAX_INTEGER_NUMBER);
     }
     public void expand(TreeNodeVector<E> node, int maxExpandLevelChilds) {
-    	setExpandedState(node, true, false, maxExpandLevelChilds, true);
+    	setExpandedState(node, true, false, maxExpandLevelChilds, null);
     }
     public void expandParents(TreeNodeVector<E> node) {
     	//Expandimos sólo los hijos y ningún nivel (es decir, nada), por lo que sólo se expandirán los padres
-    	setExpandedState(node, true, true, 0, true);
+    	setExpandedState(node, true, true, 0, null);
     }
     
     public void collapse(TreeNodeVector<E> node) {
@@ -951,32 +1065,38 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	collapse(node, true, Numbers.MAX_INTEGER_NUMBER);
     }
     public void collapse(TreeNodeVector<E> node, boolean onlyChilds, int maxCollapseLevelChilds) {
-    	setExpandedState(node, false, onlyChilds, maxCollapseLevelChilds, true);
+    	setExpandedState(node, false, onlyChilds, maxCollapseLevelChilds, null);
     }
     
-    private TreeNodeVector<E> setExpandedState(TreeNodeVector<E> node, boolean newExpandedState, boolean onlyChilds, int maxLevels, boolean fireNodeStructureChanged) {
+    /**
+     * collapsedNodes is null in the first call, the one that fires the event, and collects the nodes collapsed in the recursive calls
+     */
+    private TreeNodeVector<E> setExpandedState(TreeNodeVector<E> node, boolean newExpandedState, boolean onlyChilds, int maxLevels, List<TreeNodeVector<E>> collapsedNodes) {
     	
     	TreeNodeVector<E> firstNodeChanged = null;
+    	boolean fireNodeStructureChanged = collapsedNodes == null;
 		
 		try {
-			if (fireNodeStructureChanged) 
+			if (fireNodeStructureChanged) {
 				updatingFromTreeEvent = true;
+				collapsedNodes = Lists.newList();
+			}
+			
+			//Si el nodo es lazy, cargamos sus hijos antes de expandirlo
+			if (newExpandedState && !onlyChilds)
+				nodeExpanded(node);
 			
     		boolean expandCollapseChilds = maxLevels > 0;
     		int childCount = node.getChildCount();
 	    	if (childCount > 0) {
 	    		
-	    		if (fireNodeStructureChanged) {
-		    		if (newExpandedState)
-		    			nodeExpanding = node;
-		    		else
-		    			nodeCollapsing = node;
-	    		}
-	    		
 	    		if (!onlyChilds) {
 	    			boolean stateChanged = node.setExpanded(newExpandedState);
-	    			if (stateChanged)
+	    			if (stateChanged) {
 	    				firstNodeChanged = node;
+	    				if (!newExpandedState)
+	    					collapsedNodes.add(node);
+	    			}
 	    		}
 	    		
 		    	if (expandCollapseChilds) {
@@ -984,7 +1104,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
 		    		int maxLevelsLeft = maxLevels - 1;
 	    			for (int i = 0; i < childCount; i++) {
 	    				TreeNodeVector<E> childNode = node.getChildAt(i);
-	    				TreeNodeVector<E> firstNodeChildChanged = setExpandedState(childNode, newExpandedState, false, maxLevelsLeft, false);
+	    				TreeNodeVector<E> firstNodeChildChanged = setExpandedState(childNode, newExpandedState, false, maxLevelsLeft, collapsedNodes);
 	    				if (firstNodeChanged == null)
 	    					firstNodeChanged = firstNodeChildChanged;
 	    			}
@@ -993,13 +1113,17 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
 	    	
 	    	if (fireNodeStructureChanged) {
 	    		
+	    		TreeNodeVector<E> nodeToRefresh = node;
 	    		if (newExpandedState) {
 	    			//Si vamos a expandir, comprobamos si los padres están expandidos, sí no lo están expándiremos el de menor nivel
 		    		TreeNodeVector<E> parent = node.getParent();
 		    		while (parent != null && !parent.isExpanded()) {
-		    			nodeExpanding = parent;
 		    			parent.setExpanded(true);
+		    			nodeExpanded(parent);
 		    			firstNodeChanged = parent;
+		    			//El root no tiene fila, así que basta con refrescar su hijo
+		    			if (parent != getRoot())
+		    				nodeToRefresh = parent;
 		    			parent = parent.getParent();
 		    		}
 	    		}
@@ -1014,18 +1138,24 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
 	    		
 	    		if (firstNodeChanged != null) {
 	    			//Lanzamos el evento del nodo que cambie mas alto en la jerarquía
-	    			nodeStructureChanged(node);
+	    			//No cambian los nodos del árbol, así que no pasamos por nodeStructureChanged para no invalidar el índice de nodos
+	    			try {
+	    				changingExpandedState = true;
+	    				fireTreeStructureChanged(this, getPathToRoot(nodeToRefresh), null, null);
+	    			}
+	    			finally {
+	    				changingExpandedState = false;
+	    			}
 	    		}
+	    		
+	    		//Con las filas ya plegadas, los nodos lazy pueden descargar sus hijos
+	    		for (int i = 0; i < collapsedNodes.size(); i++)
+	    			nodeCollapsed(collapsedNodes.get(i));
 	    	}
     	}
     	finally {
-    		if (fireNodeStructureChanged) {
+    		if (fireNodeStructureChanged)
     			updatingFromTreeEvent = false;
-    			if (newExpandedState)
-	    			nodeExpanding = null;
-	    		else
-	    			nodeCollapsing = null;
-    		}
 		}
 		
 		return firstNodeChanged;
@@ -1069,7 +1199,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	for (int i = 1; i < childIndices.length; i++) {
     		
     		int index = childIndices[i];
-    		if (index != (lastIndex - 1)) {
+    		if (index != (lastIndex + 1)) {
     			sequentialChildren = Lists.newVector();
     			globalSequentialChildren.add(sequentialChildren);
     		}
@@ -1101,7 +1231,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     			index = - 2;
     		}
     		else {
-    			index = getRows().indexOf(parent);
+    			index = getRowIndex(parent);
     			if (index == -1)
     				index = -2;
     		}
@@ -1128,12 +1258,10 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
 	    			List<Vector<TreeNodeVector<E>>> globalSequentialChildren = getSequentialChildren(childIndices, children);
 		    		for (int i = 0; i < globalSequentialChildren.size(); i++) {
 		    			Vector<TreeNodeVector<E>> sequentialChildren = globalSequentialChildren.get(i);
-		    			TreeNodeVector<E> firstChild = sequentialChildren.get(0);
-		    			int firstRow = getRows().indexOf(firstChild);
-		    			if (firstRow != -1) {
-		    				int lastRow = firstRow + sequentialChildren.size() - 1;
+		    			int firstRow = getRowIndex(sequentialChildren.firstElement());
+		    			int lastRow = getRowIndex(sequentialChildren.lastElement());
+		    			if (firstRow != -1 && lastRow != -1)
 		    				fireTableRowsUpdated(firstRow, lastRow);
-		    			}
 					}
     			}
     		}
@@ -1141,6 +1269,11 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	finally {
     		updatingFromTreeEvent = false;
 		}
+    	
+    	if (filteredModels != null && !replacingRows && children != null) {
+    		for (int i = 0; i < filteredModels.size(); i++)
+    			filteredModels.get(i).nodesChanged(children);
+    	}
     }
     protected void fireTreeNodesInserted(Object source, TreeNodeVector<E>[] path, int[] childIndices, TreeNodeVector<E>[] children) {
     	try {
@@ -1151,12 +1284,16 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     			int visibleExpandedParentRowIndex = getVisibleExpandedParentRowIndex(parent);
     			if (visibleExpandedParentRowIndex != -2) {
     				//Sólo tratamos los nodos que cambien que sean visibles
-    				int startIndex = visibleExpandedParentRowIndex + 1;
-    				int firstSequentialChild = 0;
-	    			List<Vector<TreeNodeVector<E>>> globalSequentialChildren = getSequentialChildren(childIndices, children);
+    				//Insertamos en orden de índice para que el hermano anterior de cada tanda ya esté en la tabla
+    				int[] sortedIndices = childIndices.clone();
+    				TreeNodeVector<E>[] sortedChildren = children.clone();
+    				sortChildren(sortedIndices, sortedChildren);
+	    			List<Vector<TreeNodeVector<E>>> globalSequentialChildren = getSequentialChildren(sortedIndices, sortedChildren);
+	    			int firstSequentialChild = 0;
 		    		for (int i = 0; i < globalSequentialChildren.size(); i++) {
 		    			Vector<TreeNodeVector<E>> sequentialChildren = globalSequentialChildren.get(i);
-		    			int indexRowToInsert = startIndex + childIndices[firstSequentialChild];
+		    			int childIndex = sortedIndices[firstSequentialChild];
+		    			int indexRowToInsert = getChildRowIndex(parent, childIndex, visibleExpandedParentRowIndex);
 		    			insertRows(indexRowToInsert, sequentialChildren);
 		    			firstSequentialChild = firstSequentialChild + sequentialChildren.size();
 					}
@@ -1166,7 +1303,49 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	finally {
     		updatingFromTreeEvent = false;
 		}
+    	
+    	if (filteredModels != null && !replacingRows && childIndices != null && children != null) {
+    		int[] sortedIndices = childIndices.clone();
+			TreeNodeVector<E>[] sortedChildren = children.clone();
+			sortChildren(sortedIndices, sortedChildren);
+    		for (int i = 0; i < filteredModels.size(); i++)
+    			filteredModels.get(i).nodesInserted(getLastPathComponent(path), sortedChildren);
+    	}
     }
+    
+    /**
+     * Devuelve la fila en la que va el hijo childIndex del padre, justo después del hermano anterior y sus hijos visibles
+     */
+    private int getChildRowIndex(TreeNodeVector<E> parent, int childIndex, int visibleExpandedParentRowIndex) {
+    	
+    	if (childIndex > 0 && childIndex <= parent.getChildCount()) {
+    		int previousRow = getRowIndex(parent.getChildAt(childIndex - 1));
+    		if (previousRow != -1)
+    			return previousRow + getRowAndChildrenCount(previousRow);
+    	}
+    	else if (childIndex == 0) {
+    		return visibleExpandedParentRowIndex + 1;
+    	}
+    	
+    	return Math.min(visibleExpandedParentRowIndex + 1 + childIndex, getRowCount());
+    }
+    
+    private void sortChildren(int[] childIndices, TreeNodeVector<E>[] children) {
+    	//Normalmente ya vienen ordenados, así que basta con una ordenación por inserción
+    	for (int i = 1; i < childIndices.length; i++) {
+    		int index = childIndices[i];
+    		TreeNodeVector<E> child = children[i];
+    		int j = i - 1;
+    		while (j >= 0 && childIndices[j] > index) {
+    			childIndices[j + 1] = childIndices[j];
+    			children[j + 1] = children[j];
+    			j--;
+    		}
+    		childIndices[j + 1] = index;
+    		children[j + 1] = child;
+    	}
+    }
+    
     protected void fireTreeNodesRemoved(Object source, TreeNodeVector<E>[] path, int[] childIndices, TreeNodeVector<E>[] children) {
     	try {
     		updatingFromTreeEvent = true;
@@ -1176,15 +1355,13 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     			int visibleExpandedParentRowIndex = getVisibleExpandedParentRowIndex(parent);
     			if (visibleExpandedParentRowIndex != -2) {
     				//Sólo tratamos los nodos que cambien que sean visibles
-    				int startIndex = visibleExpandedParentRowIndex + 1;
-    				int firstSequentialChild = 0;
 	    			List<Vector<TreeNodeVector<E>>> globalSequentialChildren = getSequentialChildren(childIndices, children);
 		    		for (int i = 0; i < globalSequentialChildren.size(); i++) {
 		    			Vector<TreeNodeVector<E>> sequentialChildren = globalSequentialChildren.get(i);
-		    			int firstRow = startIndex + childIndices[firstSequentialChild];
-		    			int lastRow = firstSequentialChild + sequentialChildren.size() - 1;
-		    			removeRows(firstRow, lastRow);
-		    			firstSequentialChild = lastRow + 1;
+		    			//Los nodos ya no están en el árbol pero siguen en la tabla, así que los buscamos directamente
+		    			int firstRow = getRowIndex(sequentialChildren.firstElement());
+		    			if (firstRow != -1)
+		    				removeRows(firstRow, firstRow + sequentialChildren.size() - 1);
 					}
     			}
     		}
@@ -1192,6 +1369,11 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	finally {
     		updatingFromTreeEvent = false;
 		}
+    	
+    	if (filteredModels != null && !replacingRows && children != null) {
+    		for (int i = 0; i < filteredModels.size(); i++)
+    			filteredModels.get(i).nodesRemoved(getLastPathComponent(path), children);
+    	}
     }
     protected void fireTreeStructureChanged(Object source, TreeNodeVector<E>[] path, int[] childIndices, TreeNodeVector<E>[] children) {
     	try {
@@ -1204,7 +1386,7 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
 	    			fireTableStructureChanged();
 	    		}
     			else {
-    				int rowIndex = getRows().indexOf(parent);
+    				int rowIndex = getRowIndex(parent);
     				if (rowIndex != -1) {
     					removeRow(rowIndex);
     					insertRow(rowIndex, parent);
@@ -1215,6 +1397,35 @@ public abstract class TableModelTree<E> extends TreeModel<E> {
     	finally {
     		updatingFromTreeEvent = false;
 		}
+    	
+    	if (filteredModels != null && !replacingRows) {
+    		for (int i = 0; i < filteredModels.size(); i++)
+    			filteredModels.get(i).nodeStructureChanged(getLastPathComponent(path), changingExpandedState);
+    	}
+    }
+    
+    //
+    // Filtered models
+    //
+    
+    void addFilteredModel(FilteredTableModelTree<E> filteredModel) {
+    	if (filteredModels == null)
+    		filteredModels = Lists.newList();
+    	filteredModels.add(filteredModel);
+    }
+    void removeFilteredModel(FilteredTableModelTree<E> filteredModel) {
+    	if (filteredModels != null) {
+    		filteredModels.remove(filteredModel);
+    		if (filteredModels.isEmpty())
+    			filteredModels = null;
+    	}
+    }
+    
+    private void fireFilteredRowsReplaced(boolean columnsChanged) {
+    	if (filteredModels != null) {
+    		for (int i = 0; i < filteredModels.size(); i++)
+    			filteredModels.get(i).rowsReplaced(columnsChanged);
+    	}
     }
     
     //
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.table;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import linaje.tree.TreeNodeVector;
+
+/**
+ * Visible rows of a {@link TableModelTree}, with an index from each node to its row.
+ * <p>
+ * The index is by identity (TreeNodeVector.equals compares the values of the rows) and it's only valid up to the first row changed,
+ * the rest of rows are indexed again when a node after that row is searched. So after expanding or collapsing a node,
+ * the rows above it are still found without scanning them.
+ * <p>
+ * Changes made from outside {@link TableModelTree} are detected with the modCount of the vector and the whole index is rebuilt.
+ */
+class VisibleRows<E> extends Vector<TreeNodeVector<E>> {
+
+	private static final long serialVersionUID = 4616430305745052155L;
+
+	private transient Map<TreeNodeVector<E>, Integer> rowIndices = null;
+	//Número de filas desde el principio que están bien indexadas
+	private transient int indexedRows = 0;
+	private transient int indexModCount = 0;
+
+	public VisibleRows() {
+		super();
+	}
+
+	/**
+	 * Same as indexOf(node) comparing by identity
+	 */
+	synchronized int indexOfNode(Object node) {
+
+		if (indexModCount != modCount) {
+			indexedRows = 0;
+			indexModCount = modCount;
+		}
+
+		if (indexedRows == 0 || getRowIndices().size() > 2 * elementCount + 16) {
+			//Quitamos del índice los nodos que ya no están en las filas
+			getRowIndices().clear();
+			indexedRows = 0;
+		}
+
+		Integer rowIndex = getRowIndices().get(node);
+		if (rowIndex != null && rowIndex.intValue() < indexedRows && elementData[rowIndex.intValue()] == node)
+			return rowIndex.intValue();
+
+		for (int i = indexedRows; i < elementCount; i++) {
+
+			@SuppressWarnings("unchecked")
+			TreeNodeVector<E> row = (TreeNodeVector<E>) elementData[i];
+			getRowIndices().put(row, Integer.valueOf(i));
+			indexedRows = i + 1;
+			if (row == node)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Inserts the rows at index with a single shift of the following rows, keeping indexed the rows above
+	 */
+	synchronized void insertRows(int index, Collection<? extends TreeNodeVector<E>> rows) {
+		rowsChanging(index);
+		addAll(index, rows);
+		indexModCount = modCount;
+	}
+
+	/**
+	 * Removes the rows from fromIndex (inclusive) to toIndex (exclusive) with a single shift of the following rows, keeping indexed the rows above
+	 */
+	synchronized void removeRows(int fromIndex, int toIndex) {
+		rowsChanging(fromIndex);
+		removeRange(fromIndex, toIndex);
+		indexModCount = modCount;
+	}
+
+	private void rowsChanging(int fromIndex) {
+		//Si ha habido cambios desde fuera no sabemos desde que fila hay que volver a indexar
+		indexedRows = indexModCount == modCount ? Math.min(indexedRows, fromIndex) : 0;
+	}
+
+	public synchronized TreeNodeVector<E> set(int index, TreeNodeVector<E> element) {
+		TreeNodeVector<E> previousElement = super.set(index, element);
+		indexedRows = Math.min(indexedRows, index);
+		return previousElement;
+	}
+
+	public synchronized void setElementAt(TreeNodeVector<E> element, int index) {
+		super.setElementAt(element, index);
+		indexedRows = Math.min(indexedRows, index);
+	}
+
+	private Map<TreeNodeVector<E>, Integer> getRowIndices() {
+		if (rowIndices == null)
+			rowIndices = new IdentityHashMap<>();
+		return rowIndices;
+	}
+}
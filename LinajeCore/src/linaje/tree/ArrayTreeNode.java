@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.tree;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * {@link TreeNodeVector} whose values and children are read straight from their arrays, without taking the monitor of the vector.
+ * <p>
+ * It's meant for models touched only from one thread (the event thread or a single loader thread),
+ * where the synchronization of Vector in each read of a cell (like TableModelTree.getValueAt) or of a child is pure overhead.
+ * The modifications are still synchronized, but reading while other thread modifies the node is not safe
+ * unless the concurrent mode is enabled with {@link #setConcurrent(boolean)}, that makes the reads synchronized again.
+ */
+public class ArrayTreeNode<E> extends TreeNodeVector<E> {
+
+	private static final long serialVersionUID = -2740934125043283521L;
+
+	private volatile boolean concurrent = false;
+
+	public ArrayTreeNode() {
+		super();
+	}
+	public ArrayTreeNode(E userObject) {
+		super(userObject);
+	}
+	public ArrayTreeNode(E userObject, boolean allowsChildren) {
+		super(userObject, allowsChildren);
+	}
+	public ArrayTreeNode(E[] elements) {
+		super(elements);
+	}
+	public ArrayTreeNode(Collection<? extends E> c) {
+		super(c);
+	}
+	public ArrayTreeNode(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	@SafeVarargs
+	@SuppressWarnings("varargs")
+	public static <T> ArrayTreeNode<T> newArrayNode(T... elements) {
+		//Los elementos solo se copian a los valores del nodo
+		return new ArrayTreeNode<T>(elements);
+	}
+
+	/**
+	 * When it's true the values and children are read with the synchronization of Vector, so the node can be read and modified from several threads
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E elementAt(int index) {
+		if (concurrent)
+			return super.elementAt(index);
+		if (index >= elementCount)
+			throw new ArrayIndexOutOfBoundsException(index + " >= " + elementCount);
+		return (E) elementData[index];
+	}
+
+	public E get(int index) {
+		if (concurrent)
+			return super.get(index);
+		return elementAt(index);
+	}
+
+	public int size() {
+		return concurrent ? super.size() : elementCount;
+	}
+
+	public boolean isEmpty() {
+		return concurrent ? super.isEmpty() : elementCount == 0;
+	}
+
+	public E firstElement() {
+		if (concurrent)
+			return super.firstElement();
+		if (elementCount == 0)
+			throw new NoSuchElementException();
+		return elementAt(0);
+	}
+
+	public E lastElement() {
+		if (concurrent)
+			return super.lastElement();
+		if (elementCount == 0)
+			throw new NoSuchElementException();
+		return elementAt(elementCount - 1);
+	}
+
+	protected Vector<TreeNodeVector<E>> newChildrenVector() {
+		return new Children();
+	}
+
+	/**
+	 * Children of the node, read without synchronization unless the node is concurrent
+	 */
+	private final class Children extends Vector<TreeNodeVector<E>> {
+
+		private static final long serialVersionUID = 6120784526104371852L;
+
+		@SuppressWarnings("unchecked")
+		public TreeNodeVector<E> elementAt(int index) {
+			if (concurrent)
+				return super.elementAt(index);
+			if (index >= elementCount)
+				throw new ArrayIndexOutOfBoundsException(index + " >= " + elementCount);
+			return (TreeNodeVector<E>) elementData[index];
+		}
+
+		public TreeNodeVector<E> get(int index) {
+			if (concurrent)
+				return super.get(index);
+			return elementAt(index);
+		}
+
+		public int size() {
+			return concurrent ? super.size() : elementCount;
+		}
+
+		public boolean isEmpty() {
+			return concurrent ? super.isEmpty() : elementCount == 0;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.tree;
+
+import java.util.List;
+
+/**
+ * Loads the children of a {@link LazyTreeNode} the first time it's expanded (from a database, files...).
+ * <p>
+ * The children returned can be lazy nodes too. It's called from the thread that expands the node,
+ * or from the loader of {@link TreeModel#setChildrenLoader(java.util.concurrent.Executor, java.util.concurrent.Executor)} if there is one,
+ * so in that case it must not modify the tree.
+ */
+public interface ChildrenProvider<E> {
+
+	public List<? extends TreeNodeVector<E>> loadChildren(LazyTreeNode<E> parent) throws Exception;
+}
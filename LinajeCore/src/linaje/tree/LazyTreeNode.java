@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.tree;
+
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Vector;
+
+/**
+ * {@link TreeNodeVector} whose children are loaded by the {@link ChildrenProvider} of its {@link TreeModel} the first time it's expanded.
+ * <p>
+ * Until then, if it has children it holds a single placeholder child (a row with empty values by default, see {@link #createPlaceholder()}),
+ * so it's not a leaf and the placeholder is the row shown while the children are loaded in background.
+ * The placeholder is created the first time the children are read, not in the constructor, so subclasses can use their fields to create it.
+ * The model can unload the children of a collapsed node to free memory, then the placeholder is back and they are loaded again in the next expansion.
+ */
+public class LazyTreeNode<E> extends TreeNodeVector<E> {
+
+	private static final long serialVersionUID = 5238017426437305186L;
+
+	static final int CHILDREN_NOT_LOADED = 0;
+	static final int CHILDREN_LOADING = 1;
+	static final int CHILDREN_LOADED = 2;
+
+	private int childrenState = CHILDREN_LOADED;
+	private TreeNodeVector<E> placeholder = null;
+	private boolean placeholderPending = false;
+
+	/**
+	 * @param hasChildren if false the node starts as a leaf with its children loaded,
+	 *        but children can still be added to it like in any other node
+	 */
+	public LazyTreeNode(E[] elements, boolean hasChildren) {
+		super(elements);
+		setHasChildrenToLoad(hasChildren);
+	}
+	public LazyTreeNode(Collection<? extends E> elements, boolean hasChildren) {
+		super(elements);
+		setHasChildrenToLoad(hasChildren);
+	}
+	public LazyTreeNode(E userObject, boolean hasChildren) {
+		super(userObject);
+		setHasChildrenToLoad(hasChildren);
+	}
+
+	@SafeVarargs
+	@SuppressWarnings("varargs")
+	public static <T> LazyTreeNode<T> newLazyNode(boolean hasChildren, T... elements) {
+		//Los elementos solo se copian a los valores del nodo
+		return new LazyTreeNode<T>(elements, hasChildren);
+	}
+
+	private void setHasChildrenToLoad(boolean hasChildren) {
+		if (hasChildren) {
+			placeholderPending = true;
+			childrenState = CHILDREN_NOT_LOADED;
+		}
+	}
+
+	/**
+	 * Adds the placeholder the first time the children are read if the node was created with children to load
+	 */
+	private void addPendingPlaceholder() {
+		if (placeholderPending) {
+			placeholderPending = false;
+			super.insertChild(getPlaceholderNode(), 0);
+		}
+	}
+
+	/**
+	 * Returns true if the children are in the node, either because they have been loaded or because it has no children to load
+	 */
+	public boolean isChildrenLoaded() {
+		return childrenState == CHILDREN_LOADED;
+	}
+
+	public boolean isLoadingChildren() {
+		return childrenState == CHILDREN_LOADING;
+	}
+
+	/**
+	 * Returns the child shown while the children are not loaded, or null if the children are loaded
+	 */
+	public TreeNodeVector<E> getPlaceholder() {
+		addPendingPlaceholder();
+		return isChildrenLoaded() ? null : placeholder;
+	}
+
+	/**
+	 * Creates the child shown until the children are loaded, by default a leaf with as many empty values as this node
+	 */
+	protected TreeNodeVector<E> createPlaceholder() {
+		TreeNodeVector<E> placeholder = new TreeNodeVector<E>(size());
+		placeholder.setSize(size());
+		placeholder.setAllowsChildren(false);
+		return placeholder;
+	}
+
+	int getChildrenState() {
+		return childrenState;
+	}
+	void setChildrenState(int childrenState) {
+		this.childrenState = childrenState;
+		//Si se cargan los hijos antes de leerlos ya no hace falta el placeholder
+		if (childrenState == CHILDREN_LOADED)
+			placeholderPending = false;
+	}
+
+	TreeNodeVector<E> getPlaceholderNode() {
+		if (placeholder == null)
+			placeholder = createPlaceholder();
+		return placeholder;
+	}
+
+	//
+	// Children, with the placeholder added on first access
+	//
+
+	public void insertChild(TreeNodeVector<E> newChild, int childIndex) {
+		addPendingPlaceholder();
+		super.insertChild(newChild, childIndex);
+	}
+
+	public TreeNodeVector<E> getChildAt(int index) {
+		addPendingPlaceholder();
+		return super.getChildAt(index);
+	}
+
+	public int getChildCount() {
+		addPendingPlaceholder();
+		return super.getChildCount();
+	}
+
+	public Enumeration<TreeNodeVector<E>> children() {
+		addPendingPlaceholder();
+		return super.children();
+	}
+
+	public <T extends TreeNodeVector<E>> Vector<T> getChildrenCopyVector() {
+		addPendingPlaceholder();
+		return super.getChildrenCopyVector();
+	}
+
+	public void moveChildren(int start, int end, int to) {
+		addPendingPlaceholder();
+		super.moveChildren(start, end, to);
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.tree;
+
+import java.io.Serializable;
+
+/**
+ * Index of the value (column of a table) to sort the nodes by and the direction of the sort
+ */
+public class SortKey implements Serializable {
+
+	private static final long serialVersionUID = 3871120475529614375L;
+
+	private final int index;
+	private final boolean useNaturalOrder;
+
+	public SortKey(int index, boolean useNaturalOrder) {
+		super();
+		this.index = index;
+		this.useNaturalOrder = useNaturalOrder;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public boolean useNaturalOrder() {
+		return useNaturalOrder;
+	}
+
+	public String toString() {
+		return index + (useNaturalOrder ? " ASC" : " DESC");
+	}
+}
@@ -21,9 +21,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 
+import linaje.logs.Console;
 import linaje.table.DataIndices;
 import linaje.utils.Lists;
 
@@ -57,6 +64,16 @@ public abstract class TreeModel<E> implements Serializable {
       * @see #setAsksAllowsChildren
       */
     protected boolean asksAllowsChildren;
+    
+    private boolean nodesIndexed = false;
+    private transient TreeNodesIndex<E> nodesIndex = null;
+    
+    private transient ChildrenProvider<E> childrenProvider = null;
+    private transient Executor childrenLoader = null;
+    private transient Executor childrenEventsExecutor = null;
+    private int maxCollapsedLoadedNodes = -1;
+    //Nodos lazy plegados con los hijos cargados, del que se plegó antes al último, por identidad ya que equals compara los valores de los nodos
+    private transient LinkedHashMap<NodeKey, LazyTreeNode<E>> collapsedLoadedNodes = null;
 
     /**
       * Creates a tree in which any node can have children.
@@ -113,6 +130,7 @@ public abstract class TreeModel<E> implements Serializable {
     public void setRoot(TreeNodeVector<E> root) {
     	TreeNodeVector<E> oldRoot = this.root;
         this.root = root;
+        invalidateNodesIndex();
         if (root == null && oldRoot != null) {
             fireTreeStructureChanged(this, null, null, null);
         }
@@ -121,6 +139,62 @@ public abstract class TreeModel<E> implements Serializable {
         }
     }
 
+    /**
+     * Replaces the nodes of the tree with the hierarchy built by {@link #buildTree(Iterator, int, int)} from the rows,
+     * firing a single structure changed event
+     */
+    public void loadTree(Iterator<? extends TreeNodeVector<E>> rows, int keyIndex, int parentKeyIndex) {
+    	loadTree(buildTree(rows, keyIndex, parentKeyIndex));
+    }
+    /**
+     * Moves the children of newRoot to the root, that keeps its data indices, firing a single structure changed event
+     */
+    public void loadTree(TreeNodeVector<E> newRoot) {
+    	getRoot().moveChildrenFrom(newRoot);
+    	nodeStructureChanged(getRoot());
+    }
+    
+    /**
+     * Builds the hierarchy of the rows in one pass, linking each row to the row whose value at keyIndex
+     * is the value of the row at parentKeyIndex. Rows with a null parent key or a parent not found are added to the root.
+     * <p>
+     * The children keep the order of the rows and, if several rows have the same key, the children are added to the first one.
+     * It doesn't use any model nor fire events, so the tree can be built out of the event thread and loaded later with {@link #setRoot(TreeNodeVector)}.
+     *
+     * @return a new root with the rows of first level as children
+     * @exception IllegalArgumentException if the keys of some rows make a cycle
+     */
+    public static <T> TreeNodeVector<T> buildTree(Iterator<? extends TreeNodeVector<T>> rows, int keyIndex, int parentKeyIndex) {
+    	
+    	TreeNodeVector<T> root = new TreeNodeVector<T>();
+    	List<TreeNodeVector<T>> nodes = Lists.newList();
+    	Map<Object, TreeNodeVector<T>> nodesByKey = new HashMap<Object, TreeNodeVector<T>>();
+    	
+    	while (rows.hasNext()) {
+    		TreeNodeVector<T> node = rows.next();
+    		nodes.add(node);
+    		Object key = getRowValue(node, keyIndex);
+    		if (key != null)
+    			nodesByKey.putIfAbsent(key, node);
+    	}
+    	
+    	//Enlazamos cuando ya tenemos todas las claves, ya que un hijo puede venir antes que su padre
+    	for (int i = 0; i < nodes.size(); i++) {
+    		TreeNodeVector<T> node = nodes.get(i);
+    		Object parentKey = getRowValue(node, parentKeyIndex);
+    		TreeNodeVector<T> parent = parentKey != null ? nodesByKey.get(parentKey) : null;
+    		if (parent == null || parent == node)
+    			parent = root;
+    		parent.addChild(node);
+    	}
+    	
+    	return root;
+    }
+    
+    private static Object getRowValue(TreeNodeVector<?> row, int index) {
+    	return index >= 0 && index < row.size() ? row.elementAt(index) : null;
+    }
+    
     /**
      * Returns the root of the tree.  Returns null only if the tree has
      * no nodes.
@@ -337,8 +411,11 @@ public abstract class TreeModel<E> implements Serializable {
 
 		if (parent != null) {
 
-			for (int i = 0; i < childIndexs.length; i++) {
-				parent.removeChild(childIndexs[i]);
+			//Eliminamos de mayor a menor índice para que no se desplacen los hijos que quedan por eliminar
+			int[] sortedChildIndexs = childIndexs.clone();
+			Arrays.sort(sortedChildIndexs);
+			for (int i = sortedChildIndexs.length - 1; i >= 0; i--) {
+				parent.removeChild(sortedChildIndexs[i]);
 			}
 			nodesWereRemoved(parent, childIndexs, nodeChilds);
 		}
@@ -376,6 +453,7 @@ public abstract class TreeModel<E> implements Serializable {
      */
     public void reload(TreeNodeVector<E> node) {
         if(node != null) {
+        	invalidateNodesIndex();
             fireTreeStructureChanged(this, getPathToRoot(node), null, null);
         }
     }
@@ -393,6 +471,8 @@ public abstract class TreeModel<E> implements Serializable {
 
             for(int counter = 0; counter < cCount; counter++)
                 newChildren[counter] = node.getChildAt(childIndices[counter]);
+            if (nodesIndex != null)
+            	nodesIndex.nodesInserted(newChildren);
             fireTreeNodesInserted(this, getPathToRoot(node), childIndices, newChildren);
         }
     }
@@ -405,6 +485,8 @@ public abstract class TreeModel<E> implements Serializable {
       */
     public void nodesWereRemoved(TreeNodeVector<E> node, int[] childIndices, TreeNodeVector<E>[] removedChildren) {
         if(node != null && childIndices != null) {
+        	if (nodesIndex != null)
+            	nodesIndex.nodesRemoved(removedChildren);
             fireTreeNodesRemoved(this, getPathToRoot(node), childIndices, removedChildren);
         }
     }
@@ -424,10 +506,13 @@ public abstract class TreeModel<E> implements Serializable {
 
                     for(int counter = 0; counter < cCount; counter++)
                         cChildren[counter] = node.getChildAt(childIndices[counter]);
+                    if (nodesIndex != null)
+                    	nodesIndex.nodesChanged(cChildren);
                     fireTreeNodesChanged(this, getPathToRoot(node), childIndices, cChildren);
                 }
             }
             else if (node == getRoot()) {
+            	invalidateNodesIndex();
                 fireTreeNodesChanged(this, getPathToRoot(node), null, null);
             }
         }
@@ -440,6 +525,7 @@ public abstract class TreeModel<E> implements Serializable {
       */
     public void nodeStructureChanged(TreeNodeVector<E> node) {
         if(node != null) {
+        	invalidateNodesIndex();
            fireTreeStructureChanged(this, getPathToRoot(node), null, null);
         }
     }
@@ -544,6 +630,20 @@ public abstract class TreeModel<E> implements Serializable {
 	    	nodeStructureChanged(parent);
     	}
     }
+    /**
+     * Sorts the tree by several keys, using each key when the previous ones are equal
+     * 
+     * @see TreeSorter
+     */
+    public void sortTree(SortKey... sortKeys) {
+    	sortChildren(getRoot(), sortKeys);
+    }
+    public void sortChildren(TreeNodeVector<E> parent, SortKey... sortKeys) {
+    	if (parent.getChildCount() > 0 && sortKeys != null && sortKeys.length > 0) {
+	    	parent.sortChildren(sortKeys);
+	    	nodeStructureChanged(parent);
+    	}
+    }
     
     public boolean isSorted() {
     	return getRoot().areChildrenSorted();
@@ -554,10 +654,285 @@ public abstract class TreeModel<E> implements Serializable {
     public int getIndexSort() {
     	return getRoot().getIndexSort();
     }
+    public SortKey[] getSortKeys() {
+    	return getRoot().getSortKeys();
+    }
     public DataIndices getDataIndices() {
     	return getRoot().getDataIndices();
     }
     
+    //
+    // Find nodes
+    //
+    
+    /**
+     * Returns the first node in preorder whose user object (the value of the code column) is userObject.
+     * It's searched in the index of nodes if {@link #isNodesIndexed()}, otherwise the tree is walked
+     */
+    public TreeNodeVector<E> findNode(E userObject) {
+    	if (isNodesIndexed() && userObject != null && getRoot() != null)
+    		return getNodesIndex().findNode(getRoot(), userObject);
+    	return getRoot() != null ? getRoot().findNode(userObject) : null;
+    }
+    /**
+     * Same as {@link #findNode(Object)} comparing the user objects with equals
+     */
+    public TreeNodeVector<E> findNodeSimilar(E userObject) {
+    	if (isNodesIndexed() && userObject != null && getRoot() != null)
+    		return getNodesIndex().findNodeSimilar(getRoot(), userObject);
+    	return getRoot() != null ? getRoot().findNodeSimilar(userObject) : null;
+    }
+    
+    /**
+     * When it's true, the nodes are indexed by their user object, so finding them doesn't walk the tree.
+     * The index is updated with the methods of the model that fire events, changes made directly to the nodes
+     * must be notified with them (or with {@link #invalidateNodesIndex()})
+     */
+    public boolean isNodesIndexed() {
+    	return nodesIndexed;
+    }
+    public void setNodesIndexed(boolean nodesIndexed) {
+    	this.nodesIndexed = nodesIndexed;
+    	if (!nodesIndexed)
+    		nodesIndex = null;
+    }
+    
+    /**
+     * Forces the index of nodes to be rebuilt in the next search
+     */
+    public void invalidateNodesIndex() {
+    	if (nodesIndex != null)
+    		nodesIndex.invalidate();
+    }
+    
+    /**
+     * Updates the index of nodes after changing the values of the node without firing events
+     */
+    protected void updateNodesIndex(TreeNodeVector<E> node) {
+    	if (nodesIndex != null) {
+    		@SuppressWarnings("unchecked")
+			TreeNodeVector<E>[] nodes = (TreeNodeVector<E>[]) new TreeNodeVector<?>[]{node};
+    		nodesIndex.nodesChanged(nodes);
+    	}
+    }
+    
+    private TreeNodesIndex<E> getNodesIndex() {
+    	if (nodesIndex == null)
+    		nodesIndex = new TreeNodesIndex<E>();
+    	return nodesIndex;
+    }
+    
+    //
+    // Lazy children
+    //
+    
+    public ChildrenProvider<E> getChildrenProvider() {
+    	return childrenProvider;
+    }
+    /**
+     * Sets the provider of the children of the {@link LazyTreeNode}s of the tree, without it lazy nodes keep their placeholder
+     */
+    public void setChildrenProvider(ChildrenProvider<E> childrenProvider) {
+    	this.childrenProvider = childrenProvider;
+    }
+    
+    /**
+     * Loads the children of lazy nodes in background with loader (a thread pool...) and adds them to the tree with eventsExecutor
+     * (the thread that modifies the tree, like SwingUtilities::invokeLater). While they are loaded the placeholder of the node is shown.
+     * If loader is null the children are loaded in the thread that expands the node
+     */
+    public void setChildrenLoader(Executor loader, Executor eventsExecutor) {
+    	this.childrenLoader = loader;
+    	this.childrenEventsExecutor = eventsExecutor;
+    }
+    public Executor getChildrenLoader() {
+    	return childrenLoader;
+    }
+    
+    /**
+     * Maximum number of collapsed lazy nodes that keep their children loaded. When there are more, the children of the node collapsed
+     * before the others are unloaded until it's expanded again. -1 (by default) never unloads children
+     */
+    public int getMaxCollapsedLoadedNodes() {
+    	return maxCollapsedLoadedNodes;
+    }
+    public void setMaxCollapsedLoadedNodes(int maxCollapsedLoadedNodes) {
+    	this.maxCollapsedLoadedNodes = maxCollapsedLoadedNodes;
+    	if (maxCollapsedLoadedNodes < 0)
+    		collapsedLoadedNodes = null;
+    	else
+    		evictCollapsedNodes();
+    }
+    
+    /**
+     * Loads the children of the node if it's a lazy node whose children are not loaded yet, and stops tracking it to unload them.
+     * It's called when the node is expanded
+     */
+    public void nodeExpanded(TreeNodeVector<E> node) {
+    	if (node instanceof LazyTreeNode) {
+    		LazyTreeNode<E> lazyNode = (LazyTreeNode<E>) node;
+    		removeCollapsedNode(lazyNode);
+    		if (lazyNode.getChildrenState() == LazyTreeNode.CHILDREN_NOT_LOADED)
+    			loadChildren(lazyNode);
+    	}
+    }
+    
+    /**
+     * Tracks the node, if it's a lazy node, to unload its children when there are more than {@link #getMaxCollapsedLoadedNodes()} collapsed nodes.
+     * It's called when the node is collapsed
+     */
+    public void nodeCollapsed(TreeNodeVector<E> node) {
+    	if (node instanceof LazyTreeNode && maxCollapsedLoadedNodes >= 0) {
+    		LazyTreeNode<E> lazyNode = (LazyTreeNode<E>) node;
+    		removeCollapsedNode(lazyNode);
+    		if (lazyNode.getChildrenState() != LazyTreeNode.CHILDREN_NOT_LOADED && getChildrenProvider() != null) {
+    			getCollapsedLoadedNodes().put(new NodeKey(lazyNode), lazyNode);
+    			evictCollapsedNodes();
+    		}
+    	}
+    }
+    
+    /**
+     * Replaces the children of the lazy node with its placeholder, so they will be loaded again in the next expansion
+     */
+    public void unloadChildren(LazyTreeNode<E> node) {
+    	
+    	removeCollapsedNode(node);
+    	//Si se están cargando, el placeholder sigue en el nodo y basta con descartar la carga
+    	boolean childrenLoaded = node.getChildrenState() == LazyTreeNode.CHILDREN_LOADED;
+    	node.setChildrenState(LazyTreeNode.CHILDREN_NOT_LOADED);
+    	if (childrenLoaded) {
+    		int childCount = node.getChildCount();
+    		if (childCount > 0) {
+    			int[] childIndices = new int[childCount];
+    			for (int i = 0; i < childCount; i++) {
+    				childIndices[i] = i;
+    				//Los nodos lazy de debajo salen del árbol, así que dejan de contar entre los plegados
+    				removeCollapsedNodes(node.getChildAt(i));
+    			}
+    			removeNodesFrom(childIndices, node);
+    		}
+    		insertNodeInto(node.getPlaceholderNode(), node, 0);
+    	}
+    }
+    
+    private void loadChildren(final LazyTreeNode<E> node) {
+    	
+    	final ChildrenProvider<E> childrenProvider = getChildrenProvider();
+    	if (childrenProvider == null)
+    		return;
+    	
+    	node.setChildrenState(LazyTreeNode.CHILDREN_LOADING);
+    	final Executor loader = childrenLoader;
+    	final Executor eventsExecutor = childrenEventsExecutor;
+    	if (loader == null) {
+    		setLoadedChildren(node, loadChildren(childrenProvider, node), true);
+    	}
+    	else {
+    		loader.execute(() -> {
+    			final List<? extends TreeNodeVector<E>> children = loadChildren(childrenProvider, node);
+    			Runnable setChildren = () -> setLoadedChildren(node, children, false);
+    			if (eventsExecutor != null)
+    				eventsExecutor.execute(setChildren);
+    			else
+    				setChildren.run();
+    		});
+    	}
+    }
+    
+    private List<? extends TreeNodeVector<E>> loadChildren(ChildrenProvider<E> childrenProvider, LazyTreeNode<E> node) {
+    	try {
+			List<? extends TreeNodeVector<E>> children = childrenProvider.loadChildren(node);
+			return children != null ? children : Lists.<TreeNodeVector<E>>newList();
+		}
+    	catch (Exception ex) {
+			Console.printException(ex);
+			return null;
+		}
+    }
+    
+    /**
+     * @param expanding true if the children are loaded by the expansion of the node, that isn't marked as expanded yet
+     */
+    private void setLoadedChildren(LazyTreeNode<E> node, List<? extends TreeNodeVector<E>> children, boolean expanding) {
+    	
+    	//Si se han descargado los hijos mientras se cargaban, descartamos la carga
+    	if (node.getChildrenState() != LazyTreeNode.CHILDREN_LOADING)
+    		return;
+    	
+    	if (children == null) {
+    		//Ha fallado la carga, se volverá a intentar al expandirlo de nuevo
+    		node.setChildrenState(LazyTreeNode.CHILDREN_NOT_LOADED);
+    	}
+    	else {
+    		//Con eventos de nodos en vez de estructura, para que la tabla quite la fila del placeholder y se actualice el índice de nodos
+    		node.setChildrenState(LazyTreeNode.CHILDREN_LOADED);
+    		TreeNodeVector<E> placeholder = node.getPlaceholderNode();
+    		if (placeholder.getParent() == node)
+    			removeNodeFromParent(placeholder);
+    		if (!children.isEmpty())
+    			addNodesInto(children, node);
+	    	if (!expanding && !node.isExpanded())
+	    		nodeCollapsed(node);
+    	}
+    }
+    
+    private void evictCollapsedNodes() {
+    	if (collapsedLoadedNodes != null) {
+	    	while (collapsedLoadedNodes.size() > maxCollapsedLoadedNodes) {
+	    		Iterator<LazyTreeNode<E>> iterator = collapsedLoadedNodes.values().iterator();
+	    		LazyTreeNode<E> node = iterator.next();
+	    		iterator.remove();
+	    		//Sólo descargamos los nodos que siguen plegados en este árbol
+	    		if (!node.isExpanded() && node.getRoot() == getRoot())
+	    			unloadChildren(node);
+	    	}
+    	}
+    }
+    
+    private void removeCollapsedNode(LazyTreeNode<E> node) {
+    	if (collapsedLoadedNodes != null)
+    		collapsedLoadedNodes.remove(new NodeKey(node));
+    }
+    
+    /**
+     * Stops tracking the lazy nodes of the subtree of node
+     */
+    private void removeCollapsedNodes(TreeNodeVector<E> node) {
+    	if (collapsedLoadedNodes != null && !collapsedLoadedNodes.isEmpty()) {
+    		if (node instanceof LazyTreeNode)
+    			collapsedLoadedNodes.remove(new NodeKey(node));
+    		for (int i = 0; i < node.getChildCount(); i++)
+    			removeCollapsedNodes(node.getChildAt(i));
+    	}
+    }
+    
+    private LinkedHashMap<NodeKey, LazyTreeNode<E>> getCollapsedLoadedNodes() {
+    	if (collapsedLoadedNodes == null)
+    		collapsedLoadedNodes = new LinkedHashMap<NodeKey, LazyTreeNode<E>>();
+    	return collapsedLoadedNodes;
+    }
+    
+    /**
+     * Key of a node in a hash map by identity
+     */
+    private static final class NodeKey {
+    	
+    	private final TreeNodeVector<?> node;
+    	
+    	private NodeKey(TreeNodeVector<?> node) {
+    		this.node = node;
+    	}
+    	
+    	public int hashCode() {
+    		return System.identityHashCode(node);
+    	}
+    	
+    	public boolean equals(Object obj) {
+    		return obj instanceof NodeKey && ((NodeKey) obj).node == node;
+    	}
+    }
+    
     protected abstract void fireTreeNodesChanged(Object source, TreeNodeVector<E>[] path, int[] childIndices, TreeNodeVector<E>[] children);
     protected abstract void fireTreeNodesInserted(Object source, TreeNodeVector<E>[] path, int[] childIndices, TreeNodeVector<E>[] children);
     protected abstract void fireTreeNodesRemoved(Object source, TreeNodeVector<E>[] path, int[] childIndices, TreeNodeVector<E>[] children);
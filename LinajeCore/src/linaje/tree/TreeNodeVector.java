@@ -67,6 +67,7 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 	 protected Vector<TreeNodeVector<E>> childrenOriginalSort;
 	 private boolean useNaturalOrderSort = true;
 	 private int indexSort = -1;
+	 private SortKey[] sortKeys = null;
 	 	
 	 /** optional user object */
 	 //transient protected E userObject;
@@ -221,34 +222,34 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 	
 	private static <T> TreeNodeVector<T> findNode(TreeNodeVector<T> parentNode, Object userObject, boolean includeParentInSearch) {
 		
-		try {
-			
-			if (includeParentInSearch) {
-				if (parentNode.getUserObject() == userObject)
-					return parentNode;
-			}
-			
-			// Dado el nodo "padre", busca entre sus hermanos e hijos y si no encuentra nada busca en el siguiente nivel
-			Enumeration<TreeNodeVector<T>> eBrothers = parentNode.children();
-			
-			while (eBrothers.hasMoreElements()) {
-				TreeNodeVector<T> nodo = eBrothers.nextElement();
-				if (nodo.getUserObject() == userObject)
-					return nodo;
-			}
-			
-			// No he encontrado el nodo entre los hermanos, buscamos en los hijos
-			Enumeration<TreeNodeVector<T>> eChilds = parentNode.children();
-			while (eChilds.hasMoreElements()) {
-				TreeNodeVector<T> nodo = eChilds.nextElement();
+		if (parentNode == null)
+			return null;
+		
+		if (includeParentInSearch) {
+			if (parentNode.getUserObject() == userObject)
+				return parentNode;
+		}
+		
+		int childCount = parentNode.getChildCount();
+		if (childCount == 0)
+			return null;
+		
+		// Dado el nodo "padre", busca entre sus hermanos e hijos y si no encuentra nada busca en el siguiente nivel
+		for (int i = 0; i < childCount; i++) {
+			TreeNodeVector<T> nodo = parentNode.getChildAt(i);
+			if (nodo.getUserObject() == userObject)
+				return nodo;
+		}
+		
+		// No he encontrado el nodo entre los hermanos, buscamos en los hijos que tengan hijos
+		for (int i = 0; i < childCount; i++) {
+			TreeNodeVector<T> nodo = parentNode.getChildAt(i);
+			if (nodo.getChildCount() > 0) {
 				TreeNodeVector<T> nodeFound = findNode(nodo, userObject, false);
 				if (nodeFound != null)
 					return nodeFound;
 			}
 		}
-		catch (Exception ex) {
-			return null;
-		}
 		
 		return null;
 	}
@@ -292,13 +293,20 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 	         }
 	         newChild.setParent(this);
 	         if (children == null) {
-	             children = new Vector<TreeNodeVector<E>>();
+	             children = newChildrenVector();
 	         }
 	         children.insertElementAt(newChild, childIndex);
 	         if (childrenOriginalSort != null)
 		    	 childrenOriginalSort.insertElementAt(newChild, childIndex);
 	 }
 	
+	 /**
+	  * Creates the vector that holds the children of this node, so subclasses can change how it's accessed
+	  */
+	 protected Vector<TreeNodeVector<E>> newChildrenVector() {
+		 return new Vector<TreeNodeVector<E>>();
+	 }
+	
 	 /**
 	  * Removes the child at the specified index from this node's children
 	  * and sets that node's parent to null. The child node to remove
@@ -408,7 +416,12 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 	     if (!isNodeChild(aChild)) {
 	         return -1;
 	     }
-	     return children.indexOf(aChild);        // linear search
+	     //Buscamos por identidad, ya que equals compara los valores y podría devolver un hermano con los mismos valores
+	     for (int i = 0; i < children.size(); i++) {
+	    	 if (children.elementAt(i) == aChild)
+	    		 return i;
+	     }
+	     return -1;
 	 }
 	 
 	/**
@@ -567,6 +580,55 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 	     }
 	 }
 	
+	 /**
+	  * Replaces the children of this node with the children of <code>node</code>,
+	  * leaving it without children. Unlike adding them one by one, the children are copied
+	  * in a single pass without searching them in their old parent, into the vector of
+	  * {@link #newChildrenVector()} of this node. The original sort of the children is discarded.
+	  *
+	  * @param   node    node whose children are moved to this node
+	  */
+	 public void moveChildrenFrom(TreeNodeVector<E> node) {
+		 
+	     if (node == null || node == this)
+	    	 return;
+	     
+	     for (int i = 0; i < getChildCount(); i++)
+	    	 getChildAt(i).setParent(null);
+	     
+	     //Copiamos los hijos en lugar de quedarnos con el vector de node, que puede ser de otro tipo de nodo
+	     if (node.getChildCount() == 0) {
+	    	 children = null;
+	     }
+	     else {
+	    	 if (children == null)
+	    		 children = newChildrenVector();
+	    	 else
+	    		 children.removeAllElements();
+	    	 children.addAll(node.children);
+	     }
+	     node.children = null;
+	     node.childrenOriginalSort = null;
+	     childrenOriginalSort = null;
+	     setIndexSort(-1);
+	     
+	     for (int i = 0; i < getChildCount(); i++)
+	    	 getChildAt(i).setParent(this);
+	 }
+	
+	 /**
+	  * Moves the children from the inclusive range <code>start</code> to <code>end</code>
+	  * so the child at <code>start</code> ends at index <code>to</code>, without removing them from this node
+	  *
+	  * @exception       ArrayIndexOutOfBoundsException  if any of the children would be moved out of range
+	  * @see Lists#moveElements(List, int, int, int)
+	  */
+	 public void moveChildren(int start, int end, int to) {
+		 if (children == null)
+			 throw new ArrayIndexOutOfBoundsException("node has no children");
+		 Lists.moveElements(children, start, end, to);
+	 }
+
 	 /**
 	  * Removes <code>newChild</code> from its parent and makes it a child of
 	  * this node by adding it to the end of this node's child array.
@@ -1445,6 +1507,7 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 			children.addAll(childrenOriginalSort);
 			childrenOriginalSort = null;
 			setIndexSort(-1);
+			sortKeys = null;
 			
 			for (int i = 0; i < children.size(); i++) {
 				TreeNodeVector<E> child = children.elementAt(i);
@@ -1454,26 +1517,27 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 	}
 	
 	public void sortChildren(boolean useNaturalOrder, int index) {
-		if (children != null && !children.isEmpty()) {
-			
-			if (childrenOriginalSort == null) {
-				childrenOriginalSort = new Vector<TreeNodeVector<E>>();
-				childrenOriginalSort.addAll(children);
-			}
-			
-			if (index == -1 || index > children.firstElement().size())
-				index = 0;
-			
-			setNaturalOrderSort(useNaturalOrder);
-			setIndexSort(index);
-			
-			Lists.sortRows(children, useNaturalOrder, index);
-			
-			for (int i = 0; i < children.size(); i++) {
-				TreeNodeVector<E> child = children.elementAt(i);
-				child.sortChildren(useNaturalOrder, index);
-			}
-		}
+		sortChildren(new SortKey(index, useNaturalOrder));
+	}
+	/**
+	 * Sorts the children and their children by the values at the indices of the keys, using each key when the previous ones are equal
+	 * 
+	 * @see TreeSorter
+	 */
+	public void sortChildren(SortKey... sortKeys) {
+		TreeSorter.sortChildren(this, sortKeys, true);
+	}
+	 
+	/**
+	 * Keys of the last sort of the children, or null if they are not sorted
+	 */
+	public SortKey[] getSortKeys() {
+		return sortKeys != null ? sortKeys.clone() : null;
+	}
+	void setSortKeys(SortKey[] sortKeys, int indexSort) {
+		this.sortKeys = sortKeys.clone();
+		setNaturalOrderSort(sortKeys[0].useNaturalOrder());
+		setIndexSort(indexSort);
 	}
 	 
 	public boolean areChildrenSorted() {
@@ -1539,42 +1603,40 @@ public class TreeNodeVector<E> extends Vector<E> implements Cloneable, Serializa
 		}
 	}
 	
+	/**
+	 * Returns the first node in preorder of this subtree whose user object is userObject
+	 */
 	public TreeNodeVector<E> findNode(E userObject) {
 		
-		try {
-			if (getUserObject() == userObject)
-				return this;
-			
-			for (int i = 0; i < children.size(); i++) {
-				TreeNodeVector<E> childNode = children.get(i);
-				TreeNodeVector<E> nodeFound = childNode.findNode(userObject);
-				if (nodeFound != null)
-					return nodeFound;
-			}
-			return null;
-		}
-		catch (Exception ex) {
-			return null;
+		if (getUserObject() == userObject)
+			return this;
+		
+		for (int i = 0; i < getChildCount(); i++) {
+			TreeNodeVector<E> childNode = children.get(i);
+			TreeNodeVector<E> nodeFound = childNode.findNode(userObject);
+			if (nodeFound != null)
+				return nodeFound;
 		}
+		return null;
 	}
 	
+	/**
+	 * Returns the first node in preorder of this subtree whose user object equals userObject.
+	 * Nodes without user object (like the root of a table) are skipped
+	 */
 	public TreeNodeVector<E> findNodeSimilar(E userObject) {
 		
-		try {
-			if (getUserObject().equals(userObject))
-				return this;
-			
-			for (int i = 0; i < children.size(); i++) {
-				TreeNodeVector<E> childNode = children.get(i);
-				TreeNodeVector<E> nodeFound = childNode.findNodeSimilar(userObject);
-				if (nodeFound != null)
-					return nodeFound;
-			}
-			return null;
-		}
-		catch (Exception ex) {
-			return null;
+		E nodeUserObject = getUserObject();
+		if (nodeUserObject != null && nodeUserObject.equals(userObject))
+			return this;
+		
+		for (int i = 0; i < getChildCount(); i++) {
+			TreeNodeVector<E> childNode = children.get(i);
+			TreeNodeVector<E> nodeFound = childNode.findNodeSimilar(userObject);
+			if (nodeFound != null)
+				return nodeFound;
 		}
+		return null;
 	}
 
 	private final class PreorderEnumeration implements Enumeration<TreeNodeVector<E>> {
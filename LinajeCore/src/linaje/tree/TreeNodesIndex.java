@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.tree;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Index of the nodes of a {@link TreeModel} by their user object (the value of the code column of the {@link linaje.table.DataIndices}),
+ * by identity and by equals, so {@link TreeModel#findNode(Object)} and {@link TreeModel#findNodeSimilar(Object)} don't walk the tree.
+ * <p>
+ * It returns the same node as {@link TreeNodeVector#findNode(Object)}, the first one in preorder: while there are no repeated user objects
+ * it's updated with each insertion, removal or change of nodes, otherwise it's rebuilt in the next search after a change that may alter which node is the first.
+ * It's also rebuilt when the code index of the root changes.
+ */
+class TreeNodesIndex<E> {
+
+	private Map<Object, TreeNodeVector<E>> nodesByUserObject = null;
+	private Map<Object, TreeNodeVector<E>> nodesBySimilarUserObject = null;
+	//User object de cada nodo cuando se indexó, para poder quitarlo aunque haya cambiado
+	private Map<TreeNodeVector<E>, Object> indexedUserObjects = null;
+	private boolean valid = false;
+	private boolean repeatedUserObjects = false;
+	private int indexedCodeIndex = -1;
+
+	TreeNodeVector<E> findNode(TreeNodeVector<E> root, Object userObject) {
+		checkIndex(root);
+		return getNodesByUserObject().get(userObject);
+	}
+
+	TreeNodeVector<E> findNodeSimilar(TreeNodeVector<E> root, Object userObject) {
+		checkIndex(root);
+		return getNodesBySimilarUserObject().get(userObject);
+	}
+
+	void nodesInserted(TreeNodeVector<E>[] nodes) {
+		if (valid && nodes != null) {
+			for (int i = 0; i < nodes.length && valid; i++) {
+				Enumeration<TreeNodeVector<E>> subtree = nodes[i].preorderEnumeration();
+				while (subtree.hasMoreElements() && valid) {
+					//Sin reconstruir no sabemos cuál de los nodos repetidos va antes en preorden
+					if (addNode(subtree.nextElement()))
+						valid = false;
+				}
+			}
+		}
+	}
+
+	void nodesRemoved(TreeNodeVector<E>[] nodes) {
+		if (valid && nodes != null) {
+			for (int i = 0; i < nodes.length && valid; i++) {
+				Enumeration<TreeNodeVector<E>> subtree = nodes[i].preorderEnumeration();
+				while (subtree.hasMoreElements() && valid)
+					removeNode(subtree.nextElement());
+			}
+		}
+	}
+
+	void nodesChanged(TreeNodeVector<E>[] nodes) {
+		if (valid && nodes != null) {
+			for (int i = 0; i < nodes.length && valid; i++) {
+				TreeNodeVector<E> node = nodes[i];
+				if (getIndexedUserObjects().get(node) != node.getUserObject()) {
+					removeNode(node);
+					if (addNode(node))
+						valid = false;
+				}
+			}
+		}
+	}
+
+	void invalidate() {
+		valid = false;
+	}
+
+	private void checkIndex(TreeNodeVector<E> root) {
+
+		int codeIndex = root.getDataIndices().getCodeIndex();
+		if (!valid || codeIndex != indexedCodeIndex) {
+
+			getNodesByUserObject().clear();
+			getNodesBySimilarUserObject().clear();
+			getIndexedUserObjects().clear();
+			repeatedUserObjects = false;
+			valid = true;
+			indexedCodeIndex = codeIndex;
+
+			//Recorremos en preorden para quedarnos con el primer nodo de cada user object, igual que TreeNodeVector.findNode
+			Enumeration<TreeNodeVector<E>> nodes = root.preorderEnumeration();
+			while (nodes.hasMoreElements())
+				addNode(nodes.nextElement());
+		}
+	}
+
+	/**
+	 * Indexes the node if its user object is not indexed yet and returns if it's repeated
+	 */
+	private boolean addNode(TreeNodeVector<E> node) {
+
+		Object userObject = node.getUserObject();
+		if (userObject == null)
+			return false;
+
+		getIndexedUserObjects().put(node, userObject);
+		TreeNodeVector<E> previousNode = getNodesByUserObject().putIfAbsent(userObject, node);
+		TreeNodeVector<E> previousSimilarNode = getNodesBySimilarUserObject().putIfAbsent(userObject, node);
+
+		boolean repeated = (previousNode != null && previousNode != node) || (previousSimilarNode != null && previousSimilarNode != node);
+		if (repeated)
+			repeatedUserObjects = true;
+
+		return repeated;
+	}
+
+	private void removeNode(TreeNodeVector<E> node) {
+
+		Object userObject = getIndexedUserObjects().remove(node);
+		if (userObject == null)
+			return;
+
+		boolean indexed = false;
+		if (getNodesByUserObject().get(userObject) == node) {
+			getNodesByUserObject().remove(userObject);
+			indexed = true;
+		}
+		if (getNodesBySimilarUserObject().get(userObject) == node) {
+			getNodesBySimilarUserObject().remove(userObject);
+			indexed = true;
+		}
+
+		//Si hay repetidos, puede que otro nodo con el mismo user object tenga que ocupar su lugar
+		if (indexed && repeatedUserObjects)
+			valid = false;
+	}
+
+	private Map<Object, TreeNodeVector<E>> getNodesByUserObject() {
+		if (nodesByUserObject == null)
+			nodesByUserObject = new IdentityHashMap<>();
+		return nodesByUserObject;
+	}
+
+	private Map<Object, TreeNodeVector<E>> getNodesBySimilarUserObject() {
+		if (nodesBySimilarUserObject == null)
+			nodesBySimilarUserObject = new HashMap<>();
+		return nodesBySimilarUserObject;
+	}
+
+	private Map<TreeNodeVector<E>, Object> getIndexedUserObjects() {
+		if (indexedUserObjects == null)
+			indexedUserObjects = new IdentityHashMap<>();
+		return indexedUserObjects;
+	}
+}
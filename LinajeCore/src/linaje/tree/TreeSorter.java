@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.tree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import linaje.utils.Lists;
+import linaje.utils.Utils;
+
+/**
+ * Sorts the children of the nodes of a tree by several {@link SortKey}s.
+ * <p>
+ * The values of the keys are read once per node before sorting (instead of once per comparison)
+ * and compared with {@link Utils#compare(Object, Object)} like {@link Lists#getComparatorList(boolean, int)}.
+ * Each group of siblings is independent, so when the tree has more than {@link #PARALLEL_THRESHOLD} nodes to sort
+ * the groups are sorted in parallel on the common {@link ForkJoinPool}.
+ */
+public class TreeSorter {
+
+	public static final int PARALLEL_THRESHOLD = 10000;
+	//Nodos por tarea a partir de los cuales no dividimos más el trabajo
+	private static final int TASK_NODES = 2000;
+
+	/**
+	 * Sorts the children of parent by the keys, and the children of its children if recursive
+	 */
+	public static <E> void sortChildren(TreeNodeVector<E> parent, SortKey[] sortKeys, boolean recursive) {
+
+		if (sortKeys == null || sortKeys.length == 0)
+			return;
+
+		List<TreeNodeVector<E>> parents = Lists.newList();
+		int nodesCount = addParents(parent, recursive, parents);
+
+		if (nodesCount > PARALLEL_THRESHOLD && parents.size() > 1)
+			ForkJoinPool.commonPool().invoke(new SortTask<E>(parents, 0, parents.size(), sortKeys));
+		else
+			sortParents(parents, 0, parents.size(), sortKeys);
+	}
+
+	private static <E> int addParents(TreeNodeVector<E> node, boolean recursive, List<TreeNodeVector<E>> parents) {
+
+		int nodesCount = 0;
+		//Recorremos sin recursividad para no depender de la profundidad del árbol
+		List<TreeNodeVector<E>> pendingNodes = Lists.newList();
+		pendingNodes.add(node);
+		while (!pendingNodes.isEmpty()) {
+
+			TreeNodeVector<E> pendingNode = pendingNodes.remove(pendingNodes.size() - 1);
+			int childCount = pendingNode.getChildCount();
+			if (childCount > 0) {
+				parents.add(pendingNode);
+				nodesCount += childCount;
+				if (recursive) {
+					for (int i = 0; i < childCount; i++) {
+						TreeNodeVector<E> child = pendingNode.getChildAt(i);
+						if (child.getChildCount() > 0)
+							pendingNodes.add(child);
+					}
+				}
+			}
+		}
+		return nodesCount;
+	}
+
+	private static <E> void sortParents(List<TreeNodeVector<E>> parents, int from, int to, SortKey[] sortKeys) {
+		for (int i = from; i < to; i++)
+			sortGroup(parents.get(i), sortKeys);
+	}
+
+	private static <E> void sortGroup(TreeNodeVector<E> parent, SortKey[] sortKeys) {
+
+		Vector<TreeNodeVector<E>> children = parent.children;
+		int childCount = children.size();
+		int keysCount = sortKeys.length;
+
+		//Igual que en TreeNodeVector.sortChildren, un índice que no existe en el primer hijo ordena por el primer valor
+		int firstChildSize = children.firstElement().size();
+		int[] indices = new int[keysCount];
+		boolean[] naturalOrders = new boolean[keysCount];
+		for (int k = 0; k < keysCount; k++) {
+			int index = sortKeys[k].getIndex();
+			indices[k] = index == -1 || index > firstChildSize ? 0 : index;
+			naturalOrders[k] = sortKeys[k].useNaturalOrder();
+		}
+
+		//Leemos los valores de cada nodo una sola vez
+		SortEntry<E>[] entries = newEntries(childCount);
+		for (int i = 0; i < childCount; i++) {
+			TreeNodeVector<E> child = children.elementAt(i);
+			Object[] values = new Object[keysCount];
+			for (int k = 0; k < keysCount; k++)
+				values[k] = indices[k] < child.size() ? child.elementAt(indices[k]) : null;
+			entries[i] = new SortEntry<E>(child, values);
+		}
+
+		Arrays.sort(entries, new EntriesComparator(naturalOrders));
+
+		if (parent.childrenOriginalSort == null)
+			parent.childrenOriginalSort = new Vector<TreeNodeVector<E>>(children);
+		for (int i = 0; i < childCount; i++)
+			children.setElementAt(entries[i].node, i);
+
+		parent.setSortKeys(sortKeys, indices[0]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E> SortEntry<E>[] newEntries(int size) {
+		return (SortEntry<E>[]) new SortEntry<?>[size];
+	}
+
+	private static final class SortEntry<E> {
+
+		private final TreeNodeVector<E> node;
+		private final Object[] values;
+
+		private SortEntry(TreeNodeVector<E> node, Object[] values) {
+			this.node = node;
+			this.values = values;
+		}
+	}
+
+	private static final class EntriesComparator implements Comparator<SortEntry<?>> {
+
+		private final boolean[] naturalOrders;
+
+		private EntriesComparator(boolean[] naturalOrders) {
+			this.naturalOrders = naturalOrders;
+		}
+
+		public int compare(SortEntry<?> entry1, SortEntry<?> entry2) {
+
+			for (int k = 0; k < naturalOrders.length; k++) {
+				int result = compareValues(entry1.values[k], entry2.values[k], naturalOrders[k]);
+				if (result != 0)
+					return result;
+			}
+			return 0;
+		}
+
+		private static int compareValues(Object value1, Object value2, boolean useNaturalOrder) {
+
+			//Utils.compare no devuelve 0 con dos nulls y el orden dejaría de ser consistente
+			if (value1 == value2)
+				return 0;
+
+			try {
+				return useNaturalOrder ? Utils.compare(value1, value2) : Utils.compare(value2, value1);
+			}
+			catch (RuntimeException ex) {
+				return 0;
+			}
+		}
+	}
+
+	private static final class SortTask<E> extends RecursiveAction {
+
+		private static final long serialVersionUID = -6021446216386389541L;
+
+		private final List<TreeNodeVector<E>> parents;
+		private final int from;
+		private final int to;
+		private final SortKey[] sortKeys;
+
+		private SortTask(List<TreeNodeVector<E>> parents, int from, int to, SortKey[] sortKeys) {
+			this.parents = parents;
+			this.from = from;
+			this.to = to;
+			this.sortKeys = sortKeys;
+		}
+
+		protected void compute() {
+
+			int nodesCount = 0;
+			for (int i = from; i < to && nodesCount <= TASK_NODES; i++)
+				nodesCount += parents.get(i).getChildCount();
+
+			if (to - from == 1 || nodesCount <= TASK_NODES) {
+				sortParents(parents, from, to, sortKeys);
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SortTask<E>(parents, from, middle, sortKeys), new SortTask<E>(parents, middle, to, sortKeys));
+			}
+		}
+	}
+}
@@ -315,53 +315,7 @@ public final class Dates {
 	 *		-1 si operand1 es menor que operand2
 	 */
 	public static int compare(Date operand1, Date operand2) {
-	
-		int resultado = compareIgnoringTimeOfDay(operand1, operand2);
-		if (resultado == 0) {
-			
-			Calendar cal;
-			int hour1, minute1, second1, hour2, minute2, second2;
-	
-			cal = Calendar.getInstance();
-	
-			cal.setTime(operand1);
-			hour1 = cal.get(Calendar.HOUR_OF_DAY);
-			minute1 = cal.get(Calendar.MINUTE);
-			second1 = cal.get(Calendar.SECOND);
-	
-			cal.setTime(operand2);
-			hour2 = cal.get(Calendar.HOUR_OF_DAY);
-			minute2 = cal.get(Calendar.MINUTE);
-			second2 = cal.get(Calendar.SECOND);
-	
-			if (hour1 > hour2) {
-				return 1;
-			}
-			else if (hour1 < hour2) {
-				return -1;
-			}
-			else {
-	
-				if (minute1 > minute2) {
-					return 1;
-				}
-				else if (minute1 < minute2) {
-					return -1;
-				}
-				else {
-	
-					if (second1 > second2) {
-						return 1;
-					}
-					else if (second1 < second2) {
-						return -1;
-					}
-					else
-						return 0;
-				}
-			}
-		}
-		else return resultado;
+		return compareLocalTimes(getLocalTime(operand1), getLocalTime(operand2), false);
 	}
 	/**
 	 * <b>Descripción:</b><br>
@@ -377,47 +331,30 @@ public final class Dates {
 	 *		-1 si operand1 es menor que operand2
 	 */
 	public static int compareIgnoringTimeOfDay(Date operand1, Date operand2) {
+		return compareLocalTimes(getLocalTime(operand1), getLocalTime(operand2), true);
+	}
 	
-		Calendar cal;
-		int day1, month1, year1, day2, month2, year2;
+	/**
+	 * Milliseconds of the date in the default time zone, as if it were UTC.
+	 * Comparing these values with {@link #compareLocalTimes(long, long, boolean)} gives the same result as comparing
+	 * the fields of the dates in a Calendar, so the value can be calculated once and compared many times
+	 */
+	public static long getLocalTime(Date date) {
+		long time = date.getTime();
+		return time + TimeZone.getDefault().getOffset(time);
+	}
+	
+	/**
+	 * Same result as {@link #compare(Date, Date)} or {@link #compareIgnoringTimeOfDay(Date, Date)} for the values of {@link #getLocalTime(Date)}.
+	 * Milliseconds are ignored, as in the comparison of dates
+	 */
+	public static int compareLocalTimes(long localTime1, long localTime2, boolean ignoreTimeOfDay) {
 		
-		cal = Calendar.getInstance();
+		long unit = ignoreTimeOfDay ? TimeUnit.DAYS.toMillis(1) : TimeUnit.SECONDS.toMillis(1);
+		long value1 = Math.floorDiv(localTime1, unit);
+		long value2 = Math.floorDiv(localTime2, unit);
 		
-		cal.setTime(operand1);
-		day1 = cal.get(Calendar.DATE);
-		month1 = cal.get(Calendar.MONTH);
-		year1 = cal.get(Calendar.YEAR);
-	
-		cal.setTime(operand2);
-		day2 = cal.get(Calendar.DATE);
-		month2 = cal.get(Calendar.MONTH);
-		year2 = cal.get(Calendar.YEAR);
-	
-		if (year1 > year2) {
-			return 1;
-		}
-		else if (year1 < year2) {
-			return -1;
-		}
-		else {
-	
-			if (month1 > month2) {
-				return 1;
-			}
-			else if (month1 < month2) {
-				return -1;
-			}
-			else {
-	
-				if (day1 > day2) {
-					return 1;
-				}
-				else if (day1 < day2) {
-					return -1;
-				}
-				else return 0;
-			}
-		}	
+		return value1 > value2 ? 1 : value1 < value2 ? -1 : 0;
 	}
 	
 	/**
@@ -22,6 +22,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Properties;
 
@@ -77,6 +78,19 @@ public class Encryptor {
 	private String charSet = null;
 	private char[] pass = null;
 	
+	//La clave derivada del password se guarda hasta que cambien algoritmo, password o salt,
+	//y cada hilo reutiliza sus ciphers, que tras doFinal vuelven al estado de su init, mientras no cambie keyVersion
+	private SecretKey secretKey = null;
+	private volatile int keyVersion = 0;
+	private final ThreadLocal<ThreadCiphers> threadCiphers = new ThreadLocal<ThreadCiphers>();
+	
+	private static final class ThreadCiphers {
+		
+		private int keyVersion = -1;
+		//Por modo: ENCRYPT_MODE, DECRYPT_MODE, WRAP_MODE y UNWRAP_MODE
+		private final Cipher[] ciphers = new Cipher[5];
+	}
+	
 	public static final String CHARSET_DEFAULT = Constants.CHARSET_UTF_8;//Constants.CHARSET_ISO_8859_1;
 	
 	private static Encryptor instance = null;
@@ -109,9 +123,17 @@ public class Encryptor {
 		
 		Cipher cipher = getCipher(mode);
 		//cipher.update(data);
-		byte[] decriptedData = cipher.doFinal(data);
-				
-		return decriptedData;
+		try {
+			byte[] decriptedData = cipher.doFinal(data);
+			return decriptedData;
+		}
+		catch (Throwable ex) {
+			//Si falla no sabemos en que estado queda el cipher, así que no lo reutilizamos
+			ThreadCiphers ciphers = threadCiphers.get();
+			if (ciphers != null)
+				ciphers.ciphers[mode] = null;
+			throw ex;
+		}
 	}
 
 	public byte[] encryptData(byte[] data) throws Throwable {
@@ -174,17 +196,47 @@ public class Encryptor {
 	
 	private Cipher getCipherPBE(int mode) throws Throwable {
 		
-		PBEParameterSpec pbeParamSpec = new PBEParameterSpec(getSalt(), iterations);
-		PBEKeySpec pbeKeySpec = new PBEKeySpec(getPass());
-		SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(getAlgorithm());
-		SecretKey secretKey = secretKeyFactory.generateSecret(pbeKeySpec);
-
-		Cipher cipher = Cipher.getInstance(getAlgorithm());
-		cipher.init(mode, secretKey, pbeParamSpec);
+		ThreadCiphers ciphers = threadCiphers.get();
+		if (ciphers == null) {
+			ciphers = new ThreadCiphers();
+			threadCiphers.set(ciphers);
+		}
+		int currentKeyVersion = keyVersion;
+		if (ciphers.keyVersion != currentKeyVersion) {
+			Arrays.fill(ciphers.ciphers, null);
+			ciphers.keyVersion = currentKeyVersion;
+		}
+		
+		Cipher cipher = ciphers.ciphers[mode];
+		if (cipher == null) {
+			
+			PBEParameterSpec pbeParamSpec = new PBEParameterSpec(getSalt(), iterations);
+			cipher = Cipher.getInstance(getAlgorithm());
+			cipher.init(mode, getSecretKey(), pbeParamSpec);
+			ciphers.ciphers[mode] = cipher;
+		}
 		
 		return cipher;
 	}
 	
+	private synchronized SecretKey getSecretKey() throws Throwable {
+		
+		if (secretKey == null) {
+			PBEKeySpec pbeKeySpec = new PBEKeySpec(getPass());
+			SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(getAlgorithm());
+			secretKey = secretKeyFactory.generateSecret(pbeKeySpec);
+		}
+		return secretKey;
+	}
+	
+	/**
+	 * Discards the derived key and the ciphers of the threads after changing the algorithm, password or salt
+	 */
+	private synchronized void keyChanged() {
+		secretKey = null;
+		keyVersion++;
+	}
+	
 	public void savePropertiesEncrypted(Properties properties, File file) throws Throwable {
 		
 		StringWriter sw = new StringWriter();
@@ -266,14 +318,17 @@ public class Encryptor {
 	
 	public void setAlgorithm(String algoritm) {
 		this.algorithm = algoritm;
+		keyChanged();
 	}
 	public void setSalt(byte[] salt) {
 		this.salt = salt;
+		keyChanged();
 	}
 	public void setCharSet(String charSet) {
 		this.charSet = charSet;
 	}
 	public void setPass(char[] pass) {
 		this.pass = pass;
+		keyChanged();
 	}
 }
@@ -276,7 +276,44 @@ public class Lists {
 		if (!useNaturalOrder)
 			reverseArray(array);
 	}
-	
+
+	/**
+	 * Moves the elements from the inclusive range <code>start</code> to <code>end</code>
+	 * so the element at <code>start</code> ends at index <code>to</code>.
+	 * Only the range between the old and new positions is copied, once, instead of moving the elements one by one
+	 *
+	 * @exception ArrayIndexOutOfBoundsException if any of the elements would be moved out of the list's range
+	 */
+	public static <T> void moveElements(List<T> list, int start, int end, int to) {
+
+		int count = end - start + 1;
+		if (start < 0 || count <= 0 || end >= list.size() || to < 0 || to + count > list.size())
+			throw new ArrayIndexOutOfBoundsException("start: " + start + ", end: " + end + ", to: " + to + ", size: " + list.size());
+		if (to == start)
+			return;
+
+		int first = Math.min(start, to);
+		int last = Math.max(start, to) + count - 1;
+		List<T> range = list.subList(first, last + 1);
+		Object[] elements = range.toArray();
+		Object[] movedElements = new Object[elements.length];
+
+		//Copiamos el bloque movido a su sitio y el bloque que desplaza al otro lado
+		System.arraycopy(elements, start - first, movedElements, to - first, count);
+		if (to < start)
+			System.arraycopy(elements, 0, movedElements, count, start - to);
+		else
+			System.arraycopy(elements, count, movedElements, 0, to - start);
+
+		ListIterator<T> iterator = range.listIterator();
+		for (int i = 0; i < movedElements.length; i++) {
+			iterator.next();
+			@SuppressWarnings("unchecked")
+			T element = (T) movedElements[i];
+			iterator.set(element);
+		}
+	}
+
 	public static <T> String arrayToString(T[] array) {
 		return arrayToString(array, Constants.COMMA);
 	}
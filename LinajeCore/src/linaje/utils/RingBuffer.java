@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue that many threads can add to and take from without locks.
+ * <p>
+ * The elements are kept in a fixed array used as a ring, so adding and taking elements creates no garbage.
+ * When the buffer is full {@link #offer(Object)} returns false instead of waiting.
+ */
+public class RingBuffer<E> {
+
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	//Cada posición guarda en qué vuelta del anillo está, para saber si ya se puede escribir o leer en ella
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity is rounded up to a power of two
+	 */
+	public RingBuffer(int capacity) {
+		super();
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("capacity: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		mask = size - 1;
+		elements = new AtomicReferenceArray<E>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * @return false if the buffer is full
+	 */
+	public boolean offer(E element) {
+		if (element == null)
+			throw new NullPointerException();
+		while (true) {
+			long position = tail.get();
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements.set(index, element);
+					//Ya se puede leer
+					sequences.set(index, position + 1);
+					return true;
+				}
+			}
+			else if (difference < 0) {
+				//La posición aún tiene el elemento de la vuelta anterior
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @return null if the buffer is empty
+	 */
+	public E poll() {
+		while (true) {
+			long position = head.get();
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					E element = elements.get(index);
+					elements.set(index, null);
+					//Ya se puede escribir en la siguiente vuelta
+					sequences.set(index, position + mask + 1);
+					return element;
+				}
+			}
+			else if (difference < 0) {
+				return null;
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Number of elements in the buffer, only approximate while other threads are adding or taking elements
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, getCapacity()));
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+}
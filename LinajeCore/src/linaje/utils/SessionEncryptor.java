@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Pablo Linaje
+ *
+ * This file is part of Linaje Framework.
+ *
+ * Linaje Framework is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or any later version.
+ *
+ * Linaje Framework is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with Linaje Framework.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+package linaje.utils;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Authenticated encryption (AES/GCM) with a session key agreed by both ends of a communication with ECDH,
+ * so the key is derived once per session instead of from a password in every message like {@link Encryptor}.
+ * <p>
+ * Each message is encrypted with a new random IV, that goes before the encrypted data.
+ */
+public class SessionEncryptor {
+
+	public static final String KEY_PAIR_ALGORITHM = "EC";
+	public static final String CURVE = "secp256r1";
+	public static final String KEY_AGREEMENT_ALGORITHM = "ECDH";
+	public static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_LENGTH = 128;
+
+	private static SecureRandom random = null;
+
+	private final SecretKeySpec key;
+	private String charSet = null;
+	//Cada hilo reutiliza su cipher, que solo hay que iniciar con el IV de cada mensaje
+	private final ThreadLocal<Cipher> threadCiphers = new ThreadLocal<Cipher>();
+
+	public SessionEncryptor(byte[] key) {
+		super();
+		this.key = new SecretKeySpec(key, "AES");
+	}
+
+	/**
+	 * Creates the key pair of this end of the session, whose public key is sent to the other end
+	 */
+	public static KeyPair newKeyPair() throws Throwable {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(KEY_PAIR_ALGORITHM);
+		keyPairGenerator.initialize(new ECGenParameterSpec(CURVE), getRandom());
+		return keyPairGenerator.generateKeyPair();
+	}
+
+	/**
+	 * Creates the encryptor of the session from the private key of this end and the public key received from the other end (X.509 encoded),
+	 * both ends get the same key
+	 */
+	public static SessionEncryptor newSessionEncryptor(PrivateKey privateKey, byte[] otherPublicKey) throws Throwable {
+
+		PublicKey publicKey = KeyFactory.getInstance(KEY_PAIR_ALGORITHM).generatePublic(new X509EncodedKeySpec(otherPublicKey));
+		KeyAgreement keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT_ALGORITHM);
+		keyAgreement.init(privateKey);
+		keyAgreement.doPhase(publicKey, true);
+
+		//No usamos el secreto compartido directamente como clave
+		byte[] key = MessageDigest.getInstance("SHA-256").digest(keyAgreement.generateSecret());
+		return new SessionEncryptor(key);
+	}
+
+	public byte[] encryptData(byte[] data) throws Throwable {
+
+		byte[] iv = new byte[IV_LENGTH];
+		getRandom().nextBytes(iv);
+
+		Cipher cipher = getCipher();
+		cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+
+		byte[] encryptedData = new byte[IV_LENGTH + cipher.getOutputSize(data.length)];
+		System.arraycopy(iv, 0, encryptedData, 0, IV_LENGTH);
+		cipher.doFinal(data, 0, data.length, encryptedData, IV_LENGTH);
+
+		return encryptedData;
+	}
+
+	/**
+	 * @exception javax.crypto.AEADBadTagException if the data has been modified or was encrypted with another key
+	 */
+	public byte[] decryptData(byte[] data) throws Throwable {
+
+		Cipher cipher = getCipher();
+		cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+		return cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+	}
+
+	public String encryptText(String nonEncryptedText) throws Throwable {
+		byte[] encryptedData = encryptData(nonEncryptedText.getBytes(getCharSet()));
+		return Base64.getEncoder().encodeToString(encryptedData);
+	}
+
+	public String decryptText(String encryptedText) throws Throwable {
+		byte[] decryptedData = decryptData(Base64.getDecoder().decode(encryptedText));
+		return new String(decryptedData, getCharSet());
+	}
+
+	private Cipher getCipher() throws Throwable {
+		Cipher cipher = threadCiphers.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+			threadCiphers.set(cipher);
+		}
+		return cipher;
+	}
+
+	private static synchronized SecureRandom getRandom() {
+		if (random == null)
+			random = new SecureRandom();
+		return random;
+	}
+
+	public String getCharSet() {
+		if (charSet == null)
+			charSet = Encryptor.CHARSET_DEFAULT;
+		return charSet;
+	}
+	public void setCharSet(String charSet) {
+		this.charSet = charSet;
+	}
+}
@@ -34,6 +34,7 @@ import linaje.gui.renderers.CellRendererExpandable;
 import linaje.gui.ui.GeneralUIProperties;
 import linaje.logs.Console;
 import linaje.statics.Constants;
+import linaje.tree.SortKey;
 import linaje.tree.TreeNodeVector;
 import linaje.utils.Lists;
 import linaje.utils.Strings;
@@ -385,14 +386,26 @@ public class LTable<E> extends JTable {
 		}
 		return rowFound;
 	}
+	/**
+	 * Moves the selected row, with its visible children, before its previous sibling or after its next one.
+	 * Nothing is done if it is the first or the last child of its parent
+	 */
 	public void moveRow(boolean moveUp, ListSelectionListener listener) {
 		
 		int from = getSelectedRow();
-		int to = moveUp ? from-1 : from+1;
+		if (from < 0 || from >= getRowCount())
+			return;
+		
+		TreeNodeVector<E> node = getModel().getRows().elementAt(from);
+		TreeNodeVector<E> parent = node.getParent();
+		int childTo = parent != null ? parent.getIndex(node) + (moveUp ? -1 : 1) : -1;
 		
-		if (to >= 0 && to < getRowCount()) {
+		if (childTo >= 0 && childTo < parent.getChildCount()) {
 	    	
-			getModel().moveRows(from, from, to);
+			//moveRows mueve entre los hermanos tantas posiciones como filas haya entre from y to
+			getModel().moveRows(from, from, moveUp ? from-1 : from+1);
+			//El nodo se mueve con sus hijos visibles, así que buscamos en qué fila ha quedado
+			int to = getModel().getRowIndex(node);
 			if (listener != null) {
 				getSelectionModel().removeListSelectionListener(this);
 				getSelectionModel().setSelectionInterval(to, to);
@@ -652,6 +665,12 @@ public class LTable<E> extends JTable {
 	public void sort(int modelIndex, boolean useNaturalOrder) {
 		getModel().sortTree(useNaturalOrder, modelIndex);
 	}
+	/**
+	 * Sorts the rows by several columns of the model, using each one when the previous ones are equal
+	 */
+	public void sort(SortKey... sortKeys) {
+		getModel().sortTree(sortKeys);
+	}
 	
 	public void restoreOriginalSort() {
 		getModel().restoreOriginalTreeSort();